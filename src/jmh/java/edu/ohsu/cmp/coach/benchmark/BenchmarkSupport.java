@@ -0,0 +1,57 @@
+package edu.ohsu.cmp.coach.benchmark;
+
+import edu.ohsu.cmp.coach.fhir.FhirConfigManager;
+import edu.ohsu.cmp.coach.model.PatientModel;
+import edu.ohsu.cmp.coach.workspace.UserWorkspace;
+import org.hl7.fhir.r4.model.Patient;
+import org.mockito.Mockito;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Wiring for benchmarks.  Benchmarks exercise production classes directly, without a database, FHIR server or
+ * full application context, so only the pieces those classes actually touch are provided.
+ */
+public class BenchmarkSupport {
+    private static FhirConfigManager fcm = null;
+
+    /**
+     * @return a FhirConfigManager configured from the bundled fhirconfig.properties, exactly as the application
+     *         would be by default
+     */
+    public static synchronized FhirConfigManager getFhirConfigManager() {
+        if (fcm == null) {
+            AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext();
+            ctx.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark",
+                    Map.of("fhirconfig.file", "classpath:fhirconfig.properties")));
+            ctx.register(PropertySourcesPlaceholderConfigurer.class, FhirConfigManager.class);
+            ctx.refresh();
+            fcm = ctx.getBean(FhirConfigManager.class);
+        }
+        return fcm;
+    }
+
+    /**
+     * @return a stand-in UserWorkspace that provides only what the vendor transformers use: the FhirConfigManager,
+     *         the (empty) cached Encounter list, and the Patient.  Encounters are supplied in fixture Bundles instead
+     */
+    public static UserWorkspace buildWorkspace() {
+        Patient patient = new Patient();
+        patient.setId(FhirFixtures.PATIENT_ID);
+
+        PatientModel patientModel = Mockito.mock(PatientModel.class);
+        Mockito.when(patientModel.getSourcePatient()).thenReturn(patient);
+
+        UserWorkspace workspace = Mockito.mock(UserWorkspace.class);
+        Mockito.when(workspace.getSessionId()).thenReturn("benchmark");
+        Mockito.when(workspace.getFhirConfigManager()).thenReturn(getFhirConfigManager());
+        Mockito.when(workspace.getEncounters()).thenReturn(new ArrayList<>());
+        Mockito.when(workspace.getPatient()).thenReturn(patientModel);
+
+        return workspace;
+    }
+}
@@ -0,0 +1,33 @@
+package edu.ohsu.cmp.coach.benchmark;
+
+import edu.ohsu.cmp.coach.exception.DataException;
+import edu.ohsu.cmp.coach.model.BloodPressureModel;
+import edu.ohsu.cmp.coach.model.BloodPressureSummaryModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BloodPressureSummaryBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    private int readingCount;
+
+    private List<BloodPressureModel> list;
+
+    @Setup(Level.Trial)
+    public void setup() throws DataException {
+        list = FhirFixtures.buildLocalBloodPressureModels(BenchmarkSupport.getFhirConfigManager(), readingCount, 1L);
+    }
+
+    @Benchmark
+    public BloodPressureSummaryModel summarize() {
+        return new BloodPressureSummaryModel(list);
+    }
+}
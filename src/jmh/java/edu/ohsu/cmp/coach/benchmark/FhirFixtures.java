@@ -0,0 +1,238 @@
+package edu.ohsu.cmp.coach.benchmark;
+
+import edu.ohsu.cmp.coach.exception.DataException;
+import edu.ohsu.cmp.coach.fhir.FhirConfigManager;
+import edu.ohsu.cmp.coach.fhir.transform.BaseVendorTransformer;
+import edu.ohsu.cmp.coach.model.BloodPressureModel;
+import edu.ohsu.cmp.coach.model.MedicationModel;
+import edu.ohsu.cmp.coach.model.ObservationSource;
+import edu.ohsu.cmp.coach.util.FhirUtil;
+import org.hl7.fhir.r4.model.*;
+
+import java.util.*;
+
+/**
+ * Generates synthetic but realistic patient histories for benchmarks.  Output is deterministic for a given size and
+ * seed, so that results from different runs (and different revisions of the code) are comparable.
+ * <p>
+ * BP readings cycle through the shapes that COACH sees in the wild:
+ * <ol>
+ *     <li>office BP panels linked to an ambulatory Encounter, with a protocol Observation</li>
+ *     <li>home BP panels with no Encounter, identified by the home setting extension</li>
+ *     <li>Epic-style home systolic and diastolic Observations with no Encounter, paired by a UUID note</li>
+ *     <li>home systolic and diastolic Observations linked to a home health Encounter, paired by timestamp</li>
+ * </ol>
+ */
+public class FhirFixtures {
+    public static final String PATIENT_ID = "Patient/benchmark-patient";
+
+    public static final String RXNORM_OID = "2.16.840.1.113883.6.88";
+    public static final String RXNORM_SYSTEM = "http://www.nlm.nih.gov/research/umls/rxnorm";
+
+    private static final String ACT_CODE_SYSTEM = "http://terminology.hl7.org/CodeSystem/v3-ActCode";
+    private static final String UUID_NOTE_TAG = "COACH_OBSERVATION_GROUP_UUID::";      // see BaseVendorTransformer
+    private static final long READING_INTERVAL_MS = 1000 * 60 * 60 * 8;                 // 3 readings a day
+
+    /**
+     * @param readingCount the number of BP readings to generate.  the number of resources in the Bundle will be
+     *                     larger, as readings may consist of several Observations and an Encounter
+     * @param seed the random seed
+     * @return a searchset Bundle of BP Observations, protocol Observations and Encounters, newest first
+     */
+    public static Bundle buildBloodPressureBundle(FhirConfigManager fcm, int readingCount, long seed) {
+        return buildBloodPressureBundle(fcm, PATIENT_ID, readingCount, seed);
+    }
+
+    /**
+     * @param patientId the relative reference to the Patient that generated resources are about
+     * @see #buildBloodPressureBundle(FhirConfigManager, int, long)
+     */
+    public static Bundle buildBloodPressureBundle(FhirConfigManager fcm, String patientId, int readingCount, long seed) {
+        Random random = new Random(seed);
+        Bundle bundle = new Bundle();
+        bundle.setType(Bundle.BundleType.SEARCHSET);
+
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < readingCount; i ++) {
+            Date date = new Date(now - i * READING_INTERVAL_MS);
+            int systolic = 100 + random.nextInt(60);
+            int diastolic = 60 + random.nextInt(35);
+
+            switch (i % 4) {
+                case 0: {
+                    Encounter encounter = buildEncounter(patientId, "enc-" + i, "AMB", "ambulatory", date);
+                    FhirUtil.appendResourceToBundle(bundle, encounter);
+
+                    Observation bp = buildPanel(fcm, patientId, "bp-" + i, date, systolic, diastolic);
+                    bp.setEncounter(new Reference(encounter.getId()));
+                    FhirUtil.appendResourceToBundle(bundle, bp);
+
+                    Observation protocol = buildProtocol(fcm, patientId, "protocol-" + i, date, random.nextBoolean());
+                    protocol.setEncounter(new Reference(encounter.getId()));
+                    FhirUtil.appendResourceToBundle(bundle, protocol);
+                    break;
+                }
+
+                case 1: {
+                    Observation bp = buildPanel(fcm, patientId, "bp-" + i, date, systolic, diastolic);
+                    FhirUtil.addHomeSettingExtension(bp);
+                    FhirUtil.appendResourceToBundle(bundle, bp);
+                    break;
+                }
+
+                case 2: {
+                    String note = UUID_NOTE_TAG + new UUID(seed, i);
+                    Observation sys = buildComponent(fcm, patientId, "sys-" + i, fcm.getBpSystolicCommonCoding(), date, systolic);
+                    sys.addNote().setText(note);
+                    FhirUtil.addHomeSettingExtension(sys);
+                    FhirUtil.appendResourceToBundle(bundle, sys);
+
+                    Observation dia = buildComponent(fcm, patientId, "dia-" + i, fcm.getBpDiastolicCommonCoding(), date, diastolic);
+                    dia.addNote().setText(note);
+                    FhirUtil.addHomeSettingExtension(dia);
+                    FhirUtil.appendResourceToBundle(bundle, dia);
+                    break;
+                }
+
+                default: {
+                    Encounter encounter = buildEncounter(patientId, "enc-" + i, "HH", "home health", date);
+                    FhirUtil.appendResourceToBundle(bundle, encounter);
+
+                    Observation sys = buildComponent(fcm, patientId, "sys-" + i, fcm.getBpSystolicCommonCoding(), date, systolic);
+                    sys.setEncounter(new Reference(encounter.getId()));
+                    FhirUtil.appendResourceToBundle(bundle, sys);
+
+                    Observation dia = buildComponent(fcm, patientId, "dia-" + i, fcm.getBpDiastolicCommonCoding(), date, diastolic);
+                    dia.setEncounter(new Reference(encounter.getId()));
+                    FhirUtil.appendResourceToBundle(bundle, dia);
+                    break;
+                }
+            }
+        }
+
+        return bundle;
+    }
+
+    /**
+     * @return BloodPressureModels as they'd be created from readings entered into COACH, newest first.  roughly a
+     *         third of readings fall within the last 30 days
+     */
+    public static List<BloodPressureModel> buildLocalBloodPressureModels(FhirConfigManager fcm, int readingCount, long seed) throws DataException {
+        Random random = new Random(seed);
+        long now = System.currentTimeMillis();
+
+        List<BloodPressureModel> list = new ArrayList<>();
+        for (int i = 0; i < readingCount; i ++) {
+            ObservationSource source = i % 3 == 0 ? ObservationSource.OFFICE : ObservationSource.COACH_UI;
+            Boolean followedProtocol = source == ObservationSource.OFFICE ? null : random.nextBoolean();
+            list.add(new BloodPressureModel(source, 100 + random.nextInt(60), 60 + random.nextInt(35),
+                    new Date(now - i * READING_INTERVAL_MS), followedProtocol, fcm));
+        }
+        return list;
+    }
+
+    /**
+     * @param medicationCount the number of medications to generate
+     * @param matchingCodes codes for which medications should match; every other medication gets one of these codes
+     * @return MedicationModels built from MedicationStatements coded with RxNorm
+     */
+    public static List<MedicationModel> buildMedications(int medicationCount, List<String> matchingCodes, long seed) throws DataException {
+        Random random = new Random(seed);
+        long now = System.currentTimeMillis();
+
+        List<MedicationModel> list = new ArrayList<>();
+        for (int i = 0; i < medicationCount; i ++) {
+            String code = i % 2 == 0 && ! matchingCodes.isEmpty() ?
+                    matchingCodes.get(random.nextInt(matchingCodes.size())) :
+                    String.valueOf(900000 + i);
+
+            MedicationStatement ms = new MedicationStatement();
+            ms.setId("MedicationStatement/med-" + i);
+            ms.setStatus(MedicationStatement.MedicationStatementStatus.ACTIVE);
+            ms.setSubject(new Reference(PATIENT_ID));
+            CodeableConcept cc = new CodeableConcept();
+            cc.addCoding(new Coding(RXNORM_SYSTEM, code, "medication " + code));
+            cc.setText("medication " + code);
+            ms.setMedication(cc);
+            ms.setEffective(new DateTimeType(new Date(now - i * READING_INTERVAL_MS)));
+            ms.addDosage().setText("1 tablet daily");
+
+            list.add(new MedicationModel(ms));
+        }
+        return list;
+    }
+
+    /**
+     * @return the ids of every resource in bundle, as relative references
+     */
+    public static List<String> getReferences(Bundle bundle) {
+        List<String> list = new ArrayList<>();
+        for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+            if (entry.hasResource()) {
+                list.add(entry.getResource().getId());
+            }
+        }
+        return list;
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    private static Encounter buildEncounter(String patientId, String id, String classCode, String classDisplay, Date date) {
+        Encounter e = new Encounter();
+        e.setId("Encounter/" + id);
+        e.setStatus(Encounter.EncounterStatus.FINISHED);
+        e.setClass_(new Coding(ACT_CODE_SYSTEM, classCode, classDisplay));
+        e.setSubject(new Reference(patientId));
+        e.setPeriod(new Period().setStart(date).setEnd(date));
+        return e;
+    }
+
+    private static Observation buildPanel(FhirConfigManager fcm, String patientId, String id, Date date, int systolic, int diastolic) {
+        Observation o = buildObservation(patientId, id, fcm.getBpPanelCommonCoding(), date);
+        o.addComponent()
+                .setCode(new CodeableConcept(fcm.getBpSystolicCommonCoding().copy()))
+                .setValue(buildBPQuantity(fcm, systolic));
+        o.addComponent()
+                .setCode(new CodeableConcept(fcm.getBpDiastolicCommonCoding().copy()))
+                .setValue(buildBPQuantity(fcm, diastolic));
+        return o;
+    }
+
+    private static Observation buildComponent(FhirConfigManager fcm, String patientId, String id, Coding coding, Date date, int value) {
+        Observation o = buildObservation(patientId, id, coding, date);
+        o.setValue(buildBPQuantity(fcm, value));
+        return o;
+    }
+
+    private static Observation buildProtocol(FhirConfigManager fcm, String patientId, String id, Date date, boolean followed) {
+        Observation o = buildObservation(patientId, id, fcm.getProtocolCoding(), date);
+        o.setValue(new CodeableConcept());
+        o.getValueCodeableConcept()
+                .setText(followed ? fcm.getProtocolAnswerYes() : fcm.getProtocolAnswerNo())
+                .addCoding(fcm.getProtocolAnswerCoding().copy());
+        return o;
+    }
+
+    private static Observation buildObservation(String patientId, String id, Coding coding, Date date) {
+        Observation o = new Observation();
+        o.setId("Observation/" + id);
+        o.setStatus(Observation.ObservationStatus.FINAL);
+        o.addCategory(new CodeableConcept(new Coding(BaseVendorTransformer.OBSERVATION_CATEGORY_SYSTEM,
+                BaseVendorTransformer.OBSERVATION_CATEGORY_CODE, "Vital Signs")));
+        o.getCode().addCoding(coding.copy());
+        o.setSubject(new Reference(patientId));
+        o.setEffective(new DateTimeType(date));
+        return o;
+    }
+
+    private static Quantity buildBPQuantity(FhirConfigManager fcm, int value) {
+        return new Quantity()
+                .setValue(value)
+                .setUnit(fcm.getBpValueUnit())
+                .setSystem(fcm.getBpValueSystem())
+                .setCode(fcm.getBpValueCode());
+    }
+}
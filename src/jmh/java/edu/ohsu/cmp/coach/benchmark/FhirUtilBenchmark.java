@@ -0,0 +1,53 @@
+package edu.ohsu.cmp.coach.benchmark;
+
+import edu.ohsu.cmp.coach.util.FhirUtil;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Reference;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * reference lookups against a Bundle, as performed when resolving Encounters and Medications.  half of the references
+ * looked up are present in the Bundle
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FhirUtilBenchmark {
+    private static final int LOOKUPS = 100;
+
+    @Param({"10", "100", "1000", "10000"})
+    private int readingCount;
+
+    private Bundle bundle;
+    private List<Reference> references;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        bundle = FhirFixtures.buildBloodPressureBundle(BenchmarkSupport.getFhirConfigManager(), readingCount, 1L);
+
+        List<String> ids = FhirFixtures.getReferences(bundle);
+        Random random = new Random(1L);
+        references = new ArrayList<>();
+        for (int i = 0; i < LOOKUPS; i ++) {
+            references.add(i % 2 == 0 ?
+                    new Reference(ids.get(random.nextInt(ids.size()))) :
+                    new Reference("Observation/missing-" + i));
+        }
+    }
+
+    @Benchmark
+    public void bundleContainsReference(Blackhole bh) {
+        for (Reference reference : references) {
+            bh.consume(FhirUtil.bundleContainsReference(bundle, reference));
+        }
+    }
+}
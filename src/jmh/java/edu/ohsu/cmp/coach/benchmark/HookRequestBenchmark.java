@@ -0,0 +1,49 @@
+package edu.ohsu.cmp.coach.benchmark;
+
+import edu.ohsu.cmp.coach.model.cqfruler.HookRequest;
+import edu.ohsu.cmp.coach.model.fhir.FHIRCredentials;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Observation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HookRequest construction serializes and sanitizes every prefetch resource, once per recommendation per session
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HookRequestBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    private int readingCount;
+
+    private FHIRCredentials credentials;
+    private List<IBaseResource> prefetchList;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        credentials = new FHIRCredentials("benchmark-client", "http://localhost/fhir", "benchmark-token",
+                FhirFixtures.PATIENT_ID, "Practitioner/benchmark-user");
+
+        Bundle bundle = FhirFixtures.buildBloodPressureBundle(BenchmarkSupport.getFhirConfigManager(), readingCount, 1L);
+
+        // one item with non-ASCII text, so that sanitization has something to replace
+        Observation o = new Observation();
+        o.setId("Observation/non-ascii");
+        o.addNote().setText("Température élevée – patient-reported");
+
+        prefetchList = List.of(bundle, o);
+    }
+
+    @Benchmark
+    public HookRequest buildHookRequest() {
+        return new HookRequest(credentials, prefetchList);
+    }
+}
@@ -0,0 +1,87 @@
+package edu.ohsu.cmp.coach.benchmark;
+
+import edu.ohsu.cmp.coach.exception.DataException;
+import edu.ohsu.cmp.coach.fhir.FhirConfigManager;
+import edu.ohsu.cmp.coach.fhir.transform.DefaultVendorTransformer;
+import edu.ohsu.cmp.coach.fhir.transform.EpicVendorTransformer;
+import edu.ohsu.cmp.coach.model.BloodPressureModel;
+import edu.ohsu.cmp.coach.workspace.UserWorkspace;
+import org.hl7.fhir.r4.model.Bundle;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Incoming and outgoing BP transforms.  the incoming transform runs for every session at launch, over the patient's
+ * entire BP history
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VendorTransformerBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    private int readingCount;
+
+    private DefaultVendorTransformer defaultTransformer;
+    private EpicVendorTransformer epicTransformer;
+    private Bundle bundle;
+    private List<BloodPressureModel> localModels;
+    private List<BloodPressureModel> remoteModels;
+
+    @Setup(Level.Trial)
+    public void setup() throws DataException {
+        FhirConfigManager fcm = BenchmarkSupport.getFhirConfigManager();
+        UserWorkspace workspace = BenchmarkSupport.buildWorkspace();
+
+        defaultTransformer = new DefaultVendorTransformer(workspace);
+        epicTransformer = new EpicVendorTransformer(workspace);
+
+        bundle = FhirFixtures.buildBloodPressureBundle(fcm, readingCount, 1L);
+        localModels = FhirFixtures.buildLocalBloodPressureModels(fcm, readingCount, 1L);
+        remoteModels = defaultTransformer.transformIncomingBloodPressureReadings(bundle);
+    }
+
+    @Benchmark
+    public List<BloodPressureModel> defaultIncomingBloodPressure() throws DataException {
+        return defaultTransformer.transformIncomingBloodPressureReadings(bundle);
+    }
+
+    @Benchmark
+    public List<BloodPressureModel> epicIncomingBloodPressure() throws DataException {
+        return epicTransformer.transformIncomingBloodPressureReadings(bundle);
+    }
+
+    @Benchmark
+    public void defaultOutgoingLocalBloodPressure(Blackhole bh) throws DataException {
+        for (BloodPressureModel bpm : localModels) {
+            bh.consume(defaultTransformer.transformOutgoingBloodPressureReading(bpm));
+        }
+    }
+
+    @Benchmark
+    public void epicOutgoingLocalBloodPressure(Blackhole bh) throws DataException {
+        for (BloodPressureModel bpm : localModels) {
+            bh.consume(epicTransformer.transformOutgoingBloodPressureReading(bpm));
+        }
+    }
+
+    @Benchmark
+    public void defaultOutgoingRemoteBloodPressure(Blackhole bh) throws DataException {
+        for (BloodPressureModel bpm : remoteModels) {
+            bh.consume(defaultTransformer.transformOutgoingBloodPressureReading(bpm));
+        }
+    }
+
+    @Benchmark
+    public void epicOutgoingRemoteBloodPressure(Blackhole bh) throws DataException {
+        for (BloodPressureModel bpm : remoteModels) {
+            bh.consume(epicTransformer.transformOutgoingBloodPressureReading(bpm));
+        }
+    }
+}
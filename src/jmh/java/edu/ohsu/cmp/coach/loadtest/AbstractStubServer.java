@@ -0,0 +1,78 @@
+package edu.ohsu.cmp.coach.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Base for the stub servers used by the load test.  Stubs listen on an ephemeral port on localhost, and handle each
+ * request on its own thread so that the stubs themselves aren't the bottleneck being measured.
+ */
+public abstract class AbstractStubServer {
+    private HttpServer server = null;
+    private ExecutorService executor = null;
+
+    protected abstract void configure(HttpServer server);
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        configure(server);
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    public String getServerUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    protected Map<String, String> parseQuery(String rawQuery) {
+        return parseForm(rawQuery);
+    }
+
+    protected Map<String, String> parseForm(String s) {
+        Map<String, String> map = new LinkedHashMap<>();
+        if (s != null && ! s.isEmpty()) {
+            for (String pair : s.split("&")) {
+                int pos = pair.indexOf('=');
+                String key = pos >= 0 ? pair.substring(0, pos) : pair;
+                String value = pos >= 0 ? pair.substring(pos + 1) : "";
+                map.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+        }
+        return map;
+    }
+
+    protected String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    protected void respond(HttpExchange exchange, int code, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=UTF-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
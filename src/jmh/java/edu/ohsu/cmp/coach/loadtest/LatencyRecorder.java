@@ -0,0 +1,81 @@
+package edu.ohsu.cmp.coach.loadtest;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects request latencies by step, and reports percentiles and throughput once the run is over.
+ */
+public class LatencyRecorder {
+    private final Map<String, Queue<Long>> latencies = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> errors = new ConcurrentHashMap<>();
+    private final List<String> steps = Collections.synchronizedList(new ArrayList<>());
+
+    public void record(String step, long nanos, boolean success) {
+        getLatencies(step).add(nanos);
+        if ( ! success ) {
+            errors.computeIfAbsent(step, k -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    /**
+     * @param elapsedNanos the wall-clock duration of the run, used to compute throughput
+     * @return a plain-text table with one line per step, in the order steps were first recorded
+     */
+    public String buildReport(long elapsedNanos) {
+        double elapsedSeconds = elapsedNanos / 1e9;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-40s %8s %7s %9s %9s %9s %9s %9s %9s%n",
+                "step", "count", "errors", "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms", "req/s"));
+
+        int totalCount = 0;
+        int totalErrors = 0;
+        List<String> stepsCopy;
+        synchronized (steps) {
+            stepsCopy = new ArrayList<>(steps);
+        }
+        for (String step : stepsCopy) {
+            long[] arr = latencies.get(step).stream().mapToLong(Long::longValue).sorted().toArray();
+            int errorCount = errors.containsKey(step) ? errors.get(step).get() : 0;
+            double mean = Arrays.stream(arr).average().orElse(0);
+
+            sb.append(String.format("%-40s %8d %7d %9.1f %9.1f %9.1f %9.1f %9.1f %9.2f%n",
+                    step, arr.length, errorCount, toMillis(mean),
+                    toMillis(percentile(arr, 50)), toMillis(percentile(arr, 90)), toMillis(percentile(arr, 99)),
+                    toMillis(arr.length > 0 ? arr[arr.length - 1] : 0), arr.length / elapsedSeconds));
+
+            totalCount += arr.length;
+            totalErrors += errorCount;
+        }
+
+        sb.append(String.format("%ntotal: %d requests, %d errors in %.1f s (%.2f req/s)%n",
+                totalCount, totalErrors, elapsedSeconds, totalCount / elapsedSeconds));
+
+        return sb.toString();
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    private Queue<Long> getLatencies(String step) {
+        return latencies.computeIfAbsent(step, k -> {
+            steps.add(step);
+            return new ConcurrentLinkedQueue<>();
+        });
+    }
+
+    // nearest-rank percentile of a sorted array
+    private long percentile(long[] sorted, int p) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(rank - 1, 0)];
+    }
+
+    private double toMillis(double nanos) {
+        return nanos / 1e6;
+    }
+}
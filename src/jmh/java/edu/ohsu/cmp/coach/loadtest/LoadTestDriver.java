@@ -0,0 +1,174 @@
+package edu.ohsu.cmp.coach.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulates concurrent patients using COACH, the way the browser would drive it: each simulated user repeatedly
+ * starts a fresh session, loads the home page and the data it requests, connects to Omron, fetches recommendations
+ * and enters a BP reading.  Every request is timed and recorded by step.
+ */
+public class LoadTestDriver {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(5);
+
+    private static final List<String> HOME_DATA_PATHS = List.of(
+            "blood-pressure-observations-list",
+            "pulse-observations-list",
+            "medications-list",
+            "adverse-events-list"
+    );
+
+    private final String coachUrl;
+    private final String fhirServerUrl;
+    private final String patientClientId;
+    private final List<String> hookIds;
+    private final boolean omronEnabled;
+    private final LatencyRecorder recorder = new LatencyRecorder();
+
+    public LoadTestDriver(String coachUrl, String fhirServerUrl, String patientClientId, List<String> hookIds,
+                          boolean omronEnabled) {
+        this.coachUrl = coachUrl;
+        this.fhirServerUrl = fhirServerUrl;
+        this.patientClientId = patientClientId;
+        this.hookIds = hookIds;
+        this.omronEnabled = omronEnabled;
+    }
+
+    /**
+     * @param users the number of concurrent users to simulate.  each user is a distinct patient
+     * @param iterations the number of sessions each user runs, one after the other
+     * @param rampUpMs the period over which users are started, to avoid every user hitting the same step at once
+     * @return the report
+     */
+    public String run(int users, int iterations, long rampUpMs) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(users);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < users; i ++) {
+            final String patientId = "loadtest-" + i;
+            final long delay = users > 1 ? rampUpMs * i / (users - 1) : 0;
+            executor.submit(() -> {
+                try {
+                    Thread.sleep(delay);
+                    for (int j = 0; j < iterations; j ++) {
+                        runSession(patientId);
+                    }
+
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+
+                } catch (Exception e) {
+                    logger.error("caught " + e.getClass().getName() + " simulating user " + patientId + " - " + e.getMessage(), e);
+                }
+            });
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.DAYS);
+
+        return recorder.buildReport(System.nanoTime() - start);
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    private void runSession(String patientId) throws IOException, InterruptedException {
+        // a new cookie jar is a new session
+        HttpClient client = HttpClient.newBuilder()
+                .cookieHandler(new CookieManager())
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("clientId", patientClientId);
+        params.put("serverUrl", fhirServerUrl);
+        params.put("bearerToken", "loadtest");
+        params.put("patientId", patientId);
+        params.put("userId", patientId);
+        if ( ! send(client, "prepare-session", post("prepare-session", params)) ) {
+            return;     // nothing else will work without a session
+        }
+
+        send(client, "home", get(""));
+
+        for (String path : HOME_DATA_PATHS) {
+            send(client, "home: " + path, get(path));
+        }
+
+        if (omronEnabled) {
+            send(client, "omron: authorize and synchronize", get("omron/oauth?code=loadtest"));
+        }
+
+        for (String hookId : hookIds) {
+            send(client, "recommendation: " + hookId, post("recommendation", Map.of("id", hookId)));
+        }
+
+        params = new LinkedHashMap<>();
+        params.put("systolic1", "128");
+        params.put("diastolic1", "84");
+        params.put("pulse1", "72");
+        params.put("readingDateTS1", String.valueOf(System.currentTimeMillis()));
+        params.put("followedInstructions", "true");
+        send(client, "vitals: create", post("vitals/create", params));
+    }
+
+    private boolean send(HttpClient client, String step, HttpRequest request) throws InterruptedException {
+        long start = System.nanoTime();
+        boolean success;
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            success = response.statusCode() < 400;
+            if ( ! success ) {
+                logger.warn(step + " returned HTTP " + response.statusCode());
+            }
+
+        } catch (IOException e) {
+            logger.warn("caught " + e.getClass().getName() + " during " + step + " - " + e.getMessage());
+            success = false;
+        }
+        recorder.record(step, System.nanoTime() - start, success);
+        return success;
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(coachUrl + "/" + path))
+                .timeout(REQUEST_TIMEOUT)
+                .GET()
+                .build();
+    }
+
+    private HttpRequest post(String path, Map<String, String> params) {
+        StringJoiner sj = new StringJoiner("&");
+        for (Map.Entry<String, String> entry : params.entrySet()) {
+            sj.add(URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8) + "=" +
+                    URLEncoder.encode(entry.getValue(), StandardCharsets.UTF_8));
+        }
+
+        return HttpRequest.newBuilder(URI.create(coachUrl + "/" + path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(sj.toString()))
+                .build();
+    }
+}
@@ -0,0 +1,112 @@
+package edu.ohsu.cmp.coach.loadtest;
+
+import edu.ohsu.cmp.coach.COACHApplication;
+import edu.ohsu.cmp.coach.benchmark.BenchmarkSupport;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+
+import java.util.*;
+
+/**
+ * End-to-end load test.  Starts stub FHIR, CDS Hooks and Omron servers, starts COACH in-process pointed at them, then
+ * drives it with simulated concurrent users and prints per-step latency percentiles and throughput.
+ * <p>
+ * COACH still needs its database, so datasource properties must be supplied as for a normal run.  Options:
+ * <pre>
+ *   --users=N               concurrent users (default 10)
+ *   --iterations=N          sessions per user (default 3)
+ *   --ramp-up-ms=N          period over which users are started (default 5000)
+ *   --readings=N            BP readings per patient on the FHIR server (default 500)
+ *   --omron-readings=N      BP readings per user from Omron, one a day (default 30; 0 skips the Omron step)
+ *   --cds-latency-ms=N      minimum time the CDS Hooks stub takes per hook (default 250)
+ *   --cds-jitter-ms=N       maximum random time added to that (default 250)
+ * </pre>
+ * Any other argument (e.g. --spring.datasource.url=...) is passed to COACH.
+ */
+public class LoadTestMain {
+    private static final String PATIENT_CLIENT_ID = "loadtest-patient";
+    private static final String OMRON_SECRET_KEY = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    private static final Set<String> OPTIONS = Set.of("users", "iterations", "ramp-up-ms", "readings",
+            "omron-readings", "cds-latency-ms", "cds-jitter-ms");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> passThrough = new ArrayList<>();
+        for (String arg : args) {
+            String key = arg.startsWith("--") && arg.contains("=") ? arg.substring(2, arg.indexOf('=')) : null;
+            if (key != null && OPTIONS.contains(key)) {
+                options.put(key, arg.substring(arg.indexOf('=') + 1));
+            } else {
+                passThrough.add(arg);
+            }
+        }
+
+        int users = getInt(options, "users", 10);
+        int iterations = getInt(options, "iterations", 3);
+        long rampUpMs = getInt(options, "ramp-up-ms", 5000);
+        int readings = getInt(options, "readings", 500);
+        int omronReadings = getInt(options, "omron-readings", 30);
+        long cdsLatencyMs = getInt(options, "cds-latency-ms", 250);
+        long cdsJitterMs = getInt(options, "cds-jitter-ms", 250);
+
+        Properties properties = PropertiesLoaderUtils.loadProperties(new ClassPathResource("application.properties"));
+        List<String> hookIds = Arrays.asList(properties.getProperty("cqfruler.cdshooks.order.csv").split("\\s*,\\s*"));
+
+        StubFhirServer fhirServer = new StubFhirServer(BenchmarkSupport.getFhirConfigManager(), readings);
+        StubCdsServer cdsServer = new StubCdsServer(hookIds, cdsLatencyMs, cdsJitterMs);
+        StubOmronServer omronServer = new StubOmronServer(omronReadings);
+        fhirServer.start();
+        cdsServer.start();
+        omronServer.start();
+
+        Map<String, String> overrides = new LinkedHashMap<>();
+        overrides.put("server.port", "0");
+        overrides.put("smart.patient.clientId", PATIENT_CLIENT_ID);
+        overrides.put("redcap.enabled", "false");
+        overrides.put("cqfruler.cdshooks.endpoint.url", cdsServer.getEndpointUrl());
+        overrides.put("omron.url", omronServer.getServerUrl());
+        overrides.put("omron.authorize.url", omronServer.getServerUrl());
+        overrides.put("omron.application-id", "loadtest");
+        overrides.put("omron.secret-key", omronReadings > 0 ? OMRON_SECRET_KEY : "disabled");
+
+        List<String> coachArgs = new ArrayList<>();
+        for (Map.Entry<String, String> entry : overrides.entrySet()) {
+            if (passThrough.stream().noneMatch(s -> s.startsWith("--" + entry.getKey() + "="))) {
+                coachArgs.add("--" + entry.getKey() + "=" + entry.getValue());
+            }
+        }
+        coachArgs.addAll(passThrough);
+
+        ServletWebServerApplicationContext ctx = (ServletWebServerApplicationContext)
+                SpringApplication.run(COACHApplication.class, coachArgs.toArray(new String[0]));
+
+        try {
+            String coachUrl = "http://localhost:" + ctx.getWebServer().getPort();
+            LoadTestDriver driver = new LoadTestDriver(coachUrl, fhirServer.getBaseUrl(), PATIENT_CLIENT_ID, hookIds,
+                    omronReadings > 0);
+
+            System.out.println("running load test: users=" + users + ", iterations=" + iterations +
+                    ", readings=" + readings + ", omronReadings=" + omronReadings +
+                    ", cdsLatencyMs=" + cdsLatencyMs + "+" + cdsJitterMs);
+            System.out.println();
+            System.out.println(driver.run(users, iterations, rampUpMs));
+
+        } finally {
+            ctx.close();
+            omronServer.stop();
+            cdsServer.stop();
+            fhirServer.stop();
+        }
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    private static int getInt(Map<String, String> options, String key, int defaultValue) {
+        return options.containsKey(key) ? Integer.parseInt(options.get(key)) : defaultValue;
+    }
+}
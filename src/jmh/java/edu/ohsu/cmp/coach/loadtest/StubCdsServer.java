@@ -0,0 +1,109 @@
+package edu.ohsu.cmp.coach.loadtest;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A stand-in for CQF Ruler's CDS Hooks endpoint.  Advertises the configured hooks at /cds-services, and answers every
+ * hook request with the same canned cards after a configurable delay, which stands in for the time CQF Ruler spends
+ * evaluating the plan definitions.
+ */
+public class StubCdsServer extends AbstractStubServer {
+    private static final String CONTEXT_PATH = "/cds-services";
+    private static final String JSON = "application/json";
+
+    private final List<String> hookIds;
+    private final long latencyMs;
+    private final long jitterMs;
+
+    /**
+     * @param hookIds the ids of the hooks to advertise
+     * @param latencyMs the minimum time to take answering a hook request
+     * @param jitterMs the maximum additional time, chosen at random, to take answering a hook request
+     */
+    public StubCdsServer(List<String> hookIds, long latencyMs, long jitterMs) {
+        this.hookIds = hookIds;
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+    }
+
+    @Override
+    protected void configure(HttpServer server) {
+        server.createContext(CONTEXT_PATH, this::handle);
+    }
+
+    public String getEndpointUrl() {
+        return getServerUrl() + CONTEXT_PATH;
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String hookId = StringUtils.strip(StringUtils.removeStart(exchange.getRequestURI().getPath(), CONTEXT_PATH), "/");
+
+        if (hookId.isEmpty()) {
+            respond(exchange, 200, JSON, buildServices().toString());
+
+        } else if (hookIds.contains(hookId)) {
+            readBody(exchange);     // drain the request; its content doesn't affect the response
+            simulateLatency();
+            respond(exchange, 200, JSON, buildCards(hookId).toString());
+
+        } else {
+            respond(exchange, 404, JSON, "{}");
+        }
+    }
+
+    private JsonObject buildServices() {
+        JsonArray services = new JsonArray();
+        for (String hookId : hookIds) {
+            JsonObject service = new JsonObject();
+            service.addProperty("hook", "patient-view");
+            service.addProperty("id", hookId);
+            service.addProperty("title", hookId);
+            service.add("prefetch", new JsonObject());
+            services.add(service);
+        }
+
+        JsonObject response = new JsonObject();
+        response.add("services", services);
+        return response;
+    }
+
+    // detail is in the pipe-delimited format CQF Ruler's COACH plan definitions produce: rationale|suggestions|selection behavior|links
+    private JsonObject buildCards(String hookId) {
+        JsonObject card = new JsonObject();
+        card.addProperty("summary", "Load test recommendation from " + hookId);
+        card.addProperty("indicator", "info");
+        card.addProperty("detail", "{{#patient}}This is a canned recommendation.{{/patient}}" +
+                "{{#careTeam}}This is a canned recommendation.{{/careTeam}}|[]|at-most-one|");
+        card.add("source", new JsonObject());
+
+        JsonArray cards = new JsonArray();
+        cards.add(card);
+
+        JsonObject response = new JsonObject();
+        response.add("cards", cards);
+        return response;
+    }
+
+    private void simulateLatency() {
+        long ms = latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs + 1) : 0);
+        if (ms > 0) {
+            try {
+                Thread.sleep(ms);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
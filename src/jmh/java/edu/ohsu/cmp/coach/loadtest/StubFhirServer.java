@@ -0,0 +1,193 @@
+package edu.ohsu.cmp.coach.loadtest;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.ohsu.cmp.coach.benchmark.FhirFixtures;
+import edu.ohsu.cmp.coach.fhir.FhirConfigManager;
+import edu.ohsu.cmp.coach.util.FhirUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.r4.model.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A minimal, in-memory FHIR R4 server that serves generated patients.  Every Patient id resolves to a patient whose
+ * history is generated on first use by {@link FhirFixtures}, seeded from the id, so any number of distinct patients
+ * can be requested without setting anything up beforehand.
+ * <p>
+ * Only what COACH actually asks for is supported: the CapabilityStatement, Patient reads, and searches by subject
+ * (and, for Observations, by code).  Searches for other resource types return empty Bundles, and anything written to
+ * the server is acknowledged but not stored.
+ */
+public class StubFhirServer extends AbstractStubServer {
+    private static final String CONTEXT_PATH = "/fhir";
+    private static final String FHIR_JSON = "application/fhir+json";
+
+    private final FhirContext ctx = FhirContext.forR4();
+    private final FhirConfigManager fcm;
+    private final int readingCount;
+
+    private final Map<String, List<Resource>> resourcesByPatient = new ConcurrentHashMap<>();
+
+    /**
+     * @param readingCount the number of BP readings to generate for each patient
+     */
+    public StubFhirServer(FhirConfigManager fcm, int readingCount) {
+        this.fcm = fcm;
+        this.readingCount = readingCount;
+    }
+
+    @Override
+    protected void configure(HttpServer server) {
+        server.createContext(CONTEXT_PATH, this::handle);
+    }
+
+    public String getBaseUrl() {
+        return getServerUrl() + CONTEXT_PATH;
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = StringUtils.removeStart(exchange.getRequestURI().getPath(), CONTEXT_PATH);
+        path = StringUtils.strip(path, "/");
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        if (StringUtils.equals(exchange.getRequestMethod(), "GET")) {
+            String[] parts = path.split("/");
+            if (path.equals("metadata")) {
+                respond(exchange, 200, buildCapabilityStatement());
+
+            } else if (parts.length == 2 && parts[0].equals("Patient")) {
+                respond(exchange, 200, buildPatient(parts[1]));
+
+            } else if (parts.length == 1) {
+                respond(exchange, 200, search(parts[0], params));
+
+            } else {
+                respond(exchange, 404, buildOperationOutcome("unsupported path: " + path));
+            }
+
+        } else if (StringUtils.equalsAny(exchange.getRequestMethod(), "POST", "PUT")) {
+            Resource resource = (Resource) getParser().parseResource(exchange.getRequestBody());
+            if (resource instanceof Bundle) {
+                respond(exchange, 200, buildTransactionResponse((Bundle) resource));
+
+            } else {
+                resource.setId(resource.fhirType() + "/" + UUID.randomUUID());
+                respond(exchange, 201, resource);
+            }
+
+        } else {
+            respond(exchange, 405, buildOperationOutcome("unsupported method: " + exchange.getRequestMethod()));
+        }
+    }
+
+    private CapabilityStatement buildCapabilityStatement() {
+        CapabilityStatement cs = new CapabilityStatement();
+        cs.setStatus(Enumerations.PublicationStatus.ACTIVE);
+        cs.setDate(new Date());
+        cs.setKind(CapabilityStatement.CapabilityStatementKind.INSTANCE);
+        cs.setFhirVersion(Enumerations.FHIRVersion._4_0_1);
+        cs.addFormat("json");
+        return cs;
+    }
+
+    private Patient buildPatient(String id) {
+        Random random = new Random(id.hashCode());
+
+        Patient p = new Patient();
+        p.setId("Patient/" + id);
+        p.addName().setUse(HumanName.NameUse.USUAL).setFamily("Loadtest").addGiven(id);
+        p.setGender(random.nextBoolean() ? Enumerations.AdministrativeGender.FEMALE : Enumerations.AdministrativeGender.MALE);
+
+        Calendar cal = Calendar.getInstance();
+        cal.add(Calendar.YEAR, -(40 + random.nextInt(40)));
+        p.setBirthDate(cal.getTime());
+
+        return p;
+    }
+
+    private Bundle search(String type, Map<String, String> params) {
+        Bundle bundle = new Bundle();
+        bundle.setType(Bundle.BundleType.SEARCHSET);
+
+        String subject = params.get("subject");
+        if (subject != null) {
+            String patientId = subject.startsWith("Patient/") ? subject : "Patient/" + subject;
+            Set<String> codes = params.containsKey("code") ?
+                    new HashSet<>(Arrays.asList(params.get("code").split(","))) :
+                    null;
+
+            for (Resource r : getResources(patientId)) {
+                if (r.fhirType().equals(type) && (codes == null || matches(r, codes))) {
+                    FhirUtil.appendResourceToBundle(bundle, r);
+                }
+            }
+        }
+
+        bundle.setTotal(bundle.getEntry().size());
+        return bundle;
+    }
+
+    private List<Resource> getResources(String patientId) {
+        return resourcesByPatient.computeIfAbsent(patientId, k -> {
+            List<Resource> list = new ArrayList<>();
+            Bundle bundle = FhirFixtures.buildBloodPressureBundle(fcm, patientId, readingCount, patientId.hashCode());
+            for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+                list.add(entry.getResource());
+            }
+            return list;
+        });
+    }
+
+    // codes are token search parameters, i.e. "system|code" or "code"
+    private boolean matches(Resource r, Set<String> codes) {
+        if (r instanceof Observation) {
+            for (Coding c : ((Observation) r).getCode().getCoding()) {
+                if (codes.contains(c.getSystem() + "|" + c.getCode()) || codes.contains(c.getCode())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Bundle buildTransactionResponse(Bundle request) {
+        Bundle response = new Bundle();
+        response.setType(Bundle.BundleType.TRANSACTIONRESPONSE);
+        for (Bundle.BundleEntryComponent entry : request.getEntry()) {
+            String location = entry.hasResource() ?
+                    entry.getResource().fhirType() + "/" + UUID.randomUUID() :
+                    null;
+            response.addEntry().getResponse()
+                    .setStatus("201 Created")
+                    .setLocation(location);
+        }
+        return response;
+    }
+
+    private OperationOutcome buildOperationOutcome(String message) {
+        OperationOutcome oo = new OperationOutcome();
+        oo.addIssue()
+                .setSeverity(OperationOutcome.IssueSeverity.ERROR)
+                .setCode(OperationOutcome.IssueType.NOTSUPPORTED)
+                .setDiagnostics(message);
+        return oo;
+    }
+
+    private void respond(HttpExchange exchange, int code, Resource resource) throws IOException {
+        respond(exchange, code, FHIR_JSON, getParser().encodeResourceToString(resource));
+    }
+
+    // parsers aren't thread-safe, but they're cheap to create; the FhirContext is the expensive part
+    private IParser getParser() {
+        return ctx.newJsonParser();
+    }
+}
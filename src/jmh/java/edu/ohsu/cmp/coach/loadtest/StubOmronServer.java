@@ -0,0 +1,118 @@
+package edu.ohsu.cmp.coach.loadtest;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.ohsu.cmp.coach.model.omron.AccessTokenResponse;
+import edu.ohsu.cmp.coach.model.omron.MeasurementResponse;
+import edu.ohsu.cmp.coach.model.omron.MeasurementResult;
+import edu.ohsu.cmp.coach.model.omron.OmronBloodPressureModel;
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * A stand-in for the Omron API.  Issues a fresh token for every authorization code, and answers measurement requests
+ * with home BP readings generated from the token, one a day going back from today.
+ */
+public class StubOmronServer extends AbstractStubServer {
+    private static final String JSON = "application/json";
+    private static final long READING_INTERVAL_MS = 1000 * 60 * 60 * 24;
+    private static final int TOKEN_EXPIRES_IN_SECONDS = 60 * 60;
+
+    private final Gson gson = new GsonBuilder().create();
+    private final int readingCount;
+
+    /**
+     * @param readingCount the number of BP readings to generate for each user
+     */
+    public StubOmronServer(int readingCount) {
+        this.readingCount = readingCount;
+    }
+
+    @Override
+    protected void configure(HttpServer server) {
+        server.createContext("/connect/token", this::handleToken);
+        server.createContext("/api/measurement", this::handleMeasurement);
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    // handles both authorization code and refresh token grants; the response is the same shape either way
+    private void handleToken(HttpExchange exchange) throws IOException {
+        readBody(exchange);
+
+        String token = "loadtest-" + UUID.randomUUID();
+
+        AccessTokenResponse response = new AccessTokenResponse();
+        response.setIdToken(token);
+        response.setAccessToken(token);
+        response.setExpiresIn(TOKEN_EXPIRES_IN_SECONDS);
+        response.setTokenType("Bearer");
+        response.setRefreshToken(token);
+
+        respond(exchange, 200, JSON, gson.toJson(response));
+    }
+
+    private void handleMeasurement(HttpExchange exchange) throws IOException {
+        Map<String, String> params = parseForm(readBody(exchange));
+        String token = exchange.getRequestHeaders().getFirst("Authorization");
+        if (token == null) {
+            respond(exchange, 401, JSON, "{}");
+            return;
+        }
+
+        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        DateFormat localFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+        localFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        long since = 0;
+        try {
+            if (params.containsKey("since")) since = dateFormat.parse(params.get("since")).getTime();
+        } catch (ParseException e) {
+            respond(exchange, 400, JSON, "{}");
+            return;
+        }
+
+        Random random = new Random(token.hashCode());
+        long idBase = Math.abs((long) token.hashCode()) * readingCount;
+        long now = System.currentTimeMillis();
+
+        List<OmronBloodPressureModel> list = new ArrayList<>();
+        for (int i = 0; i < readingCount; i ++) {
+            long ts = now - i * READING_INTERVAL_MS;
+            if (ts < since) break;
+
+            OmronBloodPressureModel bp = new OmronBloodPressureModel();
+            bp.setId(idBase + i);
+            bp.setDateTime(String.valueOf(ts));
+            bp.setDateTimeLocal(localFormat.format(new Date(ts)));
+            bp.setDateTimeUtcOffset("Z");
+            bp.setSystolic(100 + random.nextInt(60));
+            bp.setDiastolic(60 + random.nextInt(35));
+            bp.setBloodPressureUnits("mmHg");
+            bp.setPulse(55 + random.nextInt(40));
+            bp.setPulseUnits("bpm");
+            bp.setDeviceType("loadtest");
+            list.add(bp);
+        }
+
+        MeasurementResult result = new MeasurementResult();
+        result.setTruncated(false);
+        result.setBloodPressure(list);
+        result.setActivity(new ArrayList<>());
+        result.setMeasurementCount(list.size());
+
+        MeasurementResponse response = new MeasurementResponse();
+        response.setStatus(0);
+        response.setResult(result);
+
+        respond(exchange, 200, JSON, gson.toJson(response));
+    }
+}
@@ -0,0 +1,71 @@
+package edu.ohsu.cmp.coach.service;
+
+import edu.ohsu.cmp.coach.benchmark.FhirFixtures;
+import edu.ohsu.cmp.coach.entity.Concept;
+import edu.ohsu.cmp.coach.entity.ValueSet;
+import edu.ohsu.cmp.coach.exception.DataException;
+import edu.ohsu.cmp.coach.model.MedicationModel;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * anti-hypertensive medication filtering, which matches every medication against every concept in the configured
+ * ValueSets.  lives in the service package as filterByValueSet() is package-private
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MedicationServiceBenchmark {
+    private static final int VALUE_SET_COUNT = 2;
+    private static final int CONCEPTS_PER_VALUE_SET = 400;     // comparable to the real anti-hypertensive ValueSets
+
+    @Param({"10", "100", "1000"})
+    private int medicationCount;
+
+    private MedicationService medicationService;
+    private List<String> oids;
+    private List<MedicationModel> medications;
+
+    @Setup(Level.Trial)
+    public void setup() throws DataException {
+        List<String> codes = new ArrayList<>();
+        Map<String, ValueSet> valueSets = new HashMap<>();
+        oids = new ArrayList<>();
+        for (int i = 0; i < VALUE_SET_COUNT; i ++) {
+            String oid = "2.16.840.1.113762.1.4.1178." + i;
+            ValueSet vs = new ValueSet(oid, "benchmark value set " + i, "1", "benchmark", null, "Extensional",
+                    null, "Active", new Date());
+            Set<Concept> concepts = new LinkedHashSet<>();
+            for (int j = 0; j < CONCEPTS_PER_VALUE_SET; j ++) {
+                String code = String.valueOf(100000 + i * CONCEPTS_PER_VALUE_SET + j);
+                concepts.add(new Concept(code, FhirFixtures.RXNORM_OID, "RXNORM", "2024-01", "medication " + code));
+                codes.add(code);
+            }
+            vs.setConcepts(concepts);
+            valueSets.put(oid, vs);
+            oids.add(oid);
+        }
+
+        ValueSetService valueSetService = Mockito.mock(ValueSetService.class);
+        Mockito.when(valueSetService.getValueSet(ArgumentMatchers.anyString()))
+                .thenAnswer(invocation -> valueSets.get(invocation.<String>getArgument(0)));
+
+        medicationService = new MedicationService();
+        ReflectionTestUtils.setField(medicationService, "valueSetService", valueSetService);
+
+        medications = FhirFixtures.buildMedications(medicationCount, codes, 1L);
+    }
+
+    @Benchmark
+    public List<MedicationModel> filterAntihypertensive() {
+        return medicationService.filterByValueSet(medications, oids, true);
+    }
+}
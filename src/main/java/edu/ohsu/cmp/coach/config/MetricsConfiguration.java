@@ -0,0 +1,29 @@
+package edu.ohsu.cmp.coach.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.metrics.MeterRegistryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfiguration {
+
+    @Value("${metrics.site}")
+    private String site;
+
+    @Value("${fhir.vendor-transformer-class}")
+    private String vendorTransformerClass;
+
+    // tag every metric with the site and the EHR it talks to, so that metrics from different deployments can be
+    // compared without relabeling
+    @Bean
+    public MeterRegistryCustomizer<MeterRegistry> commonTagsCustomizer() {
+        String ehr = StringUtils.removeEnd(StringUtils.substringAfterLast(vendorTransformerClass, "."), "VendorTransformer");
+        return registry -> registry.config().commonTags(
+                "site", site,
+                "ehr", StringUtils.isNotBlank(ehr) ? ehr.toLowerCase() : "unknown"
+        );
+    }
+}
@@ -0,0 +1,25 @@
+package edu.ohsu.cmp.coach.config;
+
+import edu.ohsu.cmp.coach.service.ReferenceDataCacheService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.stereotype.Component;
+
+/**
+ * Lets an administrator reload reference data on this node after changing it directly in the database, by invoking
+ * the evict operation of the org.springframework.boot:type=Endpoint,name=Referencedata MBean.  This is deliberately
+ * only exposed over JMX (see management.endpoints.jmx.exposure.include), as COACH's web port is public
+ */
+@Component
+@Endpoint(id = "referencedata")
+public class ReferenceDataEndpoint {
+
+    @Autowired
+    private ReferenceDataCacheService referenceDataCacheService;
+
+    @DeleteOperation
+    public void evict() {
+        referenceDataCacheService.evictAll();
+    }
+}
@@ -6,6 +6,9 @@ import edu.ohsu.cmp.coach.workspace.UserWorkspaceService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.env.Environment;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.ui.Model;
 
 public abstract class BaseController {
@@ -31,4 +34,23 @@ public abstract class BaseController {
         model.addAttribute("applicationName", applicationName);
         model.addAttribute("idleTimeoutSeconds", idleTimeoutSeconds);
     }
+
+    /**
+     * build a response for versioned workspace data.  the browser may keep the body, but must revalidate it with
+     * the server (using the ETag) before each reuse
+     * @param versionTag the workspace's version tag for the data, see UserWorkspace.getVersionTag()
+     */
+    protected <T> ResponseEntity<T> buildVersionedResponse(String versionTag, T body) {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .eTag(versionTag)
+                .body(body);
+    }
+
+    protected <T> ResponseEntity<T> buildNotModifiedResponse(String versionTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .eTag(versionTag)
+                .build();
+    }
 }
@@ -0,0 +1,46 @@
+package edu.ohsu.cmp.coach.controller;
+
+import edu.ohsu.cmp.coach.service.SessionEventService;
+import edu.ohsu.cmp.coach.workspace.UserWorkspace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.servlet.http.HttpSession;
+import java.io.IOException;
+
+@Controller
+public class EventController extends BaseController {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private SessionEventService sessionEventService;
+
+    @GetMapping(value = "events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public SseEmitter subscribe(HttpSession session) {
+        UserWorkspace workspace = userWorkspaceService.get(session.getId());
+
+        SseEmitter emitter = sessionEventService.subscribe(session.getId());
+
+        // send the current Omron status right away, so the page doesn't need to ask for it separately
+        try {
+            emitter.send(SseEmitter.event()
+                    .name(SessionEventService.EVENT_OMRON_STATUS)
+                    .data(workspace.getOmronSynchronizationStatus())
+            );
+
+        } catch (IOException e) {
+            logger.debug("caught " + e.getClass().getName() + " sending initial Omron status for session=" +
+                    session.getId() + " - " + e.getMessage());
+            emitter.completeWithError(e);
+        }
+
+        return emitter;
+    }
+}
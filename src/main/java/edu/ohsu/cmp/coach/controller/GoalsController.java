@@ -20,6 +20,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.WebRequest;
 
 import jakarta.servlet.http.HttpSession;
 import java.util.ArrayList;
@@ -46,7 +47,7 @@ public class GoalsController extends BaseController {
         model.addAttribute("bpGoal", goalService.getCurrentBPGoal(sessionId));
         model.addAttribute("hasOtherGoals", goalService.hasAnyLocalNonBPGoals(sessionId));
         model.addAttribute("pageStyles", new String[] { "goals.css" });
-        model.addAttribute("pageScripts", new String[] { "goals.js?v=1" });
+        model.addAttribute("pageScripts", new String[] { "goals.js?v=2" });
         model.addAttribute("pageNodeScripts", new String[] {
                 "inputmask/dist/jquery.inputmask.js",
                 "inputmask/dist/bindings/inputmask.binding.js"
@@ -57,8 +58,14 @@ public class GoalsController extends BaseController {
         return "goals";
     }
 
-    @PostMapping("other-goals")
-    public ResponseEntity<List<GoalModel>> getOtherGoalsList(HttpSession session) {
+    @GetMapping("other-goals")
+    public ResponseEntity<List<GoalModel>> getOtherGoalsList(HttpSession session, WebRequest webRequest) {
+        UserWorkspace workspace = userWorkspaceService.get(session.getId());
+        String versionTag = workspace.getVersionTag(UserWorkspace.VERSION_OTHER_GOALS);
+        if (webRequest.checkNotModified(versionTag)) {
+            return buildNotModifiedResponse(versionTag);
+        }
+
         List<GoalModel> list = new ArrayList<GoalModel>();
         for (MyGoal g : goalService.getAllLocalNonBPGoals(session.getId())) {
             list.add(new GoalModel(g));
@@ -66,7 +73,7 @@ public class GoalsController extends BaseController {
 
         Collections.sort(list);
 
-        return new ResponseEntity<>(list, HttpStatus.OK);
+        return buildVersionedResponse(versionTag, list);
     }
 
     @PostMapping("create")
@@ -91,6 +98,7 @@ public class GoalsController extends BaseController {
             // they took the suggestion, so remove it from the list to consider
             UserWorkspace workspace = userWorkspaceService.get(session.getId());
             workspace.deleteSuggestion(extGoalId);
+            workspace.incrementVersion(UserWorkspace.VERSION_OTHER_GOALS);
 
             return new ResponseEntity<>(new GoalModel(myGoal), HttpStatus.OK);
 
@@ -117,7 +125,7 @@ public class GoalsController extends BaseController {
             goal.setGoalText("Target BP: " + systolicTarget + "/" + diastolicTarget);
             goal.setSystolicTarget(systolicTarget);
             goal.setDiastolicTarget(diastolicTarget);
-            goal = goalService.update(goal);
+            goal = goalService.update(session.getId(), goal);
 
             auditService.doAudit(session.getId(), AuditSeverity.INFO, "updated BP goal", "id=" + goal.getId() +
                     ", new target=" + systolicTarget + "/" + diastolicTarget);
@@ -150,7 +158,9 @@ public class GoalsController extends BaseController {
 
         MyGoal g = goalService.getLocalGoal(session.getId(), extGoalId);
         GoalHistory gh = new GoalHistory(AchievementStatus.valueOf(achievementStatusStr), g);
-        gh = goalService.createHistory(gh);
+        gh = goalService.createHistory(session.getId(), gh);
+
+        userWorkspaceService.get(session.getId()).incrementVersion(UserWorkspace.VERSION_OTHER_GOALS);
 
         auditService.doAudit(session.getId(), AuditSeverity.INFO, "updated goal status", "goalId=" + g.getId() +
                 ", historyId=" + gh.getId() + ", achievementStatus=" + achievementStatusStr);
@@ -12,6 +12,7 @@ import edu.ohsu.cmp.coach.service.*;
 import edu.ohsu.cmp.coach.session.ProvisionalSessionCacheData;
 import edu.ohsu.cmp.coach.session.SessionService;
 import edu.ohsu.cmp.coach.util.FhirUtil;
+import edu.ohsu.cmp.coach.workspace.RecommendationRun;
 import edu.ohsu.cmp.coach.workspace.UserWorkspace;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -26,10 +27,12 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import jakarta.servlet.http.HttpSession;
 import java.util.*;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
 
 @Controller
 public class HomeController extends BaseController {
@@ -44,6 +47,9 @@ public class HomeController extends BaseController {
     @Autowired
     private BloodPressureService bpService;
 
+    @Autowired
+    private BloodPressureTrendService bpTrendService;
+
     @Autowired
     private PulseService pulseService;
 
@@ -77,6 +83,9 @@ public class HomeController extends BaseController {
     @Value("${end-of-study.intervention-message-html}")
     private String endOfStudyInterventionMessage;
 
+    @Value("${cqfruler.cdshooks.result-timeout-ms}")
+    private Long recommendationTimeout;
+
     @GetMapping(value = {"", "/"})
     public String view(HttpSession session, Model model,
                        @RequestParam(name = "bandwidth", required = false) Number bandwidthOverride) throws Exception {
@@ -100,11 +109,9 @@ public class HomeController extends BaseController {
                     "chartjs-plugin-annotation/dist/chartjs-plugin-annotation.js"
             });
             model.addAttribute("pageScripts", new String[] {
-                    "science.js/science.v1.js",
-                    "science.js/lib/d3/d3.js",
-                    "home.js?v=4",
+                    "home.js?v=7",
                     "recommendations.js?v=2",
-                    "bpchart.js"
+                    "bpchart.js?v=2"
             });
             model.addAttribute("patient", workspace.getPatient());
             model.addAttribute("bpGoal", goalService.getCurrentBPGoal(sessionId));
@@ -127,8 +134,11 @@ public class HomeController extends BaseController {
             }
 
             // Only show the AE Survey link if REDCap is enabled and this is a patient. The link may not exist otherwise.
-            if (redCapService.isRedcapEnabled() && Audience.PATIENT.equals(workspace.getAudience())) {
-                model.addAttribute("aeSurveyLink", redCapService.getAESurveyLink(workspace.getRedcapId()));
+            // The cached link only determines whether to show it; the participant is sent to the current one via
+            // /ae-survey, as the cached one may be for a report they've since submitted
+            if (redCapService.isRedcapEnabled() && Audience.PATIENT.equals(workspace.getAudience()) &&
+                    redCapService.getAESurveyLink(workspace.getRedcapId()) != null) {
+                model.addAttribute("aeSurveyLink", "/ae-survey");
             }
             // If this is a Care Team login and the patient needs to be enrolled, show a banner
             if (Audience.CARE_TEAM.equals(workspace.getAudience()) && workspace.getRequiresEnrollment()) {
@@ -161,6 +171,10 @@ public class HomeController extends BaseController {
             sessionService.expireProvisional(sessionId);
 
             RedcapParticipantInfo redcapParticipantInfo = redCapService.getParticipantInfo(patient.getRedcapId());
+
+            // whatever happens next, the participant's status is likely to change in REDCap before they return
+            redCapService.invalidateParticipantInfo(patient.getRedcapId());
+
             if ( ! redcapParticipantInfo.getExists() ) {
                 // If they are not in REDCap yet, create them and forward them to the entry survey
                 logger.info("REDCap workflow: Creating REDCap participant record with REDCap COACH Id " + redcapParticipantInfo.getCoachId() + " and forwarding to the entry survey");
@@ -244,51 +258,115 @@ public class HomeController extends BaseController {
         }
     }
 
-    @PostMapping("blood-pressure-observations-list")
-    public ResponseEntity<List<BloodPressureModel>> getBloodPressureObservations(HttpSession session) throws DataException {
+    @GetMapping("blood-pressure-observations-list")
+    public ResponseEntity<List<BloodPressureModel>> getBloodPressureObservations(HttpSession session, WebRequest webRequest) throws DataException {
+        UserWorkspace workspace = userWorkspaceService.get(session.getId());
+        String versionTag = workspace.getVersionTag(UserWorkspace.VERSION_BP);
+        if (webRequest.checkNotModified(versionTag)) {
+            return buildNotModifiedResponse(versionTag);
+        }
+
         List<BloodPressureModel> list = bpService.getBloodPressureReadings(session.getId());
-        return new ResponseEntity<>(list, HttpStatus.OK);
+        return buildVersionedResponse(versionTag, list);
     }
 
-    @PostMapping("pulse-observations-list")
-    public ResponseEntity<List<PulseModel>> getPulseObservations(HttpSession session) throws DataException {
-        List<PulseModel> list = pulseService.getPulseReadings(session.getId());
-        return new ResponseEntity<>(list, HttpStatus.OK);
+    @GetMapping("blood-pressure-trend")
+    public ResponseEntity<BloodPressureTrendModel> getBloodPressureTrend(HttpSession session, WebRequest webRequest,
+                                                                         @RequestParam(name = "startDate", required = false) Long startTimestamp,
+                                                                         @RequestParam(name = "bandwidth", required = false) Double bandwidthOverride) {
+        // a trend is determined by the BP readings and the request parameters, and the latter are part of the URL
+        UserWorkspace workspace = userWorkspaceService.get(session.getId());
+        String versionTag = workspace.getVersionTag(UserWorkspace.VERSION_BP);
+        if (webRequest.checkNotModified(versionTag)) {
+            return buildNotModifiedResponse(versionTag);
+        }
+
+        BloodPressureTrendModel trend = bpTrendService.getBloodPressureTrend(session.getId(), startTimestamp, bandwidthOverride);
+        return buildVersionedResponse(versionTag, trend);
     }
 
-    @PostMapping("recommendation")
-    public Callable<ResponseEntity<List<Card>>> getRecommendation(HttpSession session,
-                                                                  @RequestParam("id") String hookId) {
-        return new Callable<>() {
-            public ResponseEntity<List<Card>> call() throws Exception {
-                try {
-                    UserWorkspace workspace = userWorkspaceService.get(session.getId());
+    @GetMapping("pulse-observations-list")
+    public ResponseEntity<List<PulseModel>> getPulseObservations(HttpSession session, WebRequest webRequest) throws DataException {
+        UserWorkspace workspace = userWorkspaceService.get(session.getId());
+        String versionTag = workspace.getVersionTag(UserWorkspace.VERSION_PULSE);
+        if (webRequest.checkNotModified(versionTag)) {
+            return buildNotModifiedResponse(versionTag);
+        }
 
-                    List<Card> cards = workspace.getCards(hookId);
-                    logger.info("got cards for hookId=" + hookId + "!");
+        List<PulseModel> list = pulseService.getPulseReadings(session.getId());
+        return buildVersionedResponse(versionTag, list);
+    }
 
-                    return new ResponseEntity<>(cards, HttpStatus.OK);
+    @GetMapping("ae-survey")
+    public String aeSurvey(HttpSession session) {
+        UserWorkspace workspace = userWorkspaceService.get(session.getId());
+        if ( ! redCapService.isRedcapEnabled() || ! Audience.PATIENT.equals(workspace.getAudience()) ) {
+            return "redirect:/";
+        }
 
-                } catch (RuntimeException re) {
-                    logger.error("caught " + re.getClass().getName() + " getting recommendations for " + hookId + " - " +
-                            re.getMessage(), re);
+        try {
+            return "redirect:" + redCapService.refreshAESurveyLink(workspace.getRedcapId());
 
-                    auditService.doAudit(session.getId(), AuditSeverity.ERROR, "recommendation exception", "encountered " +
-                            re.getClass().getSimpleName() + " getting recommendations for " + hookId + " - " +
-                            re.getMessage());
+        } catch (Exception e) {
+            logger.error("caught " + e.getClass().getName() + " getting AE survey link for session=" +
+                    session.getId() + " - " + e.getMessage(), e);
+            return "redirect:/";
+        }
+    }
 
-                    return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
-                }
+    @PostMapping("recommendation")
+    public DeferredResult<ResponseEntity<List<Card>>> getRecommendation(HttpSession session,
+                                                                        @RequestParam("id") String hookId) {
+        // the cards may take a while to generate.  rather than tie up a thread waiting for them, the response is
+        // completed whenever they're ready (failures are logged and audited by the recommendation run)
+        // if they take too long, the client is told to try again later (HTTP 503)
+        String sessionId = session.getId();
+        DeferredResult<ResponseEntity<List<Card>>> result = new DeferredResult<>(recommendationTimeout,
+                new ResponseEntity<List<Card>>(HttpStatus.SERVICE_UNAVAILABLE));
+        result.onTimeout(() -> logger.warn("timed out waiting for cards for hookId=" + hookId + " for session=" +
+                sessionId));
+        result.onError(t -> logger.warn("caught " + t.getClass().getName() + " waiting for cards for hookId=" +
+                hookId + " for session=" + sessionId + " - " + t.getMessage()));
+
+        UserWorkspace workspace = userWorkspaceService.get(sessionId);
+        workspace.getCardsAsync(hookId).whenComplete((cards, t) -> {
+            if (t == null) {
+                logger.info("got cards for hookId=" + hookId + "!");
+                result.setResult(new ResponseEntity<>(cards, HttpStatus.OK));
+
+            } else if (t instanceof IllegalArgumentException ||
+                    (t instanceof CompletionException && t.getCause() instanceof IllegalArgumentException)) {
+                result.setResult(new ResponseEntity<>(null, HttpStatus.NOT_FOUND));
+
+            } else {
+                result.setResult(new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR));
             }
-        };
+        });
+
+        return result;
     }
 
-    @PostMapping("medications-list")
-    public ResponseEntity<List<MedicationModel>> getMedications(HttpSession session) {
+    @GetMapping("recommendation-status")
+    public ResponseEntity<RecommendationRun> getRecommendationStatus(HttpSession session) {
+        UserWorkspace workspace = userWorkspaceService.get(session.getId());
+        RecommendationRun run = workspace.getRecommendationRun();
+        return run != null ?
+                new ResponseEntity<>(run, HttpStatus.OK) :
+                new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
+    @GetMapping("medications-list")
+    public ResponseEntity<List<MedicationModel>> getMedications(HttpSession session, WebRequest webRequest) {
+        UserWorkspace workspace = userWorkspaceService.get(session.getId());
+        String versionTag = workspace.getVersionTag(UserWorkspace.VERSION_MEDICATION);
+        if (webRequest.checkNotModified(versionTag)) {
+            return buildNotModifiedResponse(versionTag);
+        }
+
         try {
             List<MedicationModel> list = filterDuplicates(medicationService.getAntihypertensiveMedications(session.getId()));
 
-            return new ResponseEntity<>(new ArrayList<>(list), HttpStatus.OK);
+            return buildVersionedResponse(versionTag, new ArrayList<>(list));
 
         } catch (HttpServerErrorException.InternalServerError ise) {
             logger.error("caught " + ise.getClass().getName() + " getting medications - " + ise.getMessage(), ise);
@@ -296,8 +374,14 @@ public class HomeController extends BaseController {
         }
     }
 
-    @PostMapping("adverse-events-list")
-    public ResponseEntity<List<AdverseEventModel>> getAdverseEvents(HttpSession session) throws DataException {
+    @GetMapping("adverse-events-list")
+    public ResponseEntity<List<AdverseEventModel>> getAdverseEvents(HttpSession session, WebRequest webRequest) throws DataException {
+        UserWorkspace workspace = userWorkspaceService.get(session.getId());
+        String versionTag = workspace.getVersionTag(UserWorkspace.VERSION_ADVERSE_EVENT);
+        if (webRequest.checkNotModified(versionTag)) {
+            return buildNotModifiedResponse(versionTag);
+        }
+
         try {
             List<AdverseEventModel> list = new ArrayList<>();
 
@@ -307,7 +391,7 @@ public class HomeController extends BaseController {
                 }
             }
 
-            return new ResponseEntity<>(new ArrayList<>(list), HttpStatus.OK);
+            return buildVersionedResponse(versionTag, new ArrayList<>(list));
 
         } catch (HttpServerErrorException.InternalServerError ise) {
             logger.error("caught " + ise.getClass().getName() + " getting adverse events - " + ise.getMessage(), ise);
@@ -137,7 +137,15 @@ public class VitalsController extends BaseController {
 
         workspace.clearVitalsCaches();
 
-        boolean modified = hypotensionAdverseEventService.refresh(session.getId());
+        List<BloodPressureModel> newReadings = new ArrayList<>();
+        for (AbstractVitalsModel item : list) {
+            if (item instanceof BloodPressureModel) {
+                newReadings.add((BloodPressureModel) item);
+            }
+        }
+        if (hypotensionAdverseEventService.refresh(session.getId(), newReadings)) {
+            workspace.incrementVersion(UserWorkspace.VERSION_ADVERSE_EVENT);
+        }
 
         workspace.runRecommendations();
 
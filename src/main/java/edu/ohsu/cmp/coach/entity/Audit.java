@@ -9,7 +9,9 @@ import java.util.Date;
 @Table(name = "audit_data")
 public class Audit {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "auditIdGenerator")
+    @TableGenerator(name = "auditIdGenerator", table = "id_generator", pkColumnName = "name", valueColumnName = "nextId",
+            pkColumnValue = "audit_data", allocationSize = 50)
     private Long id;
 
     private Long patId;
@@ -1,6 +1,8 @@
 package edu.ohsu.cmp.coach.entity;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -9,10 +11,14 @@ import java.util.Date;
 import java.util.Set;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "vsac_concept")
 public class Concept {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "conceptIdGenerator")
+    @TableGenerator(name = "conceptIdGenerator", table = "id_generator", pkColumnName = "name", valueColumnName = "nextId",
+            pkColumnValue = "vsac_concept", allocationSize = 50)
     private Long id;
 
     private String code;
@@ -14,7 +14,9 @@ public class HomeBloodPressureReading {
 //    private static final DateFormat DATE_FORMAT = new SimpleDateFormat("M/d/yy h:mm a");
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "homeBloodPressureReadingIdGenerator")
+    @TableGenerator(name = "homeBloodPressureReadingIdGenerator", table = "id_generator", pkColumnName = "name", valueColumnName = "nextId",
+            pkColumnValue = "home_bp_reading", allocationSize = 50)
     private Long id;
 
     private Long patId;
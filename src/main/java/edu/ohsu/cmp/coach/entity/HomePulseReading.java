@@ -11,7 +11,9 @@ import java.util.Date;
 @Table(name = "home_pulse_reading")
 public class HomePulseReading {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "homePulseReadingIdGenerator")
+    @TableGenerator(name = "homePulseReadingIdGenerator", table = "id_generator", pkColumnName = "name", valueColumnName = "nextId",
+            pkColumnValue = "home_pulse_reading", allocationSize = 50)
     private Long id;
 
     private Long patId;
@@ -18,7 +18,9 @@ public class HypotensionAdverseEvent {
     private static final String KEY_DELIM = "|";
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "hypotensionAdverseEventIdGenerator")
+    @TableGenerator(name = "hypotensionAdverseEventIdGenerator", table = "id_generator", pkColumnName = "name", valueColumnName = "nextId",
+            pkColumnValue = "hypotension_adverse_event", allocationSize = 50)
     private Long id;
 
     private Long patId;
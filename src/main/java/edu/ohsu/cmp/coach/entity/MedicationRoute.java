@@ -1,8 +1,13 @@
 package edu.ohsu.cmp.coach.entity;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import jakarta.persistence.*;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "medication_route")
 public class MedicationRoute {
     @Id
@@ -9,7 +9,9 @@ import java.util.Date;
 @Table(name = "omron_vitals_cache")
 public class MyOmronVitals {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "myOmronVitalsIdGenerator")
+    @TableGenerator(name = "myOmronVitalsIdGenerator", table = "id_generator", pkColumnName = "name", valueColumnName = "nextId",
+            pkColumnValue = "omron_vitals_cache", allocationSize = 50)
     private Long id;
 
     private Long patId;
@@ -16,6 +16,7 @@ public class MyPatient {
     private String patIdHash;
     private Date omronLastUpdated;
     private String redcapId;
+    private String redcapRecordId;
     private Boolean bpGoalUpdated;
 
     private Boolean confirmedEndOfStudy;
@@ -59,6 +60,14 @@ public class MyPatient {
         this.redcapId = redcapId;
     }
 
+    public String getRedcapRecordId() {
+        return redcapRecordId;
+    }
+
+    public void setRedcapRecordId(String redcapRecordId) {
+        this.redcapRecordId = redcapRecordId;
+    }
+
     public Boolean getBpGoalUpdated() {
         return bpGoalUpdated;
     }
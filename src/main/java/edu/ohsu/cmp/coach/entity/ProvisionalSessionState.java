@@ -0,0 +1,36 @@
+package edu.ohsu.cmp.coach.entity;
+
+import jakarta.persistence.*;
+import java.util.Date;
+
+@Entity
+@Table(name = "provisional_session_state")
+public class ProvisionalSessionState {
+    @Id
+    private String sessionId;
+
+    private String state;
+
+    private Date created;
+
+    protected ProvisionalSessionState() {
+    }
+
+    public ProvisionalSessionState(String sessionId, String state) {
+        this.sessionId = sessionId;
+        this.state = state;
+        this.created = new Date();
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+}
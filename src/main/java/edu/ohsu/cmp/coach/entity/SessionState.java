@@ -0,0 +1,51 @@
+package edu.ohsu.cmp.coach.entity;
+
+import jakarta.persistence.*;
+import java.util.Date;
+
+@Entity
+@Table(name = "session_state")
+public class SessionState {
+    @Id
+    private String sessionId;
+
+    private String omronUserId;
+
+    private String state;
+
+    @Lob
+    private byte[] snapshot;
+
+    private Date lastUpdated;
+
+    protected SessionState() {
+    }
+
+    public SessionState(String sessionId, String omronUserId, String state, byte[] snapshot) {
+        this.sessionId = sessionId;
+        this.omronUserId = omronUserId;
+        this.state = state;
+        this.snapshot = snapshot;
+        this.lastUpdated = new Date();
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public String getOmronUserId() {
+        return omronUserId;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public byte[] getSnapshot() {
+        return snapshot;
+    }
+
+    public Date getLastUpdated() {
+        return lastUpdated;
+    }
+}
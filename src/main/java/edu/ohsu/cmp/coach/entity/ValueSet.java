@@ -1,5 +1,7 @@
 package edu.ohsu.cmp.coach.entity;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -7,6 +9,8 @@ import jakarta.persistence.*;
 import java.util.*;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "vsac_valueset")
 public class ValueSet {
     @Id
@@ -29,6 +33,7 @@ public class ValueSet {
 
     // see: https://attacomsian.com/blog/spring-data-jpa-many-to-many-mapping
     @ManyToMany(fetch = FetchType.EAGER, cascade = CascadeType.ALL)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @JoinTable(name = "vsac_valueset_concept",
             joinColumns =        { @JoinColumn(name = "valueSetId", referencedColumnName = "id", nullable = false) },
             inverseJoinColumns = { @JoinColumn(name = "conceptId",  referencedColumnName = "id", nullable = false) }
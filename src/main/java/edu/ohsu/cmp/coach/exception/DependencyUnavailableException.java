@@ -0,0 +1,22 @@
+package edu.ohsu.cmp.coach.exception;
+
+import edu.ohsu.cmp.coach.http.Dependency;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a call to a Dependency is refused without being attempted, because its circuit breaker is open or it
+ * already has as many calls in progress as it's permitted
+ */
+public class DependencyUnavailableException extends IOException {
+    private final Dependency dependency;
+
+    public DependencyUnavailableException(Dependency dependency, Throwable cause) {
+        super(dependency.getName() + " is unavailable - " + cause.getMessage(), cause);
+        this.dependency = dependency;
+    }
+
+    public Dependency getDependency() {
+        return dependency;
+    }
+}
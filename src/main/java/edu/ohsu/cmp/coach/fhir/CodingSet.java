@@ -0,0 +1,126 @@
+package edu.ohsu.cmp.coach.fhir;
+
+import edu.ohsu.cmp.coach.util.FhirUtil;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+
+import java.util.*;
+
+/**
+ * An immutable set of Coding specifications, used to classify incoming resources.
+ * Fully-specified Codings (those having both system and code) are hash-keyed on "system|code" for constant-time
+ * lookup.  Partial specifications (e.g. display only) can't be hashed, and so fall back to a linear scan using
+ * {@link FhirUtil#codingMatches(Coding, Coding)}, preserving the matching semantics of
+ * {@link FhirUtil#hasCoding(CodeableConcept, List)}.
+ */
+public final class CodingSet {
+    private static final CodingSet EMPTY = new CodingSet(Collections.emptyList());
+
+    private final List<Coding> codings;
+    private final Set<String> keys;
+    private final List<Coding> partialCodings;
+
+    public static CodingSet empty() {
+        return EMPTY;
+    }
+
+    public static CodingSet of(Coding ... codings) {
+        return of(Arrays.asList(codings));
+    }
+
+    public static CodingSet of(List<Coding> codings) {
+        return codings == null || codings.isEmpty() ?
+                EMPTY :
+                new CodingSet(codings);
+    }
+
+    private CodingSet(List<Coding> codings) {
+        List<Coding> list = new ArrayList<>();
+        Set<String> keys = new HashSet<>();
+        List<Coding> partialCodings = new ArrayList<>();
+
+        for (Coding spec : codings) {
+            if (spec == null) continue;
+
+            // copy so that later modification of a caller's Coding can't silently alter this set
+            Coding c = spec.copy();
+            list.add(c);
+
+            if (c.hasSystem() && c.hasCode()) {
+                keys.add(toKey(c.getSystem(), c.getCode()));
+            } else {
+                partialCodings.add(c);
+            }
+        }
+
+        this.codings = Collections.unmodifiableList(list);
+        this.keys = Collections.unmodifiableSet(keys);
+        this.partialCodings = Collections.unmodifiableList(partialCodings);
+    }
+
+    /**
+     * @param cc a CodeableConcept object that contains one or more Codings
+     * @return true if any Coding represented in cc matches any Coding specification in this set
+     */
+    public boolean contains(CodeableConcept cc) {
+        if (cc == null || ! cc.hasCoding()) return false;
+
+        for (Coding c : cc.getCoding()) {
+            if (contains(c)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param c a Coding object to test
+     * @return true if c matches any Coding specification in this set
+     */
+    public boolean contains(Coding c) {
+        if (c == null) return false;
+
+        if ( ! keys.isEmpty() && c.hasSystem() && c.hasCode() && keys.contains(toKey(c.getSystem(), c.getCode())) ) {
+            return true;
+        }
+
+        for (Coding spec : partialCodings) {
+            if (FhirUtil.codingMatches(c, spec)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return an unmodifiable List of the Coding specifications in this set, in the order in which they were defined
+     */
+    public List<Coding> getCodings() {
+        return codings;
+    }
+
+    public boolean isEmpty() {
+        return codings.isEmpty();
+    }
+
+    public int size() {
+        return codings.size();
+    }
+
+    @Override
+    public String toString() {
+        List<String> list = new ArrayList<>();
+        for (Coding c : codings) {
+            list.add((c.hasSystem() ? c.getSystem() : "") + "|" +
+                    (c.hasCode() ? c.getCode() : "") + "|" +
+                    (c.hasDisplay() ? c.getDisplay() : ""));
+        }
+        return "CodingSet{" + String.join(", ", list) + "}";
+    }
+
+    private static String toKey(String system, String code) {
+        return system + "|" + code;
+    }
+}
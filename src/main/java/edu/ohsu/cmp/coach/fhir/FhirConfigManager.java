@@ -8,6 +8,7 @@ import org.springframework.context.annotation.PropertySource;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PostConstruct;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -71,6 +72,33 @@ public class FhirConfigManager {
     private Pattern serviceRequestOrderBPGoalNoteSystolicRegex = null;
     private Pattern serviceRequestOrderBPGoalNoteDiastolicRegex = null;
 
+    // immutable CodingSets are built once when configuration loads, and are shared by all sessions, transformers
+    // and services that need to classify resources.  prefer these over the List-based getters when matching
+    private CodingSet bpOfficeCodingSet = null;
+    private CodingSet bpHomeCodingSet = null;
+    private CodingSet bpPanelCodingSet = null;
+    private CodingSet bpSystolicCodingSet = null;
+    private CodingSet bpDiastolicCodingSet = null;
+    private CodingSet pulseCodingSet = null;
+    private CodingSet protocolCodingSet = null;
+    private CodingSet protocolAnswerCodingSet = null;
+    private CodingSet serviceRequestOrderBPGoalCodingSet = null;
+    private CodingSet procedureCounselingCodingSet = null;
+
+    @PostConstruct
+    public void init() {
+        bpOfficeCodingSet = CodingSet.of(getBpOfficeCodings());
+        bpHomeCodingSet = CodingSet.of(getBpHomeCodings());
+        bpPanelCodingSet = CodingSet.of(buildList(getBpPanelCommonCoding(), getBpPanelCustomCodings()));
+        bpSystolicCodingSet = CodingSet.of(buildList(getBpSystolicCommonCoding(), getBpSystolicCustomCodings()));
+        bpDiastolicCodingSet = CodingSet.of(buildList(getBpDiastolicCommonCoding(), getBpDiastolicCustomCodings()));
+        pulseCodingSet = CodingSet.of(buildList(getPulseCommonCoding(), getPulseCustomCodings()));
+        protocolCodingSet = CodingSet.of(getProtocolCoding());
+        protocolAnswerCodingSet = CodingSet.of(getProtocolAnswerCoding());
+        serviceRequestOrderBPGoalCodingSet = CodingSet.of(getServiceRequestOrderBPGoalCodings());
+        procedureCounselingCodingSet = CodingSet.of(getProcedureCounselingCoding());
+    }
+
 //    public Coding getEncounterClassOfficeCoding() {   // ambulatory class to attach to crafted office visit encounters
 //        if (encounterClassOfficeCoding == null) {
 //            encounterClassOfficeCoding = buildCoding(env.getProperty("encounter.class.office.coding"));
@@ -155,6 +183,10 @@ public class FhirConfigManager {
         return bpOfficeCodings;
     }
 
+    public CodingSet getBpOfficeCodingSet() {
+        return bpOfficeCodingSet;
+    }
+
     /**
      * @return a List of Codings that are used to positively identify a Resource as being in the Home context
      */
@@ -165,15 +197,20 @@ public class FhirConfigManager {
         return bpHomeCodings;
     }
 
+    public CodingSet getBpHomeCodingSet() {
+        return bpHomeCodingSet;
+    }
+
     /**
      * @return a List of Codings that are used to positively identify a Resource as being a Panel (contains *both*
      *         systolic and diastolic components).
      */
     public List<Coding> getBpPanelCodings() {
-        List<Coding> list = new ArrayList<>();
-        list.add(getBpPanelCommonCoding());             // generic panel coding
-        list.addAll(getBpPanelCustomCodings());         // any other panel codings specified by the user
-        return list;
+        return bpPanelCodingSet.getCodings();         // generic panel coding, plus any others specified by the user
+    }
+
+    public CodingSet getBpPanelCodingSet() {
+        return bpPanelCodingSet;
     }
 
     public Coding getBpPanelCommonCoding() {    // ANY source, may be home, office, inpatient, etc.
@@ -188,10 +225,11 @@ public class FhirConfigManager {
     }
 
     public List<Coding> getBpSystolicCodings() {
-        List<Coding> list = new ArrayList<>();
-        list.add(getBpSystolicCommonCoding());          // generic systolic coding
-        list.addAll(getBpSystolicCustomCodings());      // any other systolic codings specified by the user
-        return list;
+        return bpSystolicCodingSet.getCodings();      // generic systolic coding, plus any others specified by the user
+    }
+
+    public CodingSet getBpSystolicCodingSet() {
+        return bpSystolicCodingSet;
     }
 
     public Coding getBpSystolicCommonCoding() {     // ANY source, may be home, office, inpatient, etc.
@@ -206,10 +244,11 @@ public class FhirConfigManager {
     }
 
     public List<Coding> getBpDiastolicCodings() {
-        List<Coding> list = new ArrayList<>();
-        list.add(getBpDiastolicCommonCoding());         // generic diastolic coding
-        list.addAll(getBpDiastolicCustomCodings());     // any other diastolic codings specified by the user
-        return list;
+        return bpDiastolicCodingSet.getCodings();     // generic diastolic coding, plus any others specified by the user
+    }
+
+    public CodingSet getBpDiastolicCodingSet() {
+        return bpDiastolicCodingSet;
     }
 
     public Coding getBpDiastolicCommonCoding() {    // ANY source, may be home, office, inpatient, etc.
@@ -248,10 +287,11 @@ public class FhirConfigManager {
     }
 
     public List<Coding> getPulseCodings() {
-        List<Coding> list = new ArrayList<>();
-        list.add(getPulseCommonCoding());               // generic pulse coding
-        list.addAll(getPulseCustomCodings());           // any other pulse codings specified by the user
-        return list;
+        return pulseCodingSet.getCodings();           // generic pulse coding, plus any others specified by the user
+    }
+
+    public CodingSet getPulseCodingSet() {
+        return pulseCodingSet;
     }
 
     public Coding getPulseCommonCoding() {
@@ -272,6 +312,10 @@ public class FhirConfigManager {
         return serviceRequestOrderBPGoalCodings;
     }
 
+    public CodingSet getServiceRequestOrderBPGoalCodingSet() {
+        return serviceRequestOrderBPGoalCodingSet;
+    }
+
     public Pattern getServiceRequestOrderBPGoalNoteSystolicRegex() {
         if (serviceRequestOrderBPGoalNoteSystolicRegex == null) {
             serviceRequestOrderBPGoalNoteSystolicRegex = buildPattern(env.getProperty("service-request-order.bp-goal.note.systolic-regex"));
@@ -312,10 +356,18 @@ public class FhirConfigManager {
         return PROTOCOL_CODING;
     }
 
+    public CodingSet getProtocolCodingSet() {
+        return protocolCodingSet;
+    }
+
     public Coding getProtocolAnswerCoding() {
         return PROTOCOL_ANSWER_CODING;
     }
 
+    public CodingSet getProtocolAnswerCodingSet() {
+        return protocolAnswerCodingSet;
+    }
+
     public String getProtocolAnswerYes() {
         return protocolAnswerYes;
     }
@@ -356,11 +408,22 @@ public class FhirConfigManager {
         return PROCEDURE_COUNSELING_CODING;
     }
 
+    public CodingSet getProcedureCounselingCodingSet() {
+        return procedureCounselingCodingSet;
+    }
+
 
 ///////////////////////////////////////////////////////////////////
 // private methods
 //
 
+    private List<Coding> buildList(Coding commonCoding, List<Coding> customCodings) {
+        List<Coding> list = new ArrayList<>();
+        list.add(commonCoding);
+        list.addAll(customCodings);
+        return list;
+    }
+
     private List<Coding> buildCodings(String s) {
         List<Coding> list = new ArrayList<>();
         if (StringUtils.isNotBlank(s)) {
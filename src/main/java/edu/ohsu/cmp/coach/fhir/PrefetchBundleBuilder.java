@@ -0,0 +1,107 @@
+package edu.ohsu.cmp.coach.fhir;
+
+import ca.uhn.fhir.context.FhirContext;
+import edu.ohsu.cmp.coach.exception.CaseNotHandledException;
+import edu.ohsu.cmp.coach.util.FhirUtil;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Base;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Property;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Builds the prefetch Bundle sent to CQF-Ruler.  Like CompositeBundle, but each resource is included only once, even
+ * if it's consumed more than once (e.g. an Encounter referenced by several Observations), and resources may be
+ * stripped down to only those elements CQF-Ruler's CQL actually reads, keeping the prefetch as small as possible.
+ */
+public class PrefetchBundleBuilder {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Map<String, Set<String>> keepElements;
+    private final Bundle bundle;
+    private final Set<String> keys = new HashSet<>();
+    private int duplicates = 0;
+
+    /**
+     * @param keepElements the elements to keep in resources of each type, by type.  resources of types not in this
+     *                     map are kept whole.  a resource's id is always kept
+     */
+    public PrefetchBundleBuilder(Map<String, Set<String>> keepElements) {
+        this.keepElements = keepElements;
+        bundle = new Bundle();
+        bundle.setType(Bundle.BundleType.COLLECTION);
+    }
+
+    public void consume(IBaseResource resource) {
+        if (resource != null) {
+            if (resource instanceof Bundle) {
+                for (Bundle.BundleEntryComponent entry : ((Bundle) resource).getEntry()) {
+                    if (entry.hasResource() && isNew(entry.getResource())) {
+                        Bundle.BundleEntryComponent copy = entry.copy();
+                        copy.setResource(strip(copy.getResource()));
+                        bundle.addEntry(copy);
+                    }
+                }
+
+            } else if (resource instanceof Resource) {
+                if (isNew((Resource) resource)) {
+                    FhirUtil.appendResourceToBundle(bundle, strip((Resource) resource));
+                }
+
+            } else {
+                throw new CaseNotHandledException("couldn't handle " + resource.getClass().getName());
+            }
+        }
+    }
+
+    public Bundle getBundle() {
+        if (duplicates > 0) {
+            logger.debug("omitted " + duplicates + " duplicate resource(s) from prefetch");
+        }
+        return bundle;
+    }
+
+    public int size() {
+        return bundle.hasEntry() ? bundle.getEntry().size() : 0;
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    // resources are identified by type and id.  resources without ids can't be identified, so are always included
+    private boolean isNew(Resource resource) {
+        if ( ! resource.hasIdElement() || ! resource.getIdElement().hasIdPart() ) {
+            return true;
+        }
+
+        if (keys.add(resource.fhirType() + "/" + resource.getIdElement().getIdPart())) {
+            return true;
+
+        } else {
+            duplicates ++;
+            return false;
+        }
+    }
+
+    private Resource strip(Resource resource) {
+        Set<String> elements = keepElements.get(resource.fhirType());
+        if (elements == null) return resource;
+
+        Resource stripped = (Resource) FhirContext.forR4Cached().getResourceDefinition(resource).newInstance();
+        stripped.setIdElement(resource.getIdElement().copy());
+        for (String name : elements) {
+            Property property = resource.getNamedProperty(name);
+            if (property != null && property.hasValues()) {
+                for (Base value : property.getValues()) {
+                    stripped.setProperty(name.hashCode(), name, value.copy());
+                }
+            }
+        }
+        return stripped;
+    }
+}
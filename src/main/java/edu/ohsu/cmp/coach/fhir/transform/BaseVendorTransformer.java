@@ -1,6 +1,7 @@
 package edu.ohsu.cmp.coach.fhir.transform;
 
 import edu.ohsu.cmp.coach.exception.DataException;
+import edu.ohsu.cmp.coach.fhir.CodingSet;
 import edu.ohsu.cmp.coach.fhir.FhirConfigManager;
 import edu.ohsu.cmp.coach.model.*;
 import edu.ohsu.cmp.coach.util.FhirUtil;
@@ -25,7 +26,6 @@ public abstract class BaseVendorTransformer implements VendorTransformer {
     private static final String TOKEN_CATEGORY = "\\{category}";
     private static final String TOKEN_RELATIVE_DATE = "\\{now([-+])([mMdDyY0-9]+)}"; // "\\{now[-+][mMdDyY0-9]+}";
     private static final Pattern PATTERN_RELATIVE_DATE = Pattern.compile("now([-+])([mMdDyY0-9]+)");
-    private static final Pattern PATTERN_RELATIVE_DATE_PART = Pattern.compile("([0-9]+)([mMdDyY])");
 
 //    private static final DateFormat FHIR_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
     private static final DateFormat FHIR_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX");
@@ -194,32 +194,8 @@ public abstract class BaseVendorTransformer implements VendorTransformer {
         Matcher m1 = PATTERN_RELATIVE_DATE.matcher(s);
 
         if (m1.matches()) {
-            Calendar cal = Calendar.getInstance();
-            cal.setTime(new Date());
-            cal.set(Calendar.HOUR, 0);
-            cal.set(Calendar.MINUTE, 0);
-            cal.set(Calendar.SECOND, 0);
-            cal.set(Calendar.MILLISECOND, 0);
-
             int multiplier = m1.group(1).equals("-") ? -1 : 1;
-
-            Matcher m2 = PATTERN_RELATIVE_DATE_PART.matcher(m1.group(2));
-            while (m2.find()) {
-                int i = Integer.parseInt(m2.group(1));
-                String datePart = m2.group(2);
-
-                if (datePart.equalsIgnoreCase("y")) {
-                    cal.add(Calendar.YEAR, multiplier * i);
-
-                } else if (datePart.equalsIgnoreCase("m")) {
-                    cal.add(Calendar.MONTH, multiplier * i);
-
-                } else if (datePart.equalsIgnoreCase("d")) {
-                    cal.add(Calendar.DAY_OF_MONTH, multiplier * i);
-                }
-            }
-
-            return FHIR_DATE_FORMAT.format(cal.getTime());
+            return FHIR_DATE_FORMAT.format(FhirUtil.toRelativeDate(m1.group(2), multiplier));
         }
 
         return "";
@@ -284,70 +260,96 @@ public abstract class BaseVendorTransformer implements VendorTransformer {
             }
         }
 
-        Map<String, List<Observation>> encounterObservationsMap = buildEncounterObservationsMap(bundle);
+        // build the lookup structures once up front, so that each Observation is classified and associated with its
+        // Encounter exactly once, in a single pass over the bundle.  this is the hottest path at session start for
+        // patients with years of BP data, so avoid re-scanning coding lists or rebuilding keys per Observation
 
-        List<BloodPressureModel> list = new ArrayList<>();
+        ObservationClassifier classifier = new ObservationClassifier(fcm);
 
-        for (Encounter encounter : getAllEncounters(bundle)) {
-            logger.debug("processing Encounter: " + encounter.getId());
+        Map<String, Encounter> encounterIndex = buildEncounterIndex(bundle);
 
-            // these Observations get popped / removed from the map
-            List<Observation> encounterObservations = getObservationsFromMap(encounter, encounterObservationsMap);
+        Map<Encounter, EncounterReadings> encounterReadingsMap = new LinkedHashMap<>();
+        Map<PairKey, SystolicDiastolicPair> sdpMap = new LinkedHashMap<>();
+        List<Observation> unlinkedPanelList = new ArrayList<>();
 
-            if (encounterObservations == null) {
-                logger.debug("no Observations found for Encounter " + encounter.getId() + " - skipping -");
-                continue;
-            }
+        for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+            if ( ! entry.hasResource() || ! (entry.getResource() instanceof Observation) ) continue;
 
-            logger.debug("found " + encounterObservations.size() + " Observations for Encounter " + encounter.getId());
-
-            List<Observation> bpObservationList = new ArrayList<>();            // potentially many per encounter
-            Map<String, SystolicDiastolicPair> map = new LinkedHashMap<>();     // potentially many per encounter
-            Observation protocol = null;
-
-            for (Observation o : encounterObservations) {
-                logger.debug("processing Observation " + o.getId() + " for Encounter " + encounter.getId());
+            Observation o = (Observation) entry.getResource();
 
+            try {
                 if ( ! o.hasCode() ) {
                     logger.warn("observation " + o.getId() + " missing code, this is unexpected - skipping -");
+                    continue;
+                }
 
-                } else if (FhirUtil.hasCoding(o.getCode(), systolicCodings)) {
-                    String key = getObservationMatchKey(o);
-                    if ( ! map.containsKey(key) ) {
-                        map.put(key, new SystolicDiastolicPair());
-                    }
-                    map.get(key).setSystolicObservation(o);
-                    logger.debug("observation " + o.getId() + " has systolic coding; added to SystolicDiastolicPair map with key=" + key);
+                // storer 2023-02-21: Observations *may* have Encounters referenced, but if we didn't pull them for
+                // whatever reason, we still want to process them as if they didn't have Encounters referenced.
+                Encounter encounter = findEncounter(o, encounterIndex);
+
+                Set<ObservationKind> kinds = classifier.classify(o.getCode());
+
+                // Observations tied to an Encounter are classified systolic / diastolic first, whereas unlinked
+                // Observations are classified panel first; this mirrors how each case has always been handled
+                ObservationKind kind = encounter != null ?
+                        pick(kinds, ObservationKind.SYSTOLIC, ObservationKind.DIASTOLIC, ObservationKind.PANEL, ObservationKind.PROTOCOL) :
+                        pick(kinds, ObservationKind.PANEL, ObservationKind.SYSTOLIC, ObservationKind.DIASTOLIC);
 
-                } else if (FhirUtil.hasCoding(o.getCode(), diastolicCodings)) {
-                    String key = getObservationMatchKey(o);
-                    if ( ! map.containsKey(key) ) {
-                        map.put(key, new SystolicDiastolicPair());
+                if (kind == null) {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("did not process Observation " + o.getId() + " - invalid coding");
                     }
-                    map.get(key).setDiastolicObservation(o);
-                    logger.debug("observation " + o.getId() + " has diastolic coding; added to SystolicDiastolicPair map with key=" + key);
+                    continue;
+                }
 
-                } else if (FhirUtil.hasCoding(o.getCode(), bpPanelCodings)) {
-                    bpObservationList.add(o);
-                    logger.debug("observation " + o.getId() + " has panel coding; expecting both systolic and diastolic to be present");
+                switch (kind) {
+                    case SYSTOLIC:
+                        sdpMap.computeIfAbsent(new PairKey(encounter, getObservationMatchKey(o)), k -> new SystolicDiastolicPair(encounter))
+                                .setSystolicObservation(o);
+                        break;
+
+                    case DIASTOLIC:
+                        sdpMap.computeIfAbsent(new PairKey(encounter, getObservationMatchKey(o)), k -> new SystolicDiastolicPair(encounter))
+                                .setDiastolicObservation(o);
+                        break;
+
+                    case PANEL:
+                        if (encounter != null) {
+                            encounterReadingsMap.computeIfAbsent(encounter, k -> new EncounterReadings())
+                                    .getPanelList().add(o);
+                        } else {
+                            unlinkedPanelList.add(o);
+                        }
+                        break;
 
-                } else if (protocol == null && FhirUtil.hasCoding(o.getCode(), fcm.getProtocolCoding())) {
-                    protocol = o;
-                    logger.debug("observation " + o.getId() + " has protocol coding; will associate with encounter " +
-                            encounter.getId());
+                    case PROTOCOL:
+                        EncounterReadings readings = encounterReadingsMap.computeIfAbsent(encounter, k -> new EncounterReadings());
+                        if (readings.getProtocol() == null) {
+                            readings.setProtocol(o);
+                        }
+                        break;
+                }
 
-                } else {
-                    logger.warn("observation " + o.getId() + " has a code but did not match any codings, this is unexpected - skipping -");
+                if (logger.isDebugEnabled()) {
+                    logger.debug("observation " + o.getId() + " classified as " + kind + " (encounter=" +
+                            (encounter != null ? encounter.getId() : "none") + ")");
                 }
+
+            } catch (Exception e) {
+                logger.error("caught " + e.getClass().getName() + " processing Observation with id=" + o.getId() + " - " + e.getMessage(), e);
             }
+        }
+
+        List<BloodPressureModel> list = new ArrayList<>();
 
-            // process BP panel Observations
+        // process BP panel Observations
 
-            for (Observation bp : bpObservationList) {
-                logger.debug("bpObservation = " + bp.getId() + " (encounter=" + encounter.getId() +
-                        ") (effectiveDateTime=" + bp.getEffectiveDateTimeType().getValueAsString() + ")");
+        for (Map.Entry<Encounter, EncounterReadings> entry : encounterReadingsMap.entrySet()) {
+            Encounter encounter = entry.getKey();
+            Observation protocol = entry.getValue().getProtocol();
+            for (Observation bp : entry.getValue().getPanelList()) {
                 try {
-                    list.add(buildBloodPressureModel(encounter, bp, protocol));
+                    addModel(list, buildBloodPressureModel(encounter, bp, protocol));
 
                 } catch (DataException e) {
                     logger.warn("caught " + e.getClass().getSimpleName() +
@@ -355,154 +357,192 @@ public abstract class BaseVendorTransformer implements VendorTransformer {
                             e.getMessage() + " - skipping -");
                 }
             }
+        }
+
+        // there may be BP observations in the system that aren't tied to any encounters.  we still want to capture these
+        // of course, we can't associate any other observations with them (e.g. protocol), but whatever.  better than nothing
+
+        for (Observation bp : unlinkedPanelList) {
+            try {
+                addModel(list, buildBloodPressureModel(bp));
 
-            // process systolic and diastolic Observation pairs
+            } catch (DataException e) {
+                logger.warn("caught " + e.getClass().getSimpleName() +
+                        " building BloodPressureModel from Observation with id=" + bp.getId() + " - " +
+                        e.getMessage() + " - skipping -");
+            }
+        }
 
-            for (Map.Entry<String, SystolicDiastolicPair> entry : map.entrySet()) {
-                SystolicDiastolicPair sdp = entry.getValue();
-                if (sdp.isValid()) {
-                    Observation systolic = sdp.getSystolicObservation();
-                    Observation diastolic = sdp.getDiastolicObservation();
+        // process systolic and diastolic Observation pairs.  pairs are keyed on (encounter, effective instant), where
+        // Observations may alternatively have a specially-crafted note element that contains a UUID that can be used
+        // to recombine independent systolic and diastolic readings
 
-                    logger.debug("systolicObservation = " + systolic.getId() + " (effectiveDateTime=" +
-                            systolic.getEffectiveDateTimeType().getValueAsString() + ")");
-                    logger.debug("diastolicObservation = " + diastolic.getId() + " (effectiveDateTime=" +
-                            diastolic.getEffectiveDateTimeType().getValueAsString() + ")");
+        for (Map.Entry<PairKey, SystolicDiastolicPair> entry : sdpMap.entrySet()) {
+            SystolicDiastolicPair sdp = entry.getValue();
+            if (sdp.isValid()) {
+                Observation systolic = sdp.getSystolicObservation();
+                Observation diastolic = sdp.getDiastolicObservation();
+                Encounter encounter = sdp.getEncounter();
 
-                    try {
-                        list.add(buildBloodPressureModel(encounter, systolic, diastolic, protocol));
+                try {
+                    if (encounter != null) {
+                        EncounterReadings readings = encounterReadingsMap.get(encounter);
+                        Observation protocol = readings != null ? readings.getProtocol() : null;
+                        addModel(list, buildBloodPressureModel(encounter, systolic, diastolic, protocol));
 
-                    } catch (DataException e) {
-                        logger.warn("caught " + e.getClass().getSimpleName() +
-                                " building BloodPressureModel from (systolic, diastolic) Observations with systolic.id=" +
-                                systolic.getId() + ", diastolic.id=" + diastolic.getId() + " - " +
-                                e.getMessage() + " - skipping -");
+                    } else {
+                        addModel(list, buildBloodPressureModel(systolic, diastolic));
                     }
 
-                } else {
-                    logger.warn("found incomplete systolic-diastolic pair for readingDate=" + entry.getKey() + " - skipping -");
+                } catch (DataException e) {
+                    logger.warn("caught " + e.getClass().getSimpleName() +
+                            " building BloodPressureModel from (systolic, diastolic) Observations with systolic.id=" +
+                            systolic.getId() + ", diastolic.id=" + diastolic.getId() + " - " +
+                            e.getMessage() + " - skipping -");
                 }
+
+            } else {
+                logger.warn("found incomplete systolic-diastolic pair for readingDate=" + entry.getKey().getMatchKey() + " - skipping -");
             }
         }
 
-        // there may be BP observations in the system that aren't tied to any encounters.  we still want to capture these
-        // of course, we can't associate any other observations with them (e.g. protocol), but whatever.  better than nothing
-
-        // these observations without Encounters that also have identical timestamps are presumed to be related.
-        // these need to be combined into a single BloodPresureModel object for any pair of (systolic, diastolic) that
-        // have the same timestamp
-        // alternatively, Observations may have a specially-crafted note element that contains a UUID that can be used to
-        // recombine independent systolic and diastolic readings
-
-        // storer 2022-12-07: Observations may have Encounter references, but if we can't get at those Encounter records,
-        // we probably shouldn't be processing them.
-
-        // storer 2023-02-21: Observations *may* have Encounters referenced, but if we didn't pull them for whatever
-        // reason, we still want to process them as if they didn't have Encounters referenced.
-        // basically, process all remaining Observations ignoring Encounter data
-
-        logger.debug("processing BP Observations that don't have Encounter referenced, or where no matching Encounter was retrieved -");
+        return list;
+    }
 
-        Map<String, SystolicDiastolicPair> sdpMap = new LinkedHashMap<>();
+    // strip any item where we can't determine the source
+    private void addModel(List<BloodPressureModel> list, BloodPressureModel bpm) {
+        if (bpm.getSource() == ObservationSource.UNKNOWN) {
+            logger.warn("removing BloodPressureModel " + bpm + " - source is UNKNOWN");
+        } else {
+            list.add(bpm);
+        }
+    }
 
-        for (List<Observation> observationsList : encounterObservationsMap.values()) {
-//        if (encounterObservationsMap.containsKey(NO_ENCOUNTERS_KEY)) {
+    private Map<String, Encounter> buildEncounterIndex(Bundle bundle) {
+        Map<String, Encounter> map = new HashMap<>();
+        for (Encounter encounter : getAllEncounters(bundle)) {
+            for (String key : buildKeys(encounter.getId(), encounter.getIdentifier())) {
+                map.putIfAbsent(key, encounter);
+            }
+        }
+        return map;
+    }
 
-            for (Observation o : observationsList) { //encounterObservationsMap.remove(NO_ENCOUNTERS_KEY)) {
-                try {
-                    if (o.hasCode()) {
-                        if (FhirUtil.hasCoding(o.getCode(), bpPanelCodings)) {
-                            logger.debug("bpObservation = " + o.getId() + " (no encounter) (effectiveDateTime=" +
-                                    o.getEffectiveDateTimeType().getValueAsString() + ")");
-
-                            try {
-                                list.add(buildBloodPressureModel(o));
-
-                            } catch (DataException e) {
-                                logger.warn("caught " + e.getClass().getSimpleName() +
-                                        " building BloodPressureModel from Observation with id=" + o.getId() + " - " +
-                                        e.getMessage() + " - skipping -");
-                            }
+    private Encounter findEncounter(Observation observation, Map<String, Encounter> encounterIndex) {
+        if (observation.hasEncounter()) {
+            for (String key : buildKeys(observation.getEncounter())) {
+                Encounter encounter = encounterIndex.get(key);
+                if (encounter != null) {
+                    return encounter;
+                }
+            }
+        }
+        return null;
+    }
 
-                        } else if (FhirUtil.hasCoding(o.getCode(), systolicCodings)) {
-                            String key = getObservationMatchKey(o);
-                            if (!sdpMap.containsKey(key)) {
-                                sdpMap.put(key, new SystolicDiastolicPair());
-                            }
-                            sdpMap.get(key).setSystolicObservation(o);
+    private static ObservationKind pick(Set<ObservationKind> kinds, ObservationKind ... precedence) {
+        for (ObservationKind kind : precedence) {
+            if (kinds.contains(kind)) {
+                return kind;
+            }
+        }
+        return null;
+    }
 
-                        } else if (FhirUtil.hasCoding(o.getCode(), diastolicCodings)) {
-                            String key = getObservationMatchKey(o);
-                            if (!sdpMap.containsKey(key)) {
-                                sdpMap.put(key, new SystolicDiastolicPair());
-                            }
-                            sdpMap.get(key).setDiastolicObservation(o);
+    private enum ObservationKind {
+        SYSTOLIC,
+        DIASTOLIC,
+        PANEL,
+        PROTOCOL
+    }
 
-                        } else {
-                            logger.debug("did not process Observation " + o.getId() + " - invalid coding");
-                        }
+    // classifies an Observation's code against all BP-related CodingSets in one go
+    private static final class ObservationClassifier {
+        private final Map<ObservationKind, CodingSet> codingSetMap = new EnumMap<>(ObservationKind.class);
 
-                    } else {
-                        logger.debug("did not process Observation " + o.getId() + " - no coding");
-                    }
+        public ObservationClassifier(FhirConfigManager fcm) {
+            codingSetMap.put(ObservationKind.SYSTOLIC, fcm.getBpSystolicCodingSet());
+            codingSetMap.put(ObservationKind.DIASTOLIC, fcm.getBpDiastolicCodingSet());
+            codingSetMap.put(ObservationKind.PANEL, fcm.getBpPanelCodingSet());
+            codingSetMap.put(ObservationKind.PROTOCOL, fcm.getProtocolCodingSet());
+        }
 
-                } catch (Exception e) {
-                    logger.error("caught " + e.getClass().getName() + " processing Observation with id=" + o.getId() + " - " + e.getMessage(), e);
+        public Set<ObservationKind> classify(CodeableConcept cc) {
+            Set<ObservationKind> kinds = EnumSet.noneOf(ObservationKind.class);
+            for (Map.Entry<ObservationKind, CodingSet> entry : codingSetMap.entrySet()) {
+                if (entry.getValue().contains(cc)) {
+                    kinds.add(entry.getKey());
                 }
             }
+            return kinds;
         }
+    }
 
-        // now process dateObservationsMap, which should only include individual systolic and diastolic readings
+    // helper class for organizing working objects
+    private static final class EncounterReadings {
+        private final List<Observation> panelList = new ArrayList<>();     // potentially many per encounter
+        private Observation protocol = null;
 
-        for (Map.Entry<String, SystolicDiastolicPair> entry : sdpMap.entrySet()) {
-            SystolicDiastolicPair sdp = entry.getValue();
-            if (sdp.isValid()) {
-                Observation systolic = sdp.getSystolicObservation();
-                Observation diastolic = sdp.getDiastolicObservation();
+        public List<Observation> getPanelList() {
+            return panelList;
+        }
 
-                logger.debug("systolicObservation = " + systolic.getId() + " (effectiveDateTime=" +
-                        systolic.getEffectiveDateTimeType().getValueAsString() + ")");
-                logger.debug("diastolicObservation = " + diastolic.getId() + " (effectiveDateTime=" +
-                        diastolic.getEffectiveDateTimeType().getValueAsString() + ")");
+        public Observation getProtocol() {
+            return protocol;
+        }
 
-                try {
-                    list.add(buildBloodPressureModel(systolic, diastolic));
+        public void setProtocol(Observation protocol) {
+            this.protocol = protocol;
+        }
+    }
 
-                } catch (DataException e) {
-                    logger.warn("caught " + e.getClass().getSimpleName() +
-                            " building BloodPressureModel from (systolic, diastolic) Observations with systolic.id=" +
-                            systolic.getId() + ", diastolic.id=" + diastolic.getId() + " - " +
-                            e.getMessage() + " - skipping -");
-                }
+    // systolic and diastolic readings are paired by (encounter, match key), where encounter is compared by identity
+    // and may be null for Observations that aren't tied to a retrieved Encounter
+    private static final class PairKey {
+        private final Encounter encounter;
+        private final Object matchKey;
 
-            } else {
-                logger.warn("found incomplete systolic-diastolic pair for readingDate=" + entry.getKey() + " - skipping -");
-            }
+        public PairKey(Encounter encounter, Object matchKey) {
+            this.encounter = encounter;
+            this.matchKey = matchKey;
         }
 
-        // finally, strip any item from the list where we can't determine the source
+        public Object getMatchKey() {
+            return matchKey;
+        }
 
-        Iterator<BloodPressureModel> iter = list.iterator();
-        while (iter.hasNext()) {
-            BloodPressureModel bpm = iter.next();
-            if (bpm.getSource() == ObservationSource.UNKNOWN) {
-                logger.warn("removing BloodPressureModel " + bpm + " - source is UNKNOWN");
-                iter.remove();
-            }
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PairKey pairKey = (PairKey) o;
+            return encounter == pairKey.encounter && Objects.equals(matchKey, pairKey.matchKey);
         }
 
-        return list;
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(encounter) + Objects.hashCode(matchKey);
+        }
     }
 
     // helper class for organizing working objects
     private static final class SystolicDiastolicPair {
+        private final Encounter encounter;
         private Observation systolicObservation = null;
         private Observation diastolicObservation = null;
 
+        public SystolicDiastolicPair(Encounter encounter) {
+            this.encounter = encounter;
+        }
+
         public boolean isValid() {
             return systolicObservation != null && diastolicObservation != null;
         }
 
+        public Encounter getEncounter() {
+            return encounter;
+        }
+
         public Observation getSystolicObservation() {
             return systolicObservation;
         }
@@ -729,11 +769,16 @@ public abstract class BaseVendorTransformer implements VendorTransformer {
         return list;
     }
 
-    private String getObservationMatchKey(Observation observation) {
+    private Object getObservationMatchKey(Observation observation) {
         String uuid = getUUIDFromNote(observation); // used by Epic, but Default should still understand and use this if it exists
-        return uuid != null ?
-                uuid :
-                observation.getEffectiveDateTimeType().getValueAsString();
+        if (uuid != null) return uuid;
+
+        // compare the effective instant rather than its String representation, so that identical times expressed
+        // with different precision or timezone offsets still pair up
+        Date effective = observation.getEffectiveDateTimeType().getValue();
+        return effective != null ?
+                effective.getTime() :
+                null;
     }
 
     private String getUUIDFromNote(Observation observation) {
@@ -215,12 +215,12 @@ public class DefaultVendorTransformer extends BaseVendorTransformer implements V
                 Iterator<Observation> iter = encounterObservations.iterator();
                 while (iter.hasNext()) {
                     Observation o = iter.next();
-                    if (FhirUtil.hasCoding(o.getCode(), fcm.getPulseCodings())) {
+                    if (fcm.getPulseCodingSet().contains(o.getCode())) {
                         logger.debug("pulseObservation = " + o.getId() + " (effectiveDateTime=" + o.getEffectiveDateTimeType().getValueAsString() + ")");
                         pulseObservationList.add(o);
                         iter.remove();
 
-                    } else if (protocolObservation == null && FhirUtil.hasCoding(o.getCode(), fcm.getProtocolCoding())) {
+                    } else if (protocolObservation == null && fcm.getProtocolCodingSet().contains(o.getCode())) {
                         logger.debug("protocolObservation = " + o.getId() + " (effectiveDateTime=" + o.getEffectiveDateTimeType().getValueAsString() + ")");
                         protocolObservation = o;
                         iter.remove();
@@ -252,7 +252,7 @@ public class DefaultVendorTransformer extends BaseVendorTransformer implements V
                 for (Observation o : entry.getValue()) {
                     try {
                         if (o.hasCode()) {
-                            if (FhirUtil.hasCoding(o.getCode(), fcm.getPulseCodings())) {
+                            if (fcm.getPulseCodingSet().contains(o.getCode())) {
                                 logger.debug("pulseObservation = " + o.getId() + " (effectiveDateTime=" + o.getEffectiveDateTimeType().getValueAsString() + ")");
                                 try {
                                     list.add(new PulseModel(o, fcm));
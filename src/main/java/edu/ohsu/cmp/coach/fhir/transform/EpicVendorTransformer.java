@@ -4,6 +4,7 @@ import edu.ohsu.cmp.coach.exception.CaseNotHandledException;
 import edu.ohsu.cmp.coach.exception.ConfigurationException;
 import edu.ohsu.cmp.coach.exception.DataException;
 import edu.ohsu.cmp.coach.exception.ScopeException;
+import edu.ohsu.cmp.coach.fhir.CodingSet;
 import edu.ohsu.cmp.coach.fhir.FhirConfigManager;
 import edu.ohsu.cmp.coach.fhir.FhirStrategy;
 import edu.ohsu.cmp.coach.model.*;
@@ -227,12 +228,12 @@ public class EpicVendorTransformer extends BaseVendorTransformer implements Vend
                 Iterator<Observation> iter = encounterObservations.iterator();
                 while (iter.hasNext()) {
                     Observation o = iter.next();
-                    if (FhirUtil.hasCoding(o.getCode(), fcm.getPulseCodings())) {
+                    if (fcm.getPulseCodingSet().contains(o.getCode())) {
                         logger.debug("pulseObservation = " + o.getId() + " (effectiveDateTime=" + o.getEffectiveDateTimeType().getValueAsString() + ")");
                         pulseObservationList.add(o);
                         iter.remove();
 
-                    } else if (protocolObservation == null && FhirUtil.hasCoding(o.getCode(), fcm.getProtocolCoding())) {
+                    } else if (protocolObservation == null && fcm.getProtocolCodingSet().contains(o.getCode())) {
                         logger.debug("protocolObservation = " + o.getId() + " (effectiveDateTime=" + o.getEffectiveDateTimeType().getValueAsString() + ")");
                         protocolObservation = o;
                         iter.remove();
@@ -268,7 +269,7 @@ public class EpicVendorTransformer extends BaseVendorTransformer implements Vend
         for (Map.Entry<String, List<Observation>> entry : encounterObservationsMap.entrySet()) {
             if (entry.getValue() != null) {
                 for (Observation o : entry.getValue()) {
-                    if (o.hasCode() && FhirUtil.hasCoding(o.getCode(), fcm.getPulseCodings())) {
+                    if (o.hasCode() && fcm.getPulseCodingSet().contains(o.getCode())) {
                         logger.debug("pulseObservation = " + o.getId() + " (effectiveDateTime=" + o.getEffectiveDateTimeType().getValueAsString() + ")");
                         PulseModel pm = new PulseModel(o, fcm);
 
@@ -366,7 +367,7 @@ public class EpicVendorTransformer extends BaseVendorTransformer implements Vend
 
         if (bpObservation.hasCode()) {
             CodeableConcept code = bpObservation.getCode();
-            if (type == ResourceType.SYSTOLIC && FhirUtil.hasCoding(code, fcm.getBpSystolicCodings())) {
+            if (type == ResourceType.SYSTOLIC && fcm.getBpSystolicCodingSet().contains(code)) {
                 for (Coding c : fcm.getBpSystolicCustomCodings()) {
                     if (c.hasSystem() && c.getSystem().startsWith(URN_OID_PREFIX)) { // include only urn:oid Codings in Epic-destined Observations
                         o.getCode().addCoding(c);
@@ -374,7 +375,7 @@ public class EpicVendorTransformer extends BaseVendorTransformer implements Vend
                 }
                 o.setValue(bpObservation.getValueQuantity());
 
-            } else if (type == ResourceType.DIASTOLIC && FhirUtil.hasCoding(code, fcm.getBpDiastolicCodings())) {
+            } else if (type == ResourceType.DIASTOLIC && fcm.getBpDiastolicCodingSet().contains(code)) {
                 for (Coding c : fcm.getBpDiastolicCustomCodings()) {
                     if (c.hasSystem() && c.getSystem().startsWith(URN_OID_PREFIX)) { // include only urn:oid Codings in Epic-destined Observations
                         o.getCode().addCoding(c);
@@ -382,14 +383,14 @@ public class EpicVendorTransformer extends BaseVendorTransformer implements Vend
                 }
                 o.setValue(bpObservation.getValueQuantity());
 
-            } else if (FhirUtil.hasCoding(code, fcm.getBpPanelCodings())) {
+            } else if (fcm.getBpPanelCodingSet().contains(code)) {
                 if (bpObservation.hasComponent()) {
                     if (type == ResourceType.SYSTOLIC) {
-                        Observation.ObservationComponentComponent component = getComponentHavingCoding(bpObservation, fcm.getBpSystolicCodings());
+                        Observation.ObservationComponentComponent component = getComponentHavingCoding(bpObservation, fcm.getBpSystolicCodingSet());
                         o.setValue(component.getValueQuantity());
 
                     } else if (type == ResourceType.DIASTOLIC) {
-                        Observation.ObservationComponentComponent component = getComponentHavingCoding(bpObservation, fcm.getBpDiastolicCodings());
+                        Observation.ObservationComponentComponent component = getComponentHavingCoding(bpObservation, fcm.getBpDiastolicCodingSet());
                         o.setValue(component.getValueQuantity());
 
                     } else {
@@ -523,11 +524,11 @@ public class EpicVendorTransformer extends BaseVendorTransformer implements Vend
         observation.getNote().add(new Annotation().setText(note));
     }
 
-    private Observation.ObservationComponentComponent getComponentHavingCoding(Observation observation, List<Coding> coding) throws DataException {
+    private Observation.ObservationComponentComponent getComponentHavingCoding(Observation observation, CodingSet codingSet) throws DataException {
         if (observation == null) return null;
         if (observation.hasComponent()) {
             for (Observation.ObservationComponentComponent component : observation.getComponent()) {
-                if (component.hasCode() && FhirUtil.hasCoding(component.getCode(), coding)) {
+                if (component.hasCode() && codingSet.contains(component.getCode())) {
                     return component;
                 }
             }
@@ -0,0 +1,23 @@
+package edu.ohsu.cmp.coach.http;
+
+/**
+ * The external systems COACH calls out to.  Each is guarded independently by OutboundCallGuard, and is configured by
+ * the resilience4j.*.instances.{name} and outbound.{name}.* properties
+ */
+public enum Dependency {
+    EHR("ehr"),
+    CQF_RULER("cqfruler"),
+    OMRON("omron"),
+    REDCAP("redcap"),
+    VSAC("vsac");
+
+    private final String name;
+
+    Dependency(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
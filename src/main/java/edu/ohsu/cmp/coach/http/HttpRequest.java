@@ -4,6 +4,7 @@ import org.apache.commons.codec.EncoderException;
 import org.apache.commons.codec.net.URLCodec;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpEntity;
+import org.apache.http.client.entity.GzipCompressingEntity;
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -24,11 +25,27 @@ import java.util.Map;
 
 public class HttpRequest {
     private URLCodec urlCodec;
+    private OutboundCallGuard guard = null;
+    private Dependency dependency = null;
+    private int timeout = 0;
+    private int gzipMinBytes = -1;
 
     public HttpRequest() {
         this.urlCodec = new URLCodec();
     }
 
+    /**
+     * create an HttpRequest whose calls are guarded by OutboundCallGuard.  see OutboundCallGuard.request()
+     * @param gzipMinBytes request bodies of at least this many bytes are gzip-compressed.  if negative, none are
+     */
+    HttpRequest(OutboundCallGuard guard, Dependency dependency, int timeout, int gzipMinBytes) {
+        this();
+        this.guard = guard;
+        this.dependency = dependency;
+        this.timeout = timeout;
+        this.gzipMinBytes = gzipMinBytes;
+    }
+
     public HttpResponse get(String url) throws IOException {
         return get(url, null, null);
     }
@@ -83,29 +100,67 @@ public class HttpRequest {
         }
 
         if (body != null) {
-            httppost.setEntity(new StringEntity(body));
+            StringEntity entity = new StringEntity(body);
+            if (gzipMinBytes >= 0 && entity.getContentLength() >= gzipMinBytes) {
+                httppost.setEntity(new GzipCompressingEntity(entity));      // also sets Content-Encoding: gzip
+            } else {
+                httppost.setEntity(entity);
+            }
         }
 
         return execute(httppost);
     }
 
     private HttpResponse execute(HttpUriRequest request) throws IOException {
-        StringBuilder sb = new StringBuilder();
+        if (guard == null) {
+            return doExecute(request);
+        }
+
+        // only GETs are retried; a POST may have had its effect even if it failed
+        boolean idempotent = HttpGet.METHOD_NAME.equals(request.getMethod());
+        try {
+            return guard.call(dependency, idempotent, () -> {
+                HttpResponse response = doExecute(request);
+                if (response.getResponseCode() >= 500) {
+                    throw new ServerErrorException(response);
+                }
+                return response;
+            });
+
+        } catch (ServerErrorException e) {
+            return e.getResponse();
+        }
+    }
 
+    private HttpResponse doExecute(HttpUriRequest request) throws IOException {
 // storer 2022-09-16 - modifying creation of httpclient to resolve the following experienced errors:
 // 2022-09-16 14:30:05.427 [scheduling-1] WARN  o.a.h.c.p.ResponseProcessCookies [ResponseProcessCookies.java:130] Invalid
 //      cookie header: "Set-Cookie: <cookie>; Expires=Fri, 23 Sep 2022 21:30:05 GMT; Path=/". Invalid 'expires' attribute:
 //      Fri, 23 Sep 2022 21:30:05 GMT
 // see: https://www.lenar.io/invalid-cookie-header-invalid-expires-attribute/
 //        CloseableHttpClient httpclient = HttpClients.createDefault();
-        RequestConfig requestConfig = RequestConfig.custom()
-                .setCookieSpec(CookieSpecs.STANDARD)
-                .build();
+        RequestConfig.Builder requestConfigBuilder = RequestConfig.custom()
+                .setCookieSpec(CookieSpecs.STANDARD);
+        if (timeout > 0) {
+            requestConfigBuilder.setConnectTimeout(timeout)
+                    .setConnectionRequestTimeout(timeout)
+                    .setSocketTimeout(timeout);
+        }
+        // HttpClient sends Accept-Encoding: gzip,deflate, and decompresses compressed responses as they're read
         CloseableHttpClient httpclient = HttpClientBuilder.create()
-                .setDefaultRequestConfig(requestConfig)
+                .setDefaultRequestConfig(requestConfigBuilder.build())
                 .build();
 
-        CloseableHttpResponse response = httpclient.execute(request);
+        try {
+            return readResponse(httpclient.execute(request));
+
+        } finally {
+            try { httpclient.close(); } catch (Exception e) { }
+        }
+    }
+
+    private HttpResponse readResponse(CloseableHttpResponse response) throws IOException {
+        StringBuilder sb = new StringBuilder();
 
         int code = response.getStatusLine().getStatusCode();
 
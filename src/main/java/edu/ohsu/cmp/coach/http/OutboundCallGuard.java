@@ -0,0 +1,102 @@
+package edu.ohsu.cmp.coach.http;
+
+import edu.ohsu.cmp.coach.exception.DependencyUnavailableException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.core.functions.CheckedSupplier;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Isolates COACH from slow or failing external systems.  Every call to a Dependency passes through that dependency's
+ * bulkhead, which limits how many calls may be in progress at once, and its circuit breaker, which fails calls fast
+ * while the dependency is unhealthy.  Idempotent calls are also retried, with jittered exponential backoff.  Each
+ * dependency has its own configuration, and its state is exposed through the actuator health, circuitbreakers and
+ * bulkheads endpoints and as metrics.
+ */
+@Component
+public class OutboundCallGuard {
+    private static final int DEFAULT_TIMEOUT = 60000;
+    private static final int DEFAULT_GZIP_MIN_BYTES = 8192;
+
+    public interface OutboundCall<T> {
+        T call() throws Exception;
+    }
+
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @Autowired
+    private BulkheadRegistry bulkheadRegistry;
+
+    @Autowired
+    private RetryRegistry retryRegistry;
+
+    @Autowired
+    private Environment env;
+
+    /**
+     * @return an HttpRequest whose calls are guarded as calls to the specified dependency
+     */
+    public HttpRequest request(Dependency dependency) {
+        return new HttpRequest(this, dependency, getTimeout(dependency), getGzipMinBytes(dependency));
+    }
+
+    /**
+     * @return the time, in milliseconds, to wait for the specified dependency to connect or to send data
+     */
+    public int getTimeout(Dependency dependency) {
+        return env.getProperty("outbound." + dependency.getName() + ".timeout-ms", Integer.class, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * @return the size, in bytes, from which request bodies sent to the specified dependency are gzip-compressed, or
+     * -1 if they aren't compressed at all
+     */
+    public int getGzipMinBytes(Dependency dependency) {
+        boolean enabled = env.getProperty("outbound." + dependency.getName() + ".gzip-requests", Boolean.class, false);
+        return enabled ?
+                env.getProperty("outbound." + dependency.getName() + ".gzip-min-bytes", Integer.class, DEFAULT_GZIP_MIN_BYTES) :
+                -1;
+    }
+
+    /**
+     * @param idempotent true if the call may safely be repeated, in which case it's retried if it fails
+     * @throws DependencyUnavailableException if the call was refused because the dependency is unhealthy or busy
+     */
+    public <T> T call(Dependency dependency, boolean idempotent, OutboundCall<T> call) throws IOException {
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(dependency.getName());
+        Bulkhead bulkhead = bulkheadRegistry.bulkhead(dependency.getName());
+
+        CheckedSupplier<T> supplier = CircuitBreaker.decorateCheckedSupplier(circuitBreaker,
+                Bulkhead.decorateCheckedSupplier(bulkhead, call::call));
+
+        if (idempotent) {
+            Retry retry = retryRegistry.retry(dependency.getName());
+            supplier = Retry.decorateCheckedSupplier(retry, supplier);
+        }
+
+        try {
+            return supplier.get();
+
+        } catch (CallNotPermittedException | BulkheadFullException e) {
+            throw new DependencyUnavailableException(dependency, e);
+
+        } catch (IOException | RuntimeException e) {
+            throw e;
+
+        } catch (Throwable t) {
+            throw new IOException("caught " + t.getClass().getName() + " calling " + dependency.getName() + " - " +
+                    t.getMessage(), t);
+        }
+    }
+}
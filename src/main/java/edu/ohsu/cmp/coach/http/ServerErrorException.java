@@ -0,0 +1,20 @@
+package edu.ohsu.cmp.coach.http;
+
+import java.io.IOException;
+
+/**
+ * Signals a 5xx response within a guarded call, so that it counts as a failure and may be retried.  The response is
+ * returned to the caller as usual if the call ultimately fails
+ */
+class ServerErrorException extends IOException {
+    private final HttpResponse response;
+
+    ServerErrorException(HttpResponse response) {
+        super("server responded with " + response.getResponseCode());
+        this.response = response;
+    }
+
+    HttpResponse getResponse() {
+        return response;
+    }
+}
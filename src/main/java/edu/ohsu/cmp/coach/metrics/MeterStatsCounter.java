@@ -0,0 +1,78 @@
+package edu.ohsu.cmp.coach.metrics;
+
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Caffeine StatsCounter that records to Micrometer.  Every UserWorkspace has its own caches, so one of these is
+ * shared by all caches of the same kind; the resulting metrics describe that kind of cache across all sessions,
+ * rather than creating a set of meters for every session.
+ */
+public class MeterStatsCounter implements StatsCounter {
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer loadSuccesses;
+    private final Timer loadFailures;
+    private final Counter evictions;
+    private final Counter evictionWeight;
+
+    public MeterStatsCounter(MeterRegistry registry, String cacheName) {
+        hits = Counter.builder("coach.cache.gets").tag("cache", cacheName).tag("result", "hit")
+                .description("cache lookups that found a value").register(registry);
+        misses = Counter.builder("coach.cache.gets").tag("cache", cacheName).tag("result", "miss")
+                .description("cache lookups that didn't find a value").register(registry);
+        loadSuccesses = Timer.builder("coach.cache.loads").tag("cache", cacheName).tag("result", "success")
+                .description("time spent loading values into the cache").register(registry);
+        loadFailures = Timer.builder("coach.cache.loads").tag("cache", cacheName).tag("result", "failure")
+                .description("time spent loading values into the cache").register(registry);
+        evictions = Counter.builder("coach.cache.evictions").tag("cache", cacheName)
+                .description("entries evicted from the cache").register(registry);
+        evictionWeight = Counter.builder("coach.cache.eviction.weight").tag("cache", cacheName)
+                .description("total weight of entries evicted from the cache").register(registry);
+    }
+
+    @Override
+    public void recordHits(int count) {
+        hits.increment(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        misses.increment(count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        loadSuccesses.record(loadTime, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordLoadFailure(long loadTime) {
+        loadFailures.record(loadTime, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordEviction(int weight, RemovalCause cause) {
+        evictions.increment();
+        evictionWeight.increment(weight);
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return CacheStats.of(
+                (long) hits.count(),
+                (long) misses.count(),
+                loadSuccesses.count(),
+                loadFailures.count(),
+                (long) (loadSuccesses.totalTime(TimeUnit.NANOSECONDS) + loadFailures.totalTime(TimeUnit.NANOSECONDS)),
+                (long) evictions.count(),
+                (long) evictionWeight.count()
+        );
+    }
+}
@@ -0,0 +1,27 @@
+package edu.ohsu.cmp.coach.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * Java Flight Recorder counterpart to the timers recorded by MetricsService, emitted when metrics.jfr.enabled=true.
+ */
+@Name("edu.ohsu.cmp.coach.Timing")
+@Label("COACH Timing")
+@Category("COACH")
+@Description("Time taken to build a workspace cache entry, execute a FHIR search, or evaluate a CDS hook")
+@StackTrace(false)
+public class TimingEvent extends Event {
+    @Label("Metric")
+    public String metric;
+
+    @Label("Name")
+    @Description("The loader, FHIR resource type or hook id being timed")
+    public String name;
+
+    @Label("Context")
+    @Description("The session or patient the timing was recorded for")
+    public String context;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -3,7 +3,6 @@ package edu.ohsu.cmp.coach.model;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import edu.ohsu.cmp.coach.exception.CaseNotHandledException;
 import edu.ohsu.cmp.coach.fhir.FhirConfigManager;
-import edu.ohsu.cmp.coach.util.FhirUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.r4.model.*;
 import org.jetbrains.annotations.NotNull;
@@ -57,9 +56,9 @@ public abstract class AbstractVitalsModel extends AbstractModel implements Compa
 //        }
 
         if (protocolObservation != null &&
-                FhirUtil.hasCoding(protocolObservation.getCode(), fcm.getProtocolCoding()) &&
+                fcm.getProtocolCodingSet().contains(protocolObservation.getCode()) &&
                 protocolObservation.hasValueCodeableConcept() &&
-                FhirUtil.hasCoding(protocolObservation.getValueCodeableConcept(), fcm.getProtocolAnswerCoding()) &&
+                fcm.getProtocolAnswerCodingSet().contains(protocolObservation.getValueCodeableConcept()) &&
                 protocolObservation.getValueCodeableConcept().hasText()) {
 
             String answerValue = protocolObservation.getValueCodeableConcept().getText();
@@ -6,7 +6,6 @@ import edu.ohsu.cmp.coach.entity.MyOmronVitals;
 import edu.ohsu.cmp.coach.exception.DataException;
 import edu.ohsu.cmp.coach.fhir.FhirConfigManager;
 import edu.ohsu.cmp.coach.model.omron.OmronBloodPressureModel;
-import edu.ohsu.cmp.coach.util.FhirUtil;
 import edu.ohsu.cmp.coach.util.ObservationUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.r4.model.CodeableConcept;
@@ -92,13 +91,13 @@ public class BloodPressureModel extends AbstractVitalsModel {
         sourceBPObservation = bpObservation;
 
         CodeableConcept code = bpObservation.getCode();
-        if (FhirUtil.hasCoding(code, fcm.getBpPanelCodings())) {
+        if (fcm.getBpPanelCodingSet().contains(code)) {
             for (Observation.ObservationComponentComponent occ : bpObservation.getComponent()) {
                 CodeableConcept cc = occ.getCode();
-                if (FhirUtil.hasCoding(cc, fcm.getBpSystolicCodings())) {
+                if (fcm.getBpSystolicCodingSet().contains(cc)) {
                     systolic = new QuantityModel(occ.getValueQuantity(), fcm.getBpValueUnit());
 
-                } else if (FhirUtil.hasCoding(cc, fcm.getBpDiastolicCodings())) {
+                } else if (fcm.getBpDiastolicCodingSet().contains(cc)) {
                     diastolic = new QuantityModel(occ.getValueQuantity(), fcm.getBpValueUnit());
                 }
             }
@@ -139,7 +138,7 @@ public class BloodPressureModel extends AbstractVitalsModel {
         // todo : set id.  but to what?  first Observation's id?  what about the others?  how is id used?  do we need
         //        to retain the ids for the Encounter and other Observations?
 
-        if (systolicObservation.hasCode() && FhirUtil.hasCoding(systolicObservation.getCode(), fcm.getBpSystolicCodings())) {
+        if (systolicObservation.hasCode() && fcm.getBpSystolicCodingSet().contains(systolicObservation.getCode())) {
             systolic = new QuantityModel(systolicObservation.getValueQuantity(), fcm.getBpValueUnit());
             if (StringUtils.isEmpty(systolic.getUnit())) {
                 systolic.setUnit(fcm.getBpValueUnit());
@@ -148,7 +147,7 @@ public class BloodPressureModel extends AbstractVitalsModel {
             throw new DataException("systolic observation : invalid coding (Observation.id=" + systolicObservation.getId() + ")");
         }
 
-        if (diastolicObservation.hasCode() && FhirUtil.hasCoding(diastolicObservation.getCode(), fcm.getBpDiastolicCodings())) {
+        if (diastolicObservation.hasCode() && fcm.getBpDiastolicCodingSet().contains(diastolicObservation.getCode())) {
             diastolic = new QuantityModel(diastolicObservation.getValueQuantity(), fcm.getBpValueUnit());
             if (StringUtils.isEmpty(diastolic.getUnit())) {
                 diastolic.setUnit(fcm.getBpValueUnit());
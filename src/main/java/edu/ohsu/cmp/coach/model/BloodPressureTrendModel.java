@@ -0,0 +1,44 @@
+package edu.ohsu.cmp.coach.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact, chart-ready representation of the systolic and diastolic trend lines for a patient's blood pressure
+ * readings.  Points are ordered oldest first.
+ */
+public class BloodPressureTrendModel {
+    private final List<Point> systolic;
+    private final List<Point> diastolic;
+
+    public BloodPressureTrendModel(List<Point> systolic, List<Point> diastolic) {
+        this.systolic = systolic != null ? systolic : new ArrayList<>();
+        this.diastolic = diastolic != null ? diastolic : new ArrayList<>();
+    }
+
+    public List<Point> getSystolic() {
+        return systolic;
+    }
+
+    public List<Point> getDiastolic() {
+        return diastolic;
+    }
+
+    public static final class Point {
+        private final long x;       // reading timestamp
+        private final double y;     // value
+
+        public Point(long x, double y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        public long getX() {
+            return x;
+        }
+
+        public double getY() {
+            return y;
+        }
+    }
+}
@@ -9,6 +9,7 @@ import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
 
@@ -16,10 +17,12 @@ import org.springframework.stereotype.Component;
 public class RefreshTokenJob implements Job {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    public static final String JOBDATA_APPLICATIONCONTEXT = "applicationContext";
     public static final String JOBDATA_SESSIONID = "sessionId";
     public static final String JOBDATA_REFRESHTOKEN = "refreshToken";
 
+    @Autowired
+    private ApplicationContext ctx;
+
     @Override
     public void execute(JobExecutionContext jobExecutionContext) throws JobExecutionException {
         String name = jobExecutionContext.getJobDetail().getKey().getName();
@@ -27,7 +30,6 @@ public class RefreshTokenJob implements Job {
         logger.info("running job {} fired at {}", name, jobExecutionContext.getFireTime());
 
         JobDataMap jobDataMap = jobExecutionContext.getMergedJobDataMap();
-        ApplicationContext ctx = (ApplicationContext) jobDataMap.get(JOBDATA_APPLICATIONCONTEXT);
         String sessionId = jobDataMap.getString(JOBDATA_SESSIONID);
         String refreshToken = jobDataMap.getString(JOBDATA_REFRESHTOKEN);
 
@@ -40,6 +42,7 @@ public class RefreshTokenJob implements Job {
                 if (response != null) {
                     UserWorkspace workspace = userWorkspaceService.get(sessionId);
                     workspace.getOmronTokenData().update(response);
+                    workspace.saveState();
                     omronService.scheduleAccessTokenRefresh(sessionId);
                 }
 
@@ -1,7 +1,15 @@
 package edu.ohsu.cmp.coach.repository;
 
 import edu.ohsu.cmp.coach.entity.MyAdverseEvent;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import java.util.List;
 
 public interface AdverseEventRepository extends JpaRepository<MyAdverseEvent, Long> {
+    @Override
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<MyAdverseEvent> findAll();
 }
@@ -3,9 +3,16 @@ package edu.ohsu.cmp.coach.repository;
 import edu.ohsu.cmp.coach.entity.Concept;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface ConceptRepository extends JpaRepository<Concept, Long> {
 
     @Query("select c from Concept c where c.code=:code and c.codeSystem=:codeSystem and c.codeSystemVersion=:version")
     Concept findConcept(String code, String codeSystem, String version);
+
+    @Query("select c from Concept c where c.code in :codes")
+    List<Concept> findAllByCodeIn(@Param("codes") Collection<String> codes);
 }
@@ -1,9 +1,13 @@
 package edu.ohsu.cmp.coach.repository;
 
 import edu.ohsu.cmp.coach.entity.CounselingPage;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 public interface CounselingPageRepository extends JpaRepository<CounselingPage, Long> {
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     CounselingPage findOneByPageKey(@Param("key") String key);
 }
@@ -1,18 +1,26 @@
 package edu.ohsu.cmp.coach.repository;
 
 import edu.ohsu.cmp.coach.entity.HomeBloodPressureReading;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Date;
 import java.util.List;
 
 public interface HomeBloodPressureReadingRepository extends JpaRepository<HomeBloodPressureReading, Long> {
     @Query("select bpr from HomeBloodPressureReading bpr where bpr.patId=:patId order by bpr.readingDate desc")
     List<HomeBloodPressureReading> findAllByPatId(@Param("patId") Long patId);
 
+    /**
+     * @return the patient's readings taken after readingDate, newest first, limited to the requested page.  backed by
+     * the (patId, readingDate) index, so that only the requested readings are read and no sort is needed
+     */
+    List<HomeBloodPressureReading> findByPatIdAndReadingDateAfterOrderByReadingDateDesc(Long patId, Date readingDate, Pageable pageable);
+
 
     @Modifying
     @Transactional
@@ -1,18 +1,26 @@
 package edu.ohsu.cmp.coach.repository;
 
 import edu.ohsu.cmp.coach.entity.HomePulseReading;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Date;
 import java.util.List;
 
 public interface HomePulseReadingRepository extends JpaRepository<HomePulseReading, Long> {
     @Query("select pr from HomePulseReading pr where pr.patId=:patId order by pr.readingDate desc")
     List<HomePulseReading> findAllByPatId(@Param("patId") Long patId);
 
+    /**
+     * @return the patient's readings taken after readingDate, newest first, limited to the requested page.  backed by
+     * the (patId, readingDate) index, so that only the requested readings are read and no sort is needed
+     */
+    List<HomePulseReading> findByPatIdAndReadingDateAfterOrderByReadingDateDesc(Long patId, Date readingDate, Pageable pageable);
+
 
     @Modifying
     @Transactional
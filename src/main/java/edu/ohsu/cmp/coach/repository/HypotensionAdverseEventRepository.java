@@ -5,9 +5,13 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Date;
 import java.util.List;
 
 public interface HypotensionAdverseEventRepository extends JpaRepository<HypotensionAdverseEvent, Long> {
     @Query("select hae from HypotensionAdverseEvent hae where hae.patId=:patId")
     List<HypotensionAdverseEvent> findAllByPatId(@Param("patId") Long patId);
+
+    @Query("select hae from HypotensionAdverseEvent hae where hae.patId=:patId and hae.bp1ReadingDate >= :since")
+    List<HypotensionAdverseEvent> findAllByPatIdSince(@Param("patId") Long patId, @Param("since") Date since);
 }
@@ -7,12 +7,16 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface OmronVitalsCacheRepository extends JpaRepository<MyOmronVitals, Long> {
     @Query("select case when count(v) > 0 then true else false end from MyOmronVitals v where v.omronId=:omronId")
     boolean existsByOmronId(@Param("omronId") Long omronId);
 
+    @Query("select v.omronId from MyOmronVitals v where v.omronId in :omronIds")
+    List<Long> findExistingOmronIds(@Param("omronIds") Collection<Long> omronIds);
+
     @Query("select v from MyOmronVitals v where v.patId=:patId")
     List<MyOmronVitals> findAllByPatId(@Param("patId") Long patId);
 
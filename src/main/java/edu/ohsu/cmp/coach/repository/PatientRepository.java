@@ -2,8 +2,10 @@ package edu.ohsu.cmp.coach.repository;
 
 import edu.ohsu.cmp.coach.entity.MyPatient;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -13,4 +15,12 @@ public interface PatientRepository extends JpaRepository<MyPatient, Long> {
     @Query("select p from MyPatient p where p.patIdHash=:patIdHash")
     List<MyPatient> findByPatIdHash(@Param("patIdHash") String patIdHash);
     MyPatient findOneByPatIdHash(@Param("patIdHash") String patIdHash);
+
+    @Query("select p.redcapRecordId from MyPatient p where p.redcapId=:redcapId")
+    String findRedcapRecordIdByRedcapId(@Param("redcapId") String redcapId);
+
+    @Modifying
+    @Transactional
+    @Query("update MyPatient set redcapRecordId=:redcapRecordId where redcapId=:redcapId")
+    void setRedcapRecordId(@Param("redcapId") String redcapId, @Param("redcapRecordId") String redcapRecordId);
 }
@@ -0,0 +1,15 @@
+package edu.ohsu.cmp.coach.repository;
+
+import edu.ohsu.cmp.coach.entity.ProvisionalSessionState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface ProvisionalSessionStateRepository extends JpaRepository<ProvisionalSessionState, String> {
+    @Modifying
+    @Transactional
+    @Query("delete from ProvisionalSessionState where sessionId=:sessionId")
+    void deleteBySessionId(@Param("sessionId") String sessionId);
+}
@@ -0,0 +1,28 @@
+package edu.ohsu.cmp.coach.repository;
+
+import edu.ohsu.cmp.coach.entity.SessionState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+
+public interface SessionStateRepository extends JpaRepository<SessionState, String> {
+    @Query("select s.sessionId from SessionState s where s.omronUserId=:omronUserId")
+    List<String> findSessionIdsByOmronUserId(@Param("omronUserId") String omronUserId);
+
+    // updates everything but the snapshot, without having to load it
+    @Modifying
+    @Transactional
+    @Query("update SessionState set omronUserId=:omronUserId, state=:state, lastUpdated=:lastUpdated where sessionId=:sessionId")
+    int updateState(@Param("sessionId") String sessionId, @Param("omronUserId") String omronUserId,
+                    @Param("state") String state, @Param("lastUpdated") Date lastUpdated);
+
+    @Modifying
+    @Transactional
+    @Query("delete from SessionState where sessionId=:sessionId")
+    void deleteBySessionId(@Param("sessionId") String sessionId);
+}
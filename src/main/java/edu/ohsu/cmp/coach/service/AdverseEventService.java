@@ -48,6 +48,12 @@ public class AdverseEventService extends AbstractService {
     public List<AdverseEventModel> getAdverseEvents(String sessionId) throws DataException {
         UserWorkspace workspace = userWorkspaceService.get(sessionId);
 
+        // concurrent callers (e.g. the home page and each recommendation hook) share one build
+        String key = "AdverseEvents-" + workspace.getVersionTag(UserWorkspace.VERSION_ADVERSE_EVENT);
+        return workspace.singleFlight(key, () -> buildAdverseEvents(sessionId, workspace));
+    }
+
+    private List<AdverseEventModel> buildAdverseEvents(String sessionId, UserWorkspace workspace) throws DataException {
         List<AdverseEventModel> list = new ArrayList<>();
         list.addAll(workspace.getRemoteAdverseEvents());
 
@@ -185,6 +191,9 @@ public class AdverseEventService extends AbstractService {
             aeo.setModifiedDate(new Date());
             outcomeRepository.save(aeo);
 
+            // adverse events read their outcome whenever they're built, so clients just need to know to re-request them
+            userWorkspaceService.get(sessionId).incrementVersion(UserWorkspace.VERSION_ADVERSE_EVENT);
+
             auditService.doAudit(sessionId, AuditSeverity.INFO, "registered adverse-event outcome", "outcome=" + outcome +
                     ", adverseEventIdHash=" + adverseEventIdHash);
 
@@ -10,6 +10,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Service
 public class AuditService {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
@@ -42,6 +45,33 @@ public class AuditService {
         }
     }
 
+    /**
+     * record the same action several times, e.g. once per record affected, as one batch
+     */
+    public void doAudits(String sessionId, AuditSeverity severity, String action, List<String> detailsList) {
+        if (detailsList.isEmpty()) return;
+
+        if (userWorkspaceService.exists(sessionId)) {
+            Long patId = userWorkspaceService.get(sessionId).getInternalPatientId();
+            List<Audit> list = new ArrayList<>();
+            for (String details : detailsList) {
+                list.add(new Audit(patId, severity, action, details));
+            }
+
+            try {
+                repository.saveAll(list);
+
+            } catch (Exception e) {
+                logger.error("caught " + e.getClass().getName() + " attempting to create " + list.size() + " audits for " +
+                        "action=" + action + " - " + e.getMessage(), e);
+            }
+
+        } else {
+            logger.warn("attempted to generate audits for nonexistent session " + sessionId + ": severity=" + severity +
+                    ", action=" + action + ", details=" + detailsList);
+        }
+    }
+
     public void doAudit(MyPatient myPatient, AuditSeverity severity, String action) {
         doAudit(myPatient, severity, action, null);
     }
@@ -79,43 +79,96 @@ public class BloodPressureService extends AbstractService {
     public List<BloodPressureModel> getBloodPressureReadings(String sessionId, boolean doLimit) throws DataException {
         UserWorkspace workspace = userWorkspaceService.get(sessionId);
 
-        // add remote BPs first
-        List<BloodPressureModel> remoteList = workspace.getRemoteBloodPressures();
-        Set<String> remoteBPKeySet = new HashSet<>();
-        for (BloodPressureModel bpm : remoteList) {
-            String key = bpm.getLogicalEqualityKey();
-            logger.debug("found remote BP with key: " + key);
-            remoteBPKeySet.add(key);
-        }
+        // the home page, vitals page, trend, AE detection and recommendations all want this at once on page load;
+        // concurrent callers share one merge rather than each performing their own
+        String key = "BloodPressureReadings-" + doLimit + "-" + workspace.getVersionTag(UserWorkspace.VERSION_BP);
+        return workspace.singleFlight(key, () -> buildBloodPressureReadings(sessionId, workspace, doLimit));
+    }
 
-        // now add any locally-stored BPs that do *not* logically match a BP already retrieved remotely
-        List<BloodPressureModel> list = new ArrayList<>();
-        list.addAll(remoteList);
+    public BloodPressureModel create(String sessionId, BloodPressureModel bpm) throws DataException, ConfigurationException, IOException, ScopeException {
+        BloodPressureModel bpm2 = writeBack(sessionId, bpm);
 
-        for (BloodPressureModel bpm : buildLocalBloodPressureReadings(sessionId)) {
-            String key = bpm.getLogicalEqualityKey();
-            if (remoteBPKeySet.contains(key)) {
-                logger.debug("NOT ADDING local BP matching remote BP with key: " + key);
+        try {
+            HomeBloodPressureReading hbpr = new HomeBloodPressureReading(bpm);
+            HomeBloodPressureReading response = hbprService.create(sessionId, hbpr);
 
-            } else {
-                logger.debug("adding local BP with key: " + key);
-                list.add(bpm);
+            if (bpm2 == null) { // give priority to the remotely created resource, if it exists
+                bpm2 = new BloodPressureModel(response, fcm);
             }
+
+            auditService.doAudit(sessionId, AuditSeverity.INFO, "created BP", "id=" + response.getId() +
+                    ", BP=" + bpm.getSystolic() + "/" + bpm.getDiastolic() + " at " + bpm.getReadingDateString());
+
+        } catch (DataException de) {
+            // okay if it's failing to write locally, that's a problem.
+            logger.error("caught " + de.getClass().getName() + " attempting to create BloodPressureModel " + bpm, de);
+
+            auditService.doAudit(sessionId, AuditSeverity.ERROR, "failed to create BP", "BP=" +
+                    bpm.getSystolic() + "/" + bpm.getDiastolic() + " at " + bpm.getReadingDateString() +
+                            ", message=" + de.getMessage());
         }
 
-        list.sort((o1, o2) -> o1.getReadingDate().compareTo(o2.getReadingDate()) * -1); // sort newest first
+        return bpm2;
+    }
 
-        if (doLimit) {
-            Integer limit = fcm.getBpLimit();
-            if (limit != null && list.size() > limit) {
-                list = list.subList(0, limit);
+    /**
+     * create several BPs at once, e.g. when synchronizing from Omron.  each is written back to the EHR as with
+     * create(), but they're stored locally and audited in single batches
+     * @param onItemWritten if not null, called after each item has been written back to the EHR (if configured to do
+     *                      so), which is the slow part of this operation
+     * @return the BPs that couldn't be stored locally, which the caller may want to try again
+     */
+    public List<BloodPressureModel> createAll(String sessionId, List<BloodPressureModel> list, Runnable onItemWritten) {
+        List<BloodPressureModel> pendingList = new ArrayList<>();
+        List<HomeBloodPressureReading> itemList = new ArrayList<>();
+
+        for (BloodPressureModel bpm : list) {
+            writeBack(sessionId, bpm);
+            if (onItemWritten != null) {
+                onItemWritten.run();
+            }
+            try {
+                itemList.add(new HomeBloodPressureReading(bpm));
+                pendingList.add(bpm);
+
+            } catch (DataException de) {
+                logger.error("caught " + de.getClass().getName() + " attempting to create BloodPressureModel " + bpm, de);
+
+                auditService.doAudit(sessionId, AuditSeverity.ERROR, "failed to create BP", "BP=" +
+                        bpm.getSystolic() + "/" + bpm.getDiastolic() + " at " + bpm.getReadingDateString() +
+                                ", message=" + de.getMessage());
             }
         }
 
-        return list;
+        List<BloodPressureModel> failedList = new ArrayList<>();
+        List<String> details = new ArrayList<>();
+        List<HomeBloodPressureReading> responseList = hbprService.createAll(sessionId, itemList);
+        for (int i = 0; i < responseList.size(); i ++) {
+            HomeBloodPressureReading response = responseList.get(i);
+            BloodPressureModel bpm = pendingList.get(i);
+
+            if (response == null) {
+                failedList.add(bpm);
+                auditService.doAudit(sessionId, AuditSeverity.ERROR, "failed to create BP", "BP=" +
+                        bpm.getSystolic() + "/" + bpm.getDiastolic() + " at " + bpm.getReadingDateString());
+                continue;
+            }
+
+            details.add("id=" + response.getId() + ", BP=" + bpm.getSystolic() + "/" + bpm.getDiastolic() + " at " +
+                    bpm.getReadingDateString());
+        }
+        auditService.doAudits(sessionId, AuditSeverity.INFO, "created BP", details);
+
+        return failedList;
     }
 
-    public BloodPressureModel create(String sessionId, BloodPressureModel bpm) throws DataException, ConfigurationException, IOException, ScopeException {
+
+///////////////////////////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    // write the reading back to the EHR if so configured, returning the remotely-created reading if one was created
+    private BloodPressureModel writeBack(String sessionId, BloodPressureModel bpm) {
         UserWorkspace workspace = userWorkspaceService.get(sessionId);
 
         BloodPressureModel bpm2 = null;
@@ -148,39 +201,53 @@ public class BloodPressureService extends AbstractService {
             }
         }
 
-        try {
-            HomeBloodPressureReading hbpr = new HomeBloodPressureReading(bpm);
-            HomeBloodPressureReading response = hbprService.create(sessionId, hbpr);
+        return bpm2;
+    }
 
-            if (bpm2 == null) { // give priority to the remotely created resource, if it exists
-                bpm2 = new BloodPressureModel(response, fcm);
-            }
+    private List<BloodPressureModel> buildBloodPressureReadings(String sessionId, UserWorkspace workspace, boolean doLimit) throws DataException {
+        // add remote BPs first
+        List<BloodPressureModel> remoteList = workspace.getRemoteBloodPressures();
+        Set<String> remoteBPKeySet = new HashSet<>();
+        for (BloodPressureModel bpm : remoteList) {
+            String key = bpm.getLogicalEqualityKey();
+            logger.debug("found remote BP with key: " + key);
+            remoteBPKeySet.add(key);
+        }
 
-            auditService.doAudit(sessionId, AuditSeverity.INFO, "created BP", "id=" + response.getId() +
-                    ", BP=" + bpm.getSystolic() + "/" + bpm.getDiastolic() + " at " + bpm.getReadingDateString());
+        // now add any locally-stored BPs that do *not* logically match a BP already retrieved remotely
+        List<BloodPressureModel> list = new ArrayList<>();
+        list.addAll(remoteList);
 
-        } catch (DataException de) {
-            // okay if it's failing to write locally, that's a problem.
-            logger.error("caught " + de.getClass().getName() + " attempting to create BloodPressureModel " + bpm, de);
+        for (BloodPressureModel bpm : buildLocalBloodPressureReadings(sessionId)) {
+            String key = bpm.getLogicalEqualityKey();
+            if (remoteBPKeySet.contains(key)) {
+                logger.debug("NOT ADDING local BP matching remote BP with key: " + key);
 
-            auditService.doAudit(sessionId, AuditSeverity.ERROR, "failed to create BP", "BP=" +
-                    bpm.getSystolic() + "/" + bpm.getDiastolic() + " at " + bpm.getReadingDateString() +
-                            ", message=" + de.getMessage());
+            } else {
+                logger.debug("adding local BP with key: " + key);
+                list.add(bpm);
+            }
         }
 
-        return bpm2;
-    }
+        list.sort((o1, o2) -> o1.getReadingDate().compareTo(o2.getReadingDate()) * -1); // sort newest first
 
+        if (doLimit) {
+            Integer limit = fcm.getBpLimit();
+            if (limit != null && list.size() > limit) {
+                list = list.subList(0, limit);
+            }
+        }
 
-///////////////////////////////////////////////////////////////////////////////////////
-// private methods
-//
+        return list;
+    }
 
     private List<BloodPressureModel> buildLocalBloodPressureReadings(String sessionId) throws DataException {
         List<BloodPressureModel> list = new ArrayList<>();
 
-        // add manually-entered BPs
-        List<HomeBloodPressureReading> hbprList = hbprService.getHomeBloodPressureReadings(sessionId);
+        // add manually-entered BPs.  these are bounded by the same lookback period as remote BPs, and since every
+        // local BP is a home reading, no more than the limit of them can make it into any limited list
+        List<HomeBloodPressureReading> hbprList = hbprService.getHomeBloodPressureReadings(sessionId,
+                FhirUtil.toLookbackStartDate(fcm.getBpLookbackPeriod()), fcm.getBpLimit());
         for (HomeBloodPressureReading item : hbprList) {
             list.add(new BloodPressureModel(item, fcm));
         }
@@ -0,0 +1,160 @@
+package edu.ohsu.cmp.coach.service;
+
+import edu.ohsu.cmp.coach.exception.DataException;
+import edu.ohsu.cmp.coach.model.BloodPressureModel;
+import edu.ohsu.cmp.coach.model.BloodPressureTrendModel;
+import edu.ohsu.cmp.coach.model.QuantityModel;
+import edu.ohsu.cmp.coach.util.LoessUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+@Service
+public class BloodPressureTrendService extends AbstractService {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final double MAX_BANDWIDTH = 1.0;
+    private static final double BANDWIDTH_INCREMENT = 0.1;
+    private static final int MAX_POINTS = 200;      // trend lines are smooth, so the chart doesn't need every point
+
+    @Autowired
+    private BloodPressureService bpService;
+
+    /**
+     * get the (cached) systolic and diastolic trend lines for the current session's blood pressure readings
+     * @param sessionId the session
+     * @param startTimestamp if specified, only readings taken at or after this timestamp are considered
+     * @param bandwidthOverride if specified (and not -1), the LOESS bandwidth to start with (for testing)
+     * @return the trend lines
+     */
+    public BloodPressureTrendModel getBloodPressureTrend(String sessionId, Long startTimestamp, Double bandwidthOverride) {
+        return userWorkspaceService.get(sessionId).getBloodPressureTrend(startTimestamp, bandwidthOverride);
+    }
+
+    public BloodPressureTrendModel buildBloodPressureTrend(String sessionId, Long startTimestamp, Double bandwidthOverride) throws DataException {
+        List<BloodPressureModel> list = new ArrayList<>();
+        for (BloodPressureModel bpm : bpService.getBloodPressureReadings(sessionId)) {
+            if (startTimestamp == null || bpm.getReadingDateTimestamp() >= startTimestamp) {
+                list.add(bpm);
+            }
+        }
+        list.sort((o1, o2) -> o1.getReadingDate().compareTo(o2.getReadingDate())); // sort oldest first
+
+        return new BloodPressureTrendModel(
+                buildTrendLine(list, BloodPressureModel::getSystolic, bandwidthOverride),
+                buildTrendLine(list, BloodPressureModel::getDiastolic, bandwidthOverride)
+        );
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    /**
+     * Create a LOESS trendline for the BP data using the following rules:
+     * - Eliminate untyped BP data
+     * - If bandwidth is unspecified, choose the starting value based on size of data
+     * - If regression errors occur or any regression points are outside the min/max BP value, increase the bandwidth and try again
+     * - If no acceptable regression can be found, fall back on a direct plot
+     */
+    private List<BloodPressureTrendModel.Point> buildTrendLine(List<BloodPressureModel> list,
+                                                               Function<BloodPressureModel, QuantityModel> valueFunction,
+                                                               Double bandwidthOverride) {
+        List<BloodPressureModel> filtered = new ArrayList<>();
+        for (BloodPressureModel bpm : list) {
+            QuantityModel qm = valueFunction.apply(bpm);
+            if (qm != null && qm.getValue() != null) {
+                filtered.add(bpm);
+            }
+        }
+
+        int n = filtered.size();
+        double[] xval = new double[n];
+        double[] yval = new double[n];
+        double minVal = Double.MAX_VALUE;
+        double maxVal = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i ++) {
+            BloodPressureModel bpm = filtered.get(i);
+            xval[i] = bpm.getReadingDateTimestamp();
+            yval[i] = valueFunction.apply(bpm).getValue();
+            minVal = Math.min(minVal, yval[i]);
+            maxVal = Math.max(maxVal, yval[i]);
+        }
+
+        double bandwidth = getStartingBandwidth(n, bandwidthOverride);
+
+        // Try incrementally increasing bandwidth if an error is thrown or regression doesn't meet standards
+        while (bandwidth <= MAX_BANDWIDTH) {
+            try {
+                double[] fitted = LoessUtil.smooth(xval, yval, bandwidth);
+                if (isWithinBounds(fitted, minVal, maxVal)) {
+                    logger.debug("built BP trend line with " + n + " points (bandwidth=" + bandwidth + ")");
+                    return downsample(xval, fitted);
+                }
+
+            } catch (IllegalArgumentException e) {
+                logger.debug("caught " + e.getClass().getName() + " building BP trend line with bandwidth=" +
+                        bandwidth + " - " + e.getMessage());
+            }
+
+            bandwidth += BANDWIDTH_INCREMENT;
+        }
+
+        logger.debug("regression failed for " + n + " points.  falling back on a direct plot");
+        return downsample(xval, yval);
+    }
+
+    private double getStartingBandwidth(int numPts, Double bandwidthOverride) {
+        // Allow an override of the bandwidth in the URL for testing
+        if (bandwidthOverride != null && bandwidthOverride != -1) return bandwidthOverride;
+        else if (numPts <= 8) return 0.6;
+        else if (numPts <= 15) return 0.5;
+        else if (numPts <= 25) return 0.4;
+        else return 0.3;
+    }
+
+    // Boundaries on the LOESS interpretation
+    private boolean isWithinBounds(double[] fitted, double minVal, double maxVal) {
+        for (double d : fitted) {
+            if (Double.isNaN(d) || d < minVal || d > maxVal) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // evenly sample at most MAX_POINTS points, always retaining the first and last
+    private List<BloodPressureTrendModel.Point> downsample(double[] xval, double[] yval) {
+        int n = xval.length;
+        List<BloodPressureTrendModel.Point> list = new ArrayList<>();
+        if (n == 0) return list;
+
+        double step = n > MAX_POINTS ?
+                (double) (n - 1) / (MAX_POINTS - 1) :
+                1;
+
+        int last = -1;
+        for (double d = 0; Math.round(d) < n; d += step) {
+            int i = (int) Math.round(d);
+            if (i != last) {
+                list.add(buildPoint(xval[i], yval[i]));
+                last = i;
+            }
+        }
+
+        if (last != n - 1) {
+            list.add(buildPoint(xval[n - 1], yval[n - 1]));
+        }
+
+        return list;
+    }
+
+    private BloodPressureTrendModel.Point buildPoint(double x, double y) {
+        return new BloodPressureTrendModel.Point((long) x, Math.round(y * 10) / 10.0);  // 1 decimal is plenty for a chart
+    }
+}
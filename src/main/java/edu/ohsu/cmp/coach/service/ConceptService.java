@@ -5,8 +5,12 @@ import edu.ohsu.cmp.coach.repository.ConceptRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.*;
+
 @Service
 public class ConceptService extends AbstractService {
+    private static final int QUERY_CHUNK_SIZE = 500;    // keeps "in" lists well within the databases' parameter limits
+
     @Autowired
     private ConceptRepository repository;
 
@@ -14,4 +18,28 @@ public class ConceptService extends AbstractService {
         Concept concept = repository.findConcept(code, codeSystem, codeSystemVersion);
         return concept;
     }
+
+    /**
+     * @return the persisted Concepts logically matching any of those specified, keyed by Concept.getKey()
+     */
+    public Map<String, Concept> getConcepts(Collection<Concept> concepts) {
+        Set<String> keys = new HashSet<>();
+        Set<String> codes = new LinkedHashSet<>();
+        for (Concept c : concepts) {
+            keys.add(c.getKey());
+            codes.add(c.getCode());
+        }
+
+        Map<String, Concept> map = new HashMap<>();
+        List<String> codeList = new ArrayList<>(codes);
+        for (int i = 0; i < codeList.size(); i += QUERY_CHUNK_SIZE) {
+            List<String> chunk = codeList.subList(i, Math.min(i + QUERY_CHUNK_SIZE, codeList.size()));
+            for (Concept c : repository.findAllByCodeIn(chunk)) {
+                if (keys.contains(c.getKey())) {
+                    map.put(c.getKey(), c);
+                }
+            }
+        }
+        return map;
+    }
 }
@@ -4,6 +4,7 @@ import edu.ohsu.cmp.coach.entity.MedicationForm;
 import edu.ohsu.cmp.coach.entity.MedicationRoute;
 import edu.ohsu.cmp.coach.exception.ConfigurationException;
 import edu.ohsu.cmp.coach.exception.DataException;
+import edu.ohsu.cmp.coach.fhir.CodingSet;
 import edu.ohsu.cmp.coach.fhir.EncounterMatcher;
 import edu.ohsu.cmp.coach.model.GoalModel;
 import edu.ohsu.cmp.coach.model.ResourceWithBundle;
@@ -289,8 +290,8 @@ public class EHRService extends AbstractService {
         UserWorkspace workspace = userWorkspaceService.get(sessionId);
         FHIRCredentialsWithClient fcc = workspace.getFhirCredentialsWithClient();
 
-        final List<Coding> validRouteCodings = getValidMedicationRouteCodings();
-        final List<Coding> validFormCodings = getValidMedicationFormCodings();
+        final CodingSet validRouteCodings = CodingSet.of(getValidMedicationRouteCodings());
+        final CodingSet validFormCodings = CodingSet.of(getValidMedicationFormCodings());
 
         Bundle bundle = fhirService.search(fcc, workspace.getFhirQueryManager().getMedicationStatementStrategy(),
                 workspace.getVendorTransformer().getMedicationStatementQuery(fcc.getCredentials().getPatientId()),
@@ -310,7 +311,7 @@ public class EHRService extends AbstractService {
 
                             if (ms.hasDosage()) {
                                 for (Dosage d : ms.getDosage()) {
-                                    if (d.hasRoute() && FhirUtil.hasCoding(d.getRoute(), validRouteCodings)) {
+                                    if (d.hasRoute() && validRouteCodings.contains(d.getRoute())) {
                                         hasGoodRoute = true;
                                         break;
                                     }
@@ -334,7 +335,7 @@ public class EHRService extends AbstractService {
                                             ms.getId() + " - " + e.getMessage(), e);
                                 }
 
-                                if (m != null && m.hasForm() && FhirUtil.hasCoding(m.getForm(), validFormCodings)) {
+                                if (m != null && m.hasForm() && validFormCodings.contains(m.getForm())) {
                                     hasGoodForm = true;
                                 }
                             }
@@ -391,8 +392,8 @@ public class EHRService extends AbstractService {
         UserWorkspace workspace = userWorkspaceService.get(sessionId);
         FHIRCredentialsWithClient fcc = workspace.getFhirCredentialsWithClient();
 
-        final List<Coding> validRouteCodings = getValidMedicationRouteCodings();
-        final List<Coding> validFormCodings = getValidMedicationFormCodings();
+        final CodingSet validRouteCodings = CodingSet.of(getValidMedicationRouteCodings());
+        final CodingSet validFormCodings = CodingSet.of(getValidMedicationFormCodings());
 
         Bundle bundle = fhirService.search(fcc, workspace.getFhirQueryManager().getMedicationRequestStrategy(),
                 workspace.getVendorTransformer().getMedicationRequestQuery(fcc.getCredentials().getPatientId()),
@@ -424,7 +425,7 @@ public class EHRService extends AbstractService {
 
                             if (mr.hasDosageInstruction()) {
                                 for (Dosage d : mr.getDosageInstruction()) {
-                                    if (d.hasRoute() && FhirUtil.hasCoding(d.getRoute(), validRouteCodings)) {
+                                    if (d.hasRoute() && validRouteCodings.contains(d.getRoute())) {
                                         hasGoodRoute = true;
                                         break;
                                     }
@@ -448,7 +449,7 @@ public class EHRService extends AbstractService {
                                             mr.getId() + " - " + e.getMessage(), e);
                                 }
 
-                                if (m != null && m.hasForm() && FhirUtil.hasCoding(m.getForm(), validFormCodings)) {
+                                if (m != null && m.hasForm() && validFormCodings.contains(m.getForm())) {
                                     hasGoodForm = true;
                                 }
                             }
@@ -522,7 +523,7 @@ public class EHRService extends AbstractService {
                                 logger.debug("removing Procedure " + p.getId() + " - no category");
                                 return false;
 
-                            } else if ( ! FhirUtil.hasCoding(p.getCategory(), fcm.getProcedureCounselingCoding()) ) {
+                            } else if ( ! fcm.getProcedureCounselingCodingSet().contains(p.getCategory()) ) {
                                 logger.debug("removing Procedure " + p.getId() + " - invalid category");
                                 return false;
                             }
@@ -6,6 +6,8 @@ import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import edu.ohsu.cmp.coach.exception.*;
 import edu.ohsu.cmp.coach.fhir.CompositeBundle;
 import edu.ohsu.cmp.coach.fhir.FhirStrategy;
+import edu.ohsu.cmp.coach.http.Dependency;
+import edu.ohsu.cmp.coach.http.OutboundCallGuard;
 import edu.ohsu.cmp.coach.model.ResourceWithBundle;
 import edu.ohsu.cmp.coach.model.fhir.FHIRCredentialsWithClient;
 import edu.ohsu.cmp.coach.model.fhir.jwt.AccessToken;
@@ -28,15 +30,18 @@ import java.util.function.Function;
 public class FHIRService {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    @Value("${socket.timeout:300000}")
-    private Integer socketTimeout;
-
     @Value("${fhir.search.count}")
     private int searchCount;
 
     @Autowired
     private JWTService jwtService;
 
+    @Autowired
+    private MetricsService metricsService;
+
+    @Autowired
+    private OutboundCallGuard outboundCallGuard;
+
     public <T extends IBaseResource> T readByReference(FHIRCredentialsWithClient fcc, FhirStrategy strategy, Class<T> aClass,
                                                        Reference reference) throws DataException, ConfigurationException, IOException {
         if (reference == null) return null;
@@ -95,10 +100,11 @@ public class FHIRService {
         String id = FhirUtil.extractIdFromReference(reference);
         IGenericClient client = buildClient(fcc, strategy);
         try {
-            return client.read()
+            return outboundCallGuard.call(Dependency.EHR, true, () -> client.read()
                     .resource(aClass)
                     .withId(id)
-                    .execute();
+                    .execute()
+            );
 
         } catch (InvalidRequestException ire) {
             logger.error("caught " + ire.getClass().getName() + " reading " + aClass.getName() + " with id='" + id + "' - " + ire.getMessage());
@@ -120,47 +126,61 @@ public class FHIRService {
 
         logger.info("search: executing query: " + fhirQuery);
 
-        IGenericClient client = buildClient(fcc, strategy);
-
+        MetricsService.Sample sample = metricsService.startSample(fcc.getCredentials().getPatientId());
         Bundle bundle;
+        int pages = 0;
+        boolean success = false;
         try {
-            bundle = client.search()
-                    .byUrl(fcc.getCredentials().getServerURL() + '/' + fhirQuery)
-                    .count(searchCount)
-                    .accept("application/fhir+json")        // required for Cerner
-                    .returnBundle(Bundle.class)
-                    .execute();
-
-            // bundle.getTotal() may be null and if so it will return 0, even if there are many entries.  Cerner does this
-            logger.info("search: got Bundle with total=" + bundle.getTotal() + ", entries=" + bundle.getEntry().size() + " for query: " + fhirQuery);
-            if (logger.isDebugEnabled()) {
-                logger.debug("bundle = " + FhirUtil.toJson(bundle));
+            IGenericClient client = buildClient(fcc, strategy);
+
+            try {
+                bundle = outboundCallGuard.call(Dependency.EHR, true, () -> client.search()
+                        .byUrl(fcc.getCredentials().getServerURL() + '/' + fhirQuery)
+                        .count(searchCount)
+                        .accept("application/fhir+json")        // required for Cerner
+                        .returnBundle(Bundle.class)
+                        .execute()
+                );
+                pages = 1;
+
+                // bundle.getTotal() may be null and if so it will return 0, even if there are many entries.  Cerner does this
+                logger.info("search: got Bundle with total=" + bundle.getTotal() + ", entries=" + bundle.getEntry().size() + " for query: " + fhirQuery);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("bundle = " + FhirUtil.toJson(bundle));
+                }
+
+            } catch (InvalidRequestException ire) {
+                logger.error("caught " + ire.getClass().getName() + " executing search: " + fhirQuery, ire);
+                throw ire;
             }
 
-        } catch (InvalidRequestException ire) {
-            logger.error("caught " + ire.getClass().getName() + " executing search: " + fhirQuery, ire);
-            throw ire;
-        }
+            if (bundle.getLink(Bundle.LINK_NEXT) != null) {
+                CompositeBundle compositeBundle = new CompositeBundle();
+                compositeBundle.consume(bundle);
 
-        if (bundle.getLink(Bundle.LINK_NEXT) != null) {
-            CompositeBundle compositeBundle = new CompositeBundle();
-            compositeBundle.consume(bundle);
+                int page = 2;
+                while (bundle.getLink(Bundle.LINK_NEXT) != null) {
+                    Bundle previous = bundle;
+                    bundle = outboundCallGuard.call(Dependency.EHR, true, () -> fcc.getClient().loadPage().next(previous).execute());
 
-            int page = 2;
-            while (bundle.getLink(Bundle.LINK_NEXT) != null) {
-                bundle = fcc.getClient().loadPage().next(bundle).execute();
+                    logger.info("search (page " + page + "): " + fhirQuery + " (size=" + bundle.getTotal() + ")");
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("bundle = " + FhirUtil.toJson(bundle));
+                    }
 
-                logger.info("search (page " + page + "): " + fhirQuery + " (size=" + bundle.getTotal() + ")");
-                if (logger.isDebugEnabled()) {
-                    logger.debug("bundle = " + FhirUtil.toJson(bundle));
-                }
+                    compositeBundle.consume(bundle);
 
-                compositeBundle.consume(bundle);
+                    page ++;
+                    pages ++;
+                }
 
-                page ++;
+                bundle = compositeBundle.getBundle();
             }
 
-            bundle = compositeBundle.getBundle();
+            success = true;
+
+        } finally {
+            metricsService.recordFhirSearch(sample, getResourceType(fhirQuery), pages, success);
         }
 
         if (validityFunction != null) {
@@ -176,10 +196,11 @@ public class FHIRService {
             logger.debug("transacting " + resource.getClass().getSimpleName() + ": " + FhirUtil.toJson(resource));
         }
 
-        MethodOutcome outcome = client.create()
+        MethodOutcome outcome = outboundCallGuard.call(Dependency.EHR, false, () -> client.create()
                 .resource(resource)
                 .withAdditionalHeader("Prefer", "return=representation")
-                .execute();
+                .execute()
+        );
 
         T t = (T) outcome.getResource();
 
@@ -221,7 +242,7 @@ public class FHIRService {
 
                 client = FhirUtil.buildClient(fcc.getCredentials().getServerURL(),
                         accessToken.getAccessToken(),
-                        socketTimeout);
+                        outboundCallGuard.getTimeout(Dependency.EHR));
 
             } else {
                 throw new ConfigurationException("BACKEND context requested but JWT not defined");
@@ -241,9 +262,10 @@ public class FHIRService {
             logger.debug("transacting Bundle: " + FhirUtil.toJson(bundle));
         }
 
-        Bundle response = client.transaction().withBundle(bundle)
+        Bundle response = outboundCallGuard.call(Dependency.EHR, false, () -> client.transaction().withBundle(bundle)
                 .withAdditionalHeader("Prefer", "return=representation")
-                .execute();
+                .execute()
+        );
 
         if (logger.isDebugEnabled()) {
             logger.debug("transaction response: " + FhirUtil.toJson(response));
@@ -267,7 +289,7 @@ public class FHIRService {
 
                 return FhirUtil.buildClient(fcc.getCredentials().getServerURL(),
                         accessToken.getAccessToken(),
-                        socketTimeout);
+                        outboundCallGuard.getTimeout(Dependency.EHR));
 
             } else {
                 throw new ConfigurationException("BACKEND context requested but JWT not defined");
@@ -284,6 +306,11 @@ public class FHIRService {
         }
     }
 
+    // e.g. "Observation?subject=..." -> "Observation"
+    private String getResourceType(String fhirQuery) {
+        return StringUtils.substringBefore(StringUtils.substringBefore(fhirQuery, "?"), "/");
+    }
+
     private void filterInvalidResources(Bundle bundle, Function<ResourceWithBundle, Boolean> validityFunction) {
         if (bundle != null && bundle.hasEntry()) {
             Iterator<Bundle.BundleEntryComponent> iter = bundle.getEntry().iterator();
@@ -31,6 +31,21 @@ import java.util.stream.Collectors;
 public class GoalService extends AbstractService {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    /**
+     * The patient's locally-stored goals, with their history, loaded once per session and kept in step with every
+     * create, update and delete made through this service.  Each UserWorkspace holds one of these.
+     */
+    public static class LocalGoals {
+        private Map<String, MyGoal> map = null;     // keyed by extGoalId; null until loaded
+
+        /**
+         * forget the loaded goals, so that they're read again from the database the next time they're needed
+         */
+        public synchronized void reset() {
+            map = null;
+        }
+    }
+
     @Value("${security.salt}")
     private String salt;
 
@@ -84,7 +99,7 @@ public class GoalService extends AbstractService {
                 if (entry.getResource() instanceof ServiceRequest) {
                     ServiceRequest sr = (ServiceRequest) entry.getResource();
                     try {
-                        if (sr.hasCode() && FhirUtil.hasCoding(sr.getCode(), fcm.getServiceRequestOrderBPGoalCodings())) {
+                        if (sr.hasCode() && fcm.getServiceRequestOrderBPGoalCodingSet().contains(sr.getCode())) {
                             Goal g = buildBPGoal(sessionId, sr);
                             if (logger.isDebugEnabled()) {
                                 logger.debug("created Goal: " + FhirUtil.toJson(g));
@@ -190,12 +205,18 @@ public class GoalService extends AbstractService {
 
     private List<MyGoal> getLocalGoalList(String sessionId) {
         UserWorkspace workspace = userWorkspaceService.get(sessionId);
-        return repository.findAllByPatId(workspace.getInternalPatientId());
+        LocalGoals localGoals = workspace.getLocalGoals();
+        synchronized (localGoals) {
+            return new ArrayList<>(getLocalGoalMap(workspace, localGoals).values());
+        }
     }
 
     public MyGoal getLocalGoal(String sessionId, String extGoalId) {
         UserWorkspace workspace = userWorkspaceService.get(sessionId);
-        return repository.findOneByPatIdAndExtGoalId(workspace.getInternalPatientId(), extGoalId);
+        LocalGoals localGoals = workspace.getLocalGoals();
+        synchronized (localGoals) {
+            return getLocalGoalMap(workspace, localGoals).get(extGoalId);
+        }
     }
 
     /**
@@ -243,9 +264,12 @@ public class GoalService extends AbstractService {
     }
 
     public MyGoal getCurrentLocalBPGoal(String sessionId) {
-        return repository.findCurrentBPGoal(
-                userWorkspaceService.get(sessionId).getInternalPatientId()
-        );
+        for (MyGoal g : getLocalGoalList(sessionId)) {
+            if (g.isBloodPressureGoal()) {
+                return g;
+            }
+        }
+        return null;
     }
 
     // utility function to get the latest BP goal from the EHR
@@ -305,26 +329,71 @@ public class GoalService extends AbstractService {
         set.add(gh);
         g.setHistory(set);
 
+        LocalGoals localGoals = workspace.getLocalGoals();
+        synchronized (localGoals) {
+            if (localGoals.map != null) {
+                localGoals.map.put(g.getExtGoalId(), g);
+            }
+        }
+
         return g;
     }
 
-    public MyGoal update(MyGoal goal) {
-        return repository.save(goal);
+    public MyGoal update(String sessionId, MyGoal goal) {
+        MyGoal g = repository.save(goal);
+
+        LocalGoals localGoals = userWorkspaceService.get(sessionId).getLocalGoals();
+        synchronized (localGoals) {
+            if (localGoals.map != null) {
+                localGoals.map.put(g.getExtGoalId(), g);
+            }
+        }
+
+        return g;
     }
 
     public void deleteByGoalId(String sessionId, String extGoalId) {
         UserWorkspace workspace = userWorkspaceService.get(sessionId);
-        repository.deleteByGoalIdForPatient(extGoalId, workspace.getInternalPatientId());
+        LocalGoals localGoals = workspace.getLocalGoals();
+        synchronized (localGoals) {
+            repository.deleteByGoalIdForPatient(extGoalId, workspace.getInternalPatientId());
+            if (localGoals.map != null) {
+                localGoals.map.remove(extGoalId);
+            }
+        }
     }
 
     public void deleteBPGoalIfExists(String sessionId) {
         UserWorkspace workspace = userWorkspaceService.get(sessionId);
-        repository.deleteBPGoalForPatient(workspace.getInternalPatientId());
+        LocalGoals localGoals = workspace.getLocalGoals();
+        synchronized (localGoals) {
+            repository.deleteBPGoalForPatient(workspace.getInternalPatientId());
+            if (localGoals.map != null) {
+                localGoals.map.values().removeIf(MyGoal::isBloodPressureGoal);
+            }
+        }
     }
 
-    public GoalHistory createHistory(GoalHistory goalHistory) {
+    public GoalHistory createHistory(String sessionId, GoalHistory goalHistory) {
         goalHistory.setCreatedDate(new Date());
-        return historyRepository.save(goalHistory);
+        GoalHistory gh = historyRepository.save(goalHistory);
+
+        LocalGoals localGoals = userWorkspaceService.get(sessionId).getLocalGoals();
+        synchronized (localGoals) {
+            if (localGoals.map != null) {
+                for (MyGoal g : localGoals.map.values()) {
+                    if (g.getId().equals(gh.getGoalId())) {
+                        // replace rather than modify the history, as others may be iterating over it
+                        Set<GoalHistory> set = new HashSet<>(g.getHistory());
+                        set.add(gh);
+                        g.setHistory(set);
+                        break;
+                    }
+                }
+            }
+        }
+
+        return gh;
     }
 
     public void deleteAll(String sessionId) {
@@ -335,10 +404,32 @@ public class GoalService extends AbstractService {
 //
 //            } else {
                 UserWorkspace workspace = userWorkspaceService.get(sessionId);
-                repository.deleteAllByPatId(workspace.getInternalPatientId());
+                LocalGoals localGoals = workspace.getLocalGoals();
+                synchronized (localGoals) {
+                    repository.deleteAllByPatId(workspace.getInternalPatientId());
+                    localGoals.reset();
+                }
 //            }
 //        } catch (Exception e) {
 //            logger.error("caught " + e.getClass().getName() + " attempting to delete Goals for session " + sessionId, e);
 //        }
     }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    // reads the patient's goals the first time they're needed in a session; every other read is answered from
+    // memory.  the caller must hold the lock on localGoals
+    private Map<String, MyGoal> getLocalGoalMap(UserWorkspace workspace, LocalGoals localGoals) {
+        if (localGoals.map == null) {
+            logger.debug("loading local goals for session=" + workspace.getSessionId());
+            Map<String, MyGoal> map = new LinkedHashMap<>();
+            for (MyGoal g : repository.findAllByPatId(workspace.getInternalPatientId())) {
+                map.put(g.getExtGoalId(), g);
+            }
+            localGoals.map = map;
+        }
+        return localGoals.map;
+    }
 }
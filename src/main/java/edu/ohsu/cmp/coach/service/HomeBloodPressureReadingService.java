@@ -3,21 +3,36 @@ package edu.ohsu.cmp.coach.service;
 import edu.ohsu.cmp.coach.workspace.UserWorkspace;
 import edu.ohsu.cmp.coach.entity.HomeBloodPressureReading;
 import edu.ohsu.cmp.coach.repository.HomeBloodPressureReadingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 @Service
 public class HomeBloodPressureReadingService extends AbstractService {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     @Autowired
     private HomeBloodPressureReadingRepository repository;
 
-    public List<HomeBloodPressureReading> getHomeBloodPressureReadings(String sessionId) {
+    /**
+     * @param since only readings taken after this date are returned
+     * @param limit the maximum number of readings to return, or null to return all of them
+     * @return the patient's readings, newest first
+     */
+    public List<HomeBloodPressureReading> getHomeBloodPressureReadings(String sessionId, Date since, Integer limit) {
         UserWorkspace workspace = userWorkspaceService.get(sessionId);
-        return repository.findAllByPatId(workspace.getInternalPatientId());
+        Pageable pageable = limit != null ?
+                PageRequest.of(0, limit) :
+                Pageable.unpaged();
+        return repository.findByPatIdAndReadingDateAfterOrderByReadingDateDesc(workspace.getInternalPatientId(),
+                since, pageable);
     }
 
     public HomeBloodPressureReading create(String sessionId, HomeBloodPressureReading bpreading) {
@@ -27,6 +42,41 @@ public class HomeBloodPressureReadingService extends AbstractService {
         return repository.save(bpreading);
     }
 
+    /**
+     * store several readings at once, which the database receives as one batch.  if the batch fails, the readings are
+     * stored one at a time instead, so that one bad reading doesn't cost the rest
+     * @return the stored readings, in the order given.  any that couldn't be stored are null
+     */
+    public List<HomeBloodPressureReading> createAll(String sessionId, List<HomeBloodPressureReading> list) {
+        UserWorkspace workspace = userWorkspaceService.get(sessionId);
+        Date now = new Date();
+        for (HomeBloodPressureReading item : list) {
+            item.setPatId(workspace.getInternalPatientId());
+            item.setCreatedDate(now);
+        }
+
+        try {
+            return repository.saveAll(list);
+
+        } catch (RuntimeException e) {
+            logger.warn("caught " + e.getClass().getName() + " storing " + list.size() + " BP readings as a batch - " +
+                    "storing them individually - " + e.getMessage());
+        }
+
+        List<HomeBloodPressureReading> responseList = new ArrayList<>();
+        for (HomeBloodPressureReading item : list) {
+            item.setId(null);       // assigned by the failed batch, which was rolled back
+            try {
+                responseList.add(repository.save(item));
+
+            } catch (RuntimeException e) {
+                logger.error("caught " + e.getClass().getName() + " storing BP reading taken at " + item.getReadingDate() + " - " + e.getMessage(), e);
+                responseList.add(null);
+            }
+        }
+        return responseList;
+    }
+
     public void delete(String sessionId, Long id) {
         UserWorkspace workspace = userWorkspaceService.get(sessionId);
         repository.deleteByIdForPatient(id, workspace.getInternalPatientId());
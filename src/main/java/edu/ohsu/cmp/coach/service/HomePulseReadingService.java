@@ -3,20 +3,36 @@ package edu.ohsu.cmp.coach.service;
 import edu.ohsu.cmp.coach.entity.HomePulseReading;
 import edu.ohsu.cmp.coach.repository.HomePulseReadingRepository;
 import edu.ohsu.cmp.coach.workspace.UserWorkspace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 @Service
 public class HomePulseReadingService extends AbstractService {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
     @Autowired
     private HomePulseReadingRepository repository;
 
-    public List<HomePulseReading> getHomePulseReadings(String sessionId) {
+    /**
+     * @param since only readings taken after this date are returned
+     * @param limit the maximum number of readings to return, or null to return all of them
+     * @return the patient's readings, newest first
+     */
+    public List<HomePulseReading> getHomePulseReadings(String sessionId, Date since, Integer limit) {
         UserWorkspace workspace = userWorkspaceService.get(sessionId);
-        return repository.findAllByPatId(workspace.getInternalPatientId());
+        Pageable pageable = limit != null ?
+                PageRequest.of(0, limit) :
+                Pageable.unpaged();
+        return repository.findByPatIdAndReadingDateAfterOrderByReadingDateDesc(workspace.getInternalPatientId(),
+                since, pageable);
     }
 
     public HomePulseReading create(String sessionId, HomePulseReading pulseReading) {
@@ -26,6 +42,41 @@ public class HomePulseReadingService extends AbstractService {
         return repository.save(pulseReading);
     }
 
+    /**
+     * store several readings at once, which the database receives as one batch.  if the batch fails, the readings are
+     * stored one at a time instead, so that one bad reading doesn't cost the rest
+     * @return the stored readings, in the order given.  any that couldn't be stored are null
+     */
+    public List<HomePulseReading> createAll(String sessionId, List<HomePulseReading> list) {
+        UserWorkspace workspace = userWorkspaceService.get(sessionId);
+        Date now = new Date();
+        for (HomePulseReading item : list) {
+            item.setPatId(workspace.getInternalPatientId());
+            item.setCreatedDate(now);
+        }
+
+        try {
+            return repository.saveAll(list);
+
+        } catch (RuntimeException e) {
+            logger.warn("caught " + e.getClass().getName() + " storing " + list.size() + " pulse readings as a batch - " +
+                    "storing them individually - " + e.getMessage());
+        }
+
+        List<HomePulseReading> responseList = new ArrayList<>();
+        for (HomePulseReading item : list) {
+            item.setId(null);       // assigned by the failed batch, which was rolled back
+            try {
+                responseList.add(repository.save(item));
+
+            } catch (RuntimeException e) {
+                logger.error("caught " + e.getClass().getName() + " storing pulse reading taken at " + item.getReadingDate() + " - " + e.getMessage(), e);
+                responseList.add(null);
+            }
+        }
+        return responseList;
+    }
+
     public void delete(String sessionId, Long id) {
         UserWorkspace workspace = userWorkspaceService.get(sessionId);
         repository.deleteByIdForPatient(id, workspace.getInternalPatientId());
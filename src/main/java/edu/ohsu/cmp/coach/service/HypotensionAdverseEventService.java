@@ -22,74 +22,118 @@ public class HypotensionAdverseEventService extends AbstractService {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
     private static final int LOOKBACK_DAYS = 14;
 
+    /**
+     * Where detection left off for a session, so that new readings can be evaluated without revisiting old ones.
+     * Each UserWorkspace holds one of these.
+     */
+    public static class DetectionState {
+        private boolean initialized = false;
+        private Date lastReadingDate = null;
+        private BloodPressureModel pendingLow = null;
+
+        /**
+         * forget where detection left off, so that the next refresh re-evaluates all readings in the lookback period
+         */
+        public synchronized void reset() {
+            initialized = false;
+            lastReadingDate = null;
+            pendingLow = null;
+        }
+    }
+
     @Autowired
     private HypotensionAdverseEventRepository repository;
 
     @Autowired
     private BloodPressureService bloodPressureService;
 
+    /**
+     * re-evaluate all the patient's BP readings in the lookback period, bringing the persisted hypotension adverse
+     * events in line with them
+     * @return true if any adverse events were created or deleted
+     */
     public boolean refresh(String sessionId) throws DataException {
         logger.info("refreshing hypotension adverse events for session=" + sessionId);
 
-        boolean modified = false;
+        UserWorkspace workspace = userWorkspaceService.get(sessionId);
+        DetectionState state = workspace.getHypotensionDetectionState();
+        synchronized (state) {
+            Date since = getLookbackStart();
+
+            // first, catalog the list of hypotension adverse events for this person within the lookback period that are currently persisted
+            Map<String, HypotensionAdverseEvent> currentMap = new LinkedHashMap<>();
+            for (HypotensionAdverseEvent hae : repository.findAllByPatIdSince(workspace.getInternalPatientId(), since)) {
+                currentMap.put(hae.getLogicalEqualityKey(), hae);
+            }
 
-        // first, catalog the list of hypotension adverse events for this person within the lookback period that are currently persisted
-        Map<String, HypotensionAdverseEvent> currentMap = new LinkedHashMap<>();
-        for (HypotensionAdverseEvent hae : getHypotensionAdverseEventList(sessionId)) {
-            currentMap.put(hae.getLogicalEqualityKey(), hae);
-        }
+            // next, construct a new index of hypotension AEs based on this person's BP readings in the lookback period
+            List<BloodPressureModel> bpList = bloodPressureService.getBloodPressureReadings(sessionId).stream()
+                    .filter(bp -> ! bp.getReadingDate().before(since))
+                    .collect(Collectors.toList());
 
-        LocalDate earliestEventDate = LocalDate.now().minusDays(LOOKBACK_DAYS);
-        System.out.println("Earliest event date: " + earliestEventDate); 
-
-        // next, construct a new index of hypotension AEs based on this person's BP readings in the lookback period
-        Map<String, HypotensionAdverseEvent> newMap = new LinkedHashMap<>();
-        BloodPressureModel bpm1 = null;
-        List<BloodPressureModel> bpList = bloodPressureService.getBloodPressureReadings(sessionId).stream()
-            .filter(bp -> {
-                LocalDate bpDate = bp.getReadingDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-                return bpDate.isAfter(earliestEventDate);
-            }).collect(Collectors.toList());
-        bpList.sort(Comparator.comparing(AbstractVitalsModel::getReadingDate)); // sort oldest first
-        for (BloodPressureModel bpm : bpList) {
-            if (bpm.isLow()) {
-                if (bpm1 != null) {
-                    // create AE from bpm and bpm1
-                    HypotensionAdverseEvent hae = new HypotensionAdverseEvent(bpm1, bpm);
-                    newMap.put(hae.getLogicalEqualityKey(), hae);
-                    bpm1 = null;
-                } else {
-                    bpm1 = bpm;
+            state.lastReadingDate = null;
+            state.pendingLow = null;
+            Map<String, HypotensionAdverseEvent> newMap = new LinkedHashMap<>();
+            for (HypotensionAdverseEvent hae : detect(state, bpList)) {
+                newMap.put(hae.getLogicalEqualityKey(), hae);
+            }
+            state.initialized = true;
+
+            // now loop through all the new ones, removing any that exist in both lists
+            Iterator<String> iter = newMap.keySet().iterator();
+            while (iter.hasNext()) {
+                String key = iter.next();
+                if (currentMap.containsKey(key)) {
+                    logger.debug("found hypotension adverse event in both current and new lists (will not process) - " + key);
+                    currentMap.remove(key);
+                    iter.remove();
                 }
-            } else {
-                bpm1 = null;
             }
+
+            // any items remaining in the old list should be deleted, and any remaining in the new list created
+            delete(sessionId, currentMap.values());
+            create(sessionId, newMap.values());
+
+            return ! currentMap.isEmpty() || ! newMap.isEmpty();
         }
+    }
 
-        // now loop through all the new ones, removing any that exist in both lists
-        Iterator<String> iter = newMap.keySet().iterator();
-        while (iter.hasNext()) {
-            String key = iter.next();
-            if (currentMap.containsKey(key)) {
-                logger.debug("found hypotension adverse event in both current and new lists (will not process) - " + key);
-                currentMap.remove(key);
-                iter.remove();
+    /**
+     * evaluate newly-recorded BP readings, continuing from where detection last left off.  if the new readings don't
+     * all follow those already evaluated (e.g. a reading was back-dated), or nothing has been evaluated yet for this
+     * session, this falls back to a full refresh
+     * @return true if any adverse events were created or deleted
+     */
+    public boolean refresh(String sessionId, List<BloodPressureModel> newReadings) throws DataException {
+        UserWorkspace workspace = userWorkspaceService.get(sessionId);
+        DetectionState state = workspace.getHypotensionDetectionState();
+        synchronized (state) {
+            if ( ! state.initialized ) {
+                return refresh(sessionId);
             }
-        }
 
-        // any items remaining in the old list should be deleted.
-        for (HypotensionAdverseEvent hae : currentMap.values()) {
-            delete(sessionId, hae);
-            modified = true;
-        }
+            for (BloodPressureModel bpm : newReadings) {
+                if (state.lastReadingDate != null && ! bpm.getReadingDate().after(state.lastReadingDate)) {
+                    logger.debug("new reading at " + bpm.getReadingDateString() + " precedes readings already " +
+                            "evaluated for session=" + sessionId + " - performing full refresh");
+                    return refresh(sessionId);
+                }
+            }
 
-        // any items remaining in the new list should be created.
-        for (HypotensionAdverseEvent hae : newMap.values()) {
-            create(sessionId, hae);
-            modified = true;
-        }
+            logger.info("evaluating " + newReadings.size() + " new readings for hypotension adverse events for " +
+                    "session=" + sessionId);
+
+            // a low reading left unpaired that has since aged out of the lookback period can no longer be paired
+            Date since = getLookbackStart();
+            if (state.pendingLow != null && state.pendingLow.getReadingDate().before(since)) {
+                state.pendingLow = null;
+            }
+
+            List<HypotensionAdverseEvent> list = detect(state, newReadings);
+            create(sessionId, list);
 
-        return modified;
+            return ! list.isEmpty();
+        }
     }
 
     /**
@@ -98,33 +142,76 @@ public class HypotensionAdverseEventService extends AbstractService {
      * @return
      */
     public List<HypotensionAdverseEvent> getHypotensionAdverseEventList(String sessionId) {
-        LocalDate earliestEventDate = LocalDate.now().minusDays(LOOKBACK_DAYS);
         UserWorkspace workspace = userWorkspaceService.get(sessionId);
-        return repository.findAllByPatId(workspace.getInternalPatientId()).stream()
-            .filter(hae -> 
-            {
-                LocalDate earliestAEDate = hae.getBp1ReadingDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-                return earliestAEDate.isAfter(earliestEventDate);
-            }).collect(Collectors.toList());
+        return repository.findAllByPatIdSince(workspace.getInternalPatientId(), getLookbackStart());
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    // events are detected where two consecutive readings are low.  a reading can only belong to one event
+    private List<HypotensionAdverseEvent> detect(DetectionState state, List<BloodPressureModel> readings) {
+        List<BloodPressureModel> bpList = new ArrayList<>(readings);
+        bpList.sort(Comparator.comparing(AbstractVitalsModel::getReadingDate)); // sort oldest first
+
+        List<HypotensionAdverseEvent> list = new ArrayList<>();
+        for (BloodPressureModel bpm : bpList) {
+            if (bpm.isLow()) {
+                if (state.pendingLow != null) {
+                    list.add(new HypotensionAdverseEvent(state.pendingLow, bpm));
+                    state.pendingLow = null;
+                } else {
+                    state.pendingLow = bpm;
+                }
+            } else {
+                state.pendingLow = null;
+            }
+            state.lastReadingDate = bpm.getReadingDate();
+        }
+        return list;
     }
 
-    public HypotensionAdverseEvent create(String sessionId, HypotensionAdverseEvent hae) {
-        logger.info("creating new hypotension adverse event for session=" + sessionId + " - " + hae.getLogicalEqualityKey());
+    // the start of the day LOOKBACK_DAYS - 1 days ago, i.e. anything on a day after the one LOOKBACK_DAYS ago
+    private Date getLookbackStart() {
+        LocalDate earliestEventDate = LocalDate.now().minusDays(LOOKBACK_DAYS - 1);
+        return Date.from(earliestEventDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    private List<HypotensionAdverseEvent> create(String sessionId, Collection<HypotensionAdverseEvent> haes) {
+        if (haes.isEmpty()) return new ArrayList<>();
+
         UserWorkspace workspace = userWorkspaceService.get(sessionId);
-        hae.setPatId(workspace.getInternalPatientId());
-        hae.setCreatedDate(new Date());
-        HypotensionAdverseEvent hae2 = repository.save(hae);
+        Date now = new Date();
+        for (HypotensionAdverseEvent hae : haes) {
+            logger.info("creating new hypotension adverse event for session=" + sessionId + " - " + hae.getLogicalEqualityKey());
+            hae.setPatId(workspace.getInternalPatientId());
+            hae.setCreatedDate(now);
+        }
+
+        List<HypotensionAdverseEvent> list = repository.saveAll(haes);
 
-        auditService.doAudit(sessionId, AuditSeverity.INFO, "created hypotension adverse event", "id=" + hae2.getId());
+        List<String> details = new ArrayList<>();
+        for (HypotensionAdverseEvent hae : list) {
+            details.add("id=" + hae.getId());
+        }
+        auditService.doAudits(sessionId, AuditSeverity.INFO, "created hypotension adverse event", details);
 
-        return hae2;
+        return list;
     }
 
-    public void delete(String sessionId, HypotensionAdverseEvent hae) {
-        logger.info("deleting hypotension adverse event that no longer reflects current state for session=" +
-                sessionId + " - " + hae.getLogicalEqualityKey());
-        repository.delete(hae);
+    private void delete(String sessionId, Collection<HypotensionAdverseEvent> haes) {
+        if (haes.isEmpty()) return;
+
+        List<String> details = new ArrayList<>();
+        for (HypotensionAdverseEvent hae : haes) {
+            logger.info("deleting hypotension adverse event that no longer reflects current state for session=" +
+                    sessionId + " - " + hae.getLogicalEqualityKey());
+            details.add("id=" + hae.getId());
+        }
+
+        repository.deleteAllInBatch(haes);
 
-        auditService.doAudit(sessionId, AuditSeverity.INFO, "deleted hypotension adverse event", "id=" + hae.getId());
+        auditService.doAudits(sessionId, AuditSeverity.INFO, "deleted hypotension adverse event", details);
     }
 }
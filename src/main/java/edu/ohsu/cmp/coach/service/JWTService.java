@@ -8,8 +8,9 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import edu.ohsu.cmp.coach.exception.ConfigurationException;
 import edu.ohsu.cmp.coach.exception.MyHttpException;
-import edu.ohsu.cmp.coach.http.HttpRequest;
+import edu.ohsu.cmp.coach.http.Dependency;
 import edu.ohsu.cmp.coach.http.HttpResponse;
+import edu.ohsu.cmp.coach.http.OutboundCallGuard;
 import edu.ohsu.cmp.coach.model.fhir.jwt.AccessToken;
 import edu.ohsu.cmp.coach.util.CryptoUtil;
 import edu.ohsu.cmp.coach.util.UUIDUtil;
@@ -19,6 +20,7 @@ import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.http.message.BasicNameValuePair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -39,6 +41,9 @@ import java.util.Map;
 public class JWTService {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    @Autowired
+    private OutboundCallGuard outboundCallGuard;
+
     @Value("${fhir.security.jwt.client-id}")
     private String clientId;
 
@@ -129,7 +134,7 @@ public class JWTService {
         params.add(new BasicNameValuePair("client_assertion", jwt));
         String requestBody = URLEncodedUtils.format(params, StandardCharsets.UTF_8);
 
-        HttpResponse httpResponse = new HttpRequest().post(tokenAuthUrl, null, requestHeaders, requestBody);
+        HttpResponse httpResponse = outboundCallGuard.request(Dependency.EHR).post(tokenAuthUrl, null, requestHeaders, requestBody);
 
         int code = httpResponse.getResponseCode();
         String responseBody = httpResponse.getResponseBody();
@@ -97,7 +97,8 @@ public class MedicationService extends AbstractService {
         return filterByValueSet(list, Arrays.asList(valueSetOID), includeOnMatch);
     }
 
-    private List<MedicationModel> filterByValueSet(List<MedicationModel> list, List<String> valueSetOIDList, boolean includeOnMatch) {
+    // package-private so that it can be benchmarked directly
+    List<MedicationModel> filterByValueSet(List<MedicationModel> list, List<String> valueSetOIDList, boolean includeOnMatch) {
         if (list == null) return null;
 
         List<MedicationModel> filtered = new ArrayList<>();
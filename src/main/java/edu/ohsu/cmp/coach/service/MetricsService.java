@@ -0,0 +1,125 @@
+package edu.ohsu.cmp.coach.service;
+
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import edu.ohsu.cmp.coach.metrics.MeterStatsCounter;
+import edu.ohsu.cmp.coach.metrics.TimingEvent;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records how long the expensive parts of serving a session take: building each UserWorkspace cache entry, executing
+ * FHIR searches, and evaluating CDS hooks in CQF Ruler.  Timers are tagged by loader, resource type or hook rather than
+ * by session, so that they can be aggregated into percentiles per site and EHR.
+ */
+@Service
+public class MetricsService {
+    public static final String METRIC_WORKSPACE_POPULATE = "coach.workspace.populate";
+    public static final String METRIC_WORKSPACE_LOADER = "coach.workspace.loader";
+    public static final String METRIC_FHIR_SEARCH = "coach.fhir.search";
+    public static final String METRIC_FHIR_SEARCH_PAGES = "coach.fhir.search.pages";
+    public static final String METRIC_CDS_HOOK = "coach.cdshooks.request";
+
+    private static final String OUTCOME_SUCCESS = "success";
+    private static final String OUTCOME_ERROR = "error";
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${metrics.jfr.enabled}")
+    private Boolean jfrEnabled;
+
+    private final Map<String, StatsCounter> statsCounters = new ConcurrentHashMap<>();
+
+    /**
+     * @param context the session or patient being timed; only used to identify JFR events, never as a metric tag
+     */
+    public Sample startSample(String context) {
+        TimingEvent event = null;
+        if (jfrEnabled) {
+            event = new TimingEvent();
+            event.context = context;
+            event.begin();
+        }
+        return new Sample(Timer.start(registry), event);
+    }
+
+    public void recordPopulate(Sample sample, boolean success) {
+        stop(sample, METRIC_WORKSPACE_POPULATE, null, success,
+                Timer.builder(METRIC_WORKSPACE_POPULATE)
+                        .description("time taken to populate a UserWorkspace, i.e. for a session to become ready"));
+    }
+
+    public void recordLoader(Sample sample, String loader, boolean success) {
+        stop(sample, METRIC_WORKSPACE_LOADER, loader, success,
+                Timer.builder(METRIC_WORKSPACE_LOADER)
+                        .description("time taken to build a UserWorkspace cache entry")
+                        .tag("loader", loader));
+    }
+
+    public void recordFhirSearch(Sample sample, String resourceType, int pages, boolean success) {
+        stop(sample, METRIC_FHIR_SEARCH, resourceType, success,
+                Timer.builder(METRIC_FHIR_SEARCH)
+                        .description("time taken to execute a FHIR search, including all pages")
+                        .tag("resource", resourceType));
+
+        if (success) {
+            DistributionSummary.builder(METRIC_FHIR_SEARCH_PAGES)
+                    .description("the number of pages returned by a FHIR search")
+                    .tag("resource", resourceType)
+                    .register(registry)
+                    .record(pages);
+        }
+    }
+
+    public void recordHookRequest(Sample sample, String hookId, boolean success) {
+        stop(sample, METRIC_CDS_HOOK, hookId, success,
+                Timer.builder(METRIC_CDS_HOOK)
+                        .description("time taken by CQF Ruler to evaluate a CDS hook")
+                        .tag("hook", hookId));
+    }
+
+    /**
+     * @param cacheName the kind of cache, e.g. "bundleCache"
+     * @return a StatsCounter shared by every cache of the specified kind
+     */
+    public StatsCounter getStatsCounter(String cacheName) {
+        return statsCounters.computeIfAbsent(cacheName, k -> new MeterStatsCounter(registry, cacheName));
+    }
+
+    public static class Sample {
+        private final Timer.Sample timerSample;
+        private final TimingEvent event;
+
+        private Sample(Timer.Sample timerSample, TimingEvent event) {
+            this.timerSample = timerSample;
+            this.event = event;
+        }
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    private void stop(Sample sample, String metric, String name, boolean success, Timer.Builder builder) {
+        sample.timerSample.stop(builder
+                .tag("outcome", success ? OUTCOME_SUCCESS : OUTCOME_ERROR)
+                .register(registry));
+
+        if (sample.event != null) {
+            sample.event.end();
+            if (sample.event.shouldCommit()) {
+                sample.event.metric = metric;
+                sample.event.name = name;
+                sample.event.success = success;
+                sample.event.commit();
+            }
+        }
+    }
+}
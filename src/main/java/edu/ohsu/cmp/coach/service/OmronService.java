@@ -8,8 +8,9 @@ import edu.ohsu.cmp.coach.model.redcap.RedcapParticipantInfo;
 import edu.ohsu.cmp.coach.exception.DataException;
 import edu.ohsu.cmp.coach.exception.NotAuthenticatedException;
 import edu.ohsu.cmp.coach.exception.OmronException;
-import edu.ohsu.cmp.coach.http.HttpRequest;
+import edu.ohsu.cmp.coach.http.Dependency;
 import edu.ohsu.cmp.coach.http.HttpResponse;
+import edu.ohsu.cmp.coach.http.OutboundCallGuard;
 import edu.ohsu.cmp.coach.model.AuditSeverity;
 import edu.ohsu.cmp.coach.model.BloodPressureModel;
 import edu.ohsu.cmp.coach.model.MyOmronTokenData;
@@ -34,16 +35,21 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 @Service
 public class OmronService extends AbstractService {
     private static final DateFormat OMRON_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
+    private static final int QUERY_CHUNK_SIZE = 500;    // keeps "in" lists well within the databases' parameter limits
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     // todo : build out services for retrieving vitals data from Omron here
 
+    @Autowired
+    private OutboundCallGuard outboundCallGuard;
+
     @Autowired
     private OmronVitalsCacheRepository repository;
 
@@ -127,7 +133,7 @@ public class OmronService extends AbstractService {
         headers.put("Content-Type", "application/x-www-form-urlencoded");
         headers.put("Cache-Control", "no-cache");
 
-        HttpResponse httpResponse = new HttpRequest().post(omronUrl + "/connect/token", null, headers, bodyParams);
+        HttpResponse httpResponse = outboundCallGuard.request(Dependency.OMRON).post(omronUrl + "/connect/token", null, headers, bodyParams);
         int code = httpResponse.getResponseCode();
         String body = httpResponse.getResponseBody();
 
@@ -162,7 +168,7 @@ public class OmronService extends AbstractService {
         headers.put("Content-Type", "application/x-www-form-urlencoded");
         headers.put("Cache-Control", "no-cache");
 
-        HttpResponse httpResponse = new HttpRequest().post(omronUrl + "/connect/token", null, headers, bodyParams);
+        HttpResponse httpResponse = outboundCallGuard.request(Dependency.OMRON).post(omronUrl + "/connect/token", null, headers, bodyParams);
         int code = httpResponse.getResponseCode();
         String body = httpResponse.getResponseBody();
 
@@ -221,7 +227,6 @@ public class OmronService extends AbstractService {
         MyOmronTokenData omronTokenData = workspace.getOmronTokenData();
 
         JobDataMap jobDataMap = new JobDataMap();
-        jobDataMap.put(RefreshTokenJob.JOBDATA_APPLICATIONCONTEXT, ctx);
         jobDataMap.put(RefreshTokenJob.JOBDATA_SESSIONID, sessionId);
         jobDataMap.put(RefreshTokenJob.JOBDATA_REFRESHTOKEN, omronTokenData.getRefreshToken());
 
@@ -276,65 +281,111 @@ public class OmronService extends AbstractService {
 
         auditService.doAudit(sessionId, AuditSeverity.INFO, "initiated Omron synchronization");
 
+        int processedCount = 0;
+        boolean allStored = true;
+
         try {
             MeasurementResult result = requestMeasurements(sessionId, workspace.getOmronLastUpdated());
             if (result.hasBloodPressures()) {
                 List<OmronBloodPressureModel> list = result.getBloodPressure();
-                for (int i = 0; i < list.size(); i ++) {
-                    logger.debug("processing Omron record " + i + " of " + list.size());
 
-                    workspace.setOmronSynchronizationProgress(i + 1, list.size());
+                // first persist the original objects to local cache
+                List<MyOmronVitals> vitalsList = new ArrayList<>();
+                try {
+                    vitalsList = writeToPersistentCache(workspace.getInternalPatientId(), list);
 
-                    OmronBloodPressureModel model = list.get(i);
-
-                    // first persist the original object to local cache
-                    MyOmronVitals vitals = null;
-                    try {
-                        vitals = writeToPersistentCache(workspace.getInternalPatientId(), model);
+                } catch (Exception e) {
+                    logger.error("caught " + e.getClass().getName() + " persisting Omron vitals - " + e.getMessage() + " - skipping -", e);
+                    allStored = false;
+                }
 
-                    } catch (Exception e) {
-                        logger.error("caught " + e.getClass().getName() + " persisting Omron vitals - " + e.getMessage() + " - skipping -", e);
-                        logger.debug("vitals = " + model);
+                // now build blood pressures and pulses for our home blood pressure and pulse model tables (if applicable)
+                // each reading remembers the vitals it came from, in case it can't be stored
+                Map<BloodPressureModel, MyOmronVitals> bpVitalsMap = new IdentityHashMap<>();
+                Map<PulseModel, MyOmronVitals> pulseVitalsMap = new IdentityHashMap<>();
+                List<BloodPressureModel> bpList = new ArrayList<>();
+                List<PulseModel> pulseList = new ArrayList<>();
+                for (int i = 0; i < vitalsList.size(); i ++) {
+                    logger.debug("processing Omron record " + i + " of " + vitalsList.size());
+                    processedCount ++;
+
+                    MyOmronVitals vitals = vitalsList.get(i);
+
+                    if (vitals.getSystolic() != null && vitals.getDiastolic() != null) {
+                        try {
+                            BloodPressureModel bpm = new BloodPressureModel(vitals, fcm);
+                            bpList.add(bpm);
+                            bpVitalsMap.put(bpm, vitals);
+
+                        } catch (Exception e) {
+                            logger.warn("caught " + e.getClass().getSimpleName() + " attempting to build BP - " + e.getMessage(), e);
+                        }
                     }
 
-                    if (vitals != null) {
-                        // now create this blood pressure into our home blood pressure model table (if applicable)
-                        if (vitals.getSystolic() != null && vitals.getDiastolic() != null) {
-                            try {
-                                bloodPressureService.create(sessionId, new BloodPressureModel(vitals, fcm));
+                    if (vitals.getPulse() != null) {
+                        try {
+                            PulseModel pm = new PulseModel(vitals, fcm);
+                            pulseList.add(pm);
+                            pulseVitalsMap.put(pm, vitals);
 
-                            } catch (Exception e) {
-                                // remote errors are tolerable, since we will always store locally too
-                                logger.warn("caught " + e.getClass().getSimpleName() + " attempting to create BP - " + e.getMessage(), e);
-                            }
+                        } catch (Exception e) {
+                            logger.warn("caught " + e.getClass().getSimpleName() + " attempting to build Pulse - " + e.getMessage(), e);
                         }
+                    }
+                }
 
-                        // and also persist pulse into our home pulse model table (if applicable)
-                        if (vitals.getPulse() != null) {
-                            try {
-                                pulseService.create(sessionId, new PulseModel(vitals, fcm));
+                // progress is reported as readings are written back to the EHR, as that's what takes the time
+                int total = bpList.size() + pulseList.size();
+                AtomicInteger written = new AtomicInteger(0);
+                Runnable onItemWritten = new Runnable() {
+                    @Override
+                    public void run() {
+                        workspace.setOmronSynchronizationProgress(written.incrementAndGet(), total);
+                    }
+                };
+                workspace.setOmronSynchronizationProgress(0, total);
+
+                // these are stored in batches, rather than one round trip per reading
+                Set<MyOmronVitals> failedVitals = Collections.newSetFromMap(new IdentityHashMap<>());
+                try {
+                    for (BloodPressureModel bpm : bloodPressureService.createAll(sessionId, bpList, onItemWritten)) {
+                        failedVitals.add(bpVitalsMap.get(bpm));
+                    }
 
-                            } catch (Exception e) {
-                                // remote errors are tolerable, since we will always store locally too
-                                logger.warn("caught " + e.getClass().getSimpleName() + " attempting to create Pulse - " + e.getMessage(), e);
-                            }
-                        }
+                } catch (Exception e) {
+                    logger.error("caught " + e.getClass().getName() + " attempting to create " + bpList.size() + " BPs - " + e.getMessage(), e);
+                    failedVitals.addAll(bpVitalsMap.values());
+                }
+
+                try {
+                    for (PulseModel pm : pulseService.createAll(sessionId, pulseList, onItemWritten)) {
+                        failedVitals.add(pulseVitalsMap.get(pm));
                     }
 
-// storer : useful for debugging
-//                    try {
-//                        logger.debug("sleeping 800ms");
-//                        Thread.sleep(800);
-//                    } catch (InterruptedException e) {
-//                        throw new RuntimeException(e);
-//                    }
+                } catch (Exception e) {
+                    logger.error("caught " + e.getClass().getName() + " attempting to create " + pulseList.size() + " Pulses - " + e.getMessage(), e);
+                    failedVitals.addAll(pulseVitalsMap.values());
+                }
+
+                // vitals whose readings weren't stored are removed from the cache, so the next synchronization
+                // doesn't skip them as already processed
+                if ( ! failedVitals.isEmpty() ) {
+                    allStored = false;
+                    uncache(failedVitals);
                 }
             }
 
-            Date lastUpdated = new Date();
-            patientService.setOmronLastUpdated(workspace.getInternalPatientId(), lastUpdated);
-            workspace.setOmronLastUpdated(lastUpdated);
-            logger.debug("completed Omron synchronization");
+            if (allStored) {
+                Date lastUpdated = new Date();
+                patientService.setOmronLastUpdated(workspace.getInternalPatientId(), lastUpdated);
+                workspace.setOmronLastUpdated(lastUpdated);
+                logger.debug("completed Omron synchronization");
+
+            } else {
+                // leave last-updated where it was, so the next synchronization requests these readings again
+                logger.warn("some Omron readings couldn't be stored - completed Omron synchronization without " +
+                        "advancing last-updated for session " + sessionId);
+            }
 
         } catch (OmronException e) {
             logger.error("caught " + e.getClass().getName() + " updating vitals cache - " + e.getMessage(), e);
@@ -345,6 +396,13 @@ public class OmronService extends AbstractService {
         } finally {
             workspace.clearCaches();
         }
+
+        if (processedCount > 0) {
+            // let any open pages know that there's new data to display, and refresh recommendations in the background
+            // so they're ready by the time the page asks for them
+            workspace.publishEvent(SessionEventService.EVENT_VITALS_CHANGED);
+            workspace.runRecommendations();
+        }
     }
 
     public List<OmronVitals> readFromPersistentCache(String sessionId) {
@@ -438,7 +496,7 @@ public class OmronService extends AbstractService {
         headers.put("Authorization", "Bearer " + tokenData.getBearerToken());
         headers.put("Content-Type", "application/x-www-form-urlencoded");
 
-        HttpResponse httpResponse = new HttpRequest().post(omronUrl + "/api/measurement", null, headers, bodyParams);
+        HttpResponse httpResponse = outboundCallGuard.request(Dependency.OMRON).post(omronUrl + "/api/measurement", null, headers, bodyParams);
         int code = httpResponse.getResponseCode();
         String body = httpResponse.getResponseBody();
 
@@ -457,16 +515,47 @@ public class OmronService extends AbstractService {
         }
     }
 
-    private MyOmronVitals writeToPersistentCache(Long internalPatientId, OmronBloodPressureModel model) {
-        if ( ! repository.existsByOmronId(model.getId()) ) {
-            logger.info("caching Omron vitals with id=" + model.getId() + " for patient with id=" + internalPatientId);
-            MyOmronVitals vitals = new MyOmronVitals(model);
-            vitals.setPatId(internalPatientId);
-            vitals.setCreatedDate(new Date());
-            return repository.save(vitals);
-        } else {
-            logger.debug("not caching Omron vitals with id=" + model.getId() + " - already exists!");
-            return null;
+    private void uncache(Collection<MyOmronVitals> vitalsList) {
+        List<Long> idList = new ArrayList<>();
+        for (MyOmronVitals vitals : vitalsList) {
+            idList.add(vitals.getId());
+        }
+
+        try {
+            logger.info("removing " + idList.size() + " Omron vitals from cache so they're synchronized again");
+            repository.deleteAllById(idList);
+
+        } catch (Exception e) {
+            logger.error("caught " + e.getClass().getName() + " removing Omron vitals with ids=" + idList +
+                    " from cache - " + e.getMessage(), e);
+        }
+    }
+
+    private List<MyOmronVitals> writeToPersistentCache(Long internalPatientId, List<OmronBloodPressureModel> models) {
+        Set<Long> existingIds = new HashSet<>();
+        List<Long> idList = new ArrayList<>();
+        for (OmronBloodPressureModel model : models) {
+            idList.add(model.getId());
+        }
+        for (int i = 0; i < idList.size(); i += QUERY_CHUNK_SIZE) {
+            existingIds.addAll(repository.findExistingOmronIds(idList.subList(i, Math.min(i + QUERY_CHUNK_SIZE, idList.size()))));
         }
+
+        List<MyOmronVitals> list = new ArrayList<>();
+        Date now = new Date();
+        for (OmronBloodPressureModel model : models) {
+            if (existingIds.add(model.getId())) {
+                logger.info("caching Omron vitals with id=" + model.getId() + " for patient with id=" + internalPatientId);
+                MyOmronVitals vitals = new MyOmronVitals(model);
+                vitals.setPatId(internalPatientId);
+                vitals.setCreatedDate(now);
+                list.add(vitals);
+
+            } else {
+                logger.debug("not caching Omron vitals with id=" + model.getId() + " - already exists!");
+            }
+        }
+
+        return repository.saveAll(list);
     }
 }
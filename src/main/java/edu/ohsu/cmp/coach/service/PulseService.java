@@ -105,6 +105,86 @@ public class PulseService extends AbstractService {
     }
 
     public PulseModel create(String sessionId, PulseModel pm) throws DataException, ConfigurationException, IOException, ScopeException {
+        PulseModel pm2 = writeBack(sessionId, pm);
+
+        try {
+            HomePulseReading hpr = new HomePulseReading(pm);
+            HomePulseReading response = hprService.create(sessionId, hpr);
+
+            if (pm2 == null) { // give priority to the remotely created resource, if it exists
+                pm2 = new PulseModel(response, fcm);
+            }
+
+            auditService.doAudit(sessionId, AuditSeverity.INFO, "created pulse", "id=" + response.getId() +
+                    ", pulse=" + pm.getPulse() + " at " + pm.getReadingDateString());
+
+        } catch (DataException de) {
+            // okay if it's failing to write locally, that's a problem.
+            logger.error("caught " + de.getClass().getName() + " attempting to create PulseModel " + pm, de);
+
+            auditService.doAudit(sessionId, AuditSeverity.ERROR, "failed to create pulse", "pulse=" +
+                    pm.getPulse() + " at " + pm.getReadingDateString() + ", message=" + de.getMessage());
+        }
+
+        return pm2;
+    }
+
+    /**
+     * create several pulses at once, e.g. when synchronizing from Omron.  each is written back to the EHR as with
+     * create(), but they're stored locally and audited in single batches
+     * @param onItemWritten if not null, called after each item has been written back to the EHR (if configured to do
+     *                      so), which is the slow part of this operation
+     * @return the pulses that couldn't be stored locally, which the caller may want to try again
+     */
+    public List<PulseModel> createAll(String sessionId, List<PulseModel> list, Runnable onItemWritten) {
+        List<PulseModel> pendingList = new ArrayList<>();
+        List<HomePulseReading> itemList = new ArrayList<>();
+
+        for (PulseModel pm : list) {
+            writeBack(sessionId, pm);
+            if (onItemWritten != null) {
+                onItemWritten.run();
+            }
+            try {
+                itemList.add(new HomePulseReading(pm));
+                pendingList.add(pm);
+
+            } catch (DataException de) {
+                logger.error("caught " + de.getClass().getName() + " attempting to create PulseModel " + pm, de);
+
+                auditService.doAudit(sessionId, AuditSeverity.ERROR, "failed to create pulse", "pulse=" +
+                        pm.getPulse() + " at " + pm.getReadingDateString() + ", message=" + de.getMessage());
+            }
+        }
+
+        List<PulseModel> failedList = new ArrayList<>();
+        List<String> details = new ArrayList<>();
+        List<HomePulseReading> responseList = hprService.createAll(sessionId, itemList);
+        for (int i = 0; i < responseList.size(); i ++) {
+            HomePulseReading response = responseList.get(i);
+            PulseModel pm = pendingList.get(i);
+
+            if (response == null) {
+                failedList.add(pm);
+                auditService.doAudit(sessionId, AuditSeverity.ERROR, "failed to create pulse", "pulse=" +
+                        pm.getPulse() + " at " + pm.getReadingDateString());
+                continue;
+            }
+
+            details.add("id=" + response.getId() + ", pulse=" + pm.getPulse() + " at " + pm.getReadingDateString());
+        }
+        auditService.doAudits(sessionId, AuditSeverity.INFO, "created pulse", details);
+
+        return failedList;
+    }
+
+
+///////////////////////////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    // write the reading back to the EHR if so configured, returning the remotely-created reading if one was created
+    private PulseModel writeBack(String sessionId, PulseModel pm) {
         UserWorkspace workspace = userWorkspaceService.get(sessionId);
 
         PulseModel pm2 = null;
@@ -137,38 +217,16 @@ public class PulseService extends AbstractService {
             }
         }
 
-        try {
-            HomePulseReading hpr = new HomePulseReading(pm);
-            HomePulseReading response = hprService.create(sessionId, hpr);
-
-            if (pm2 == null) { // give priority to the remotely created resource, if it exists
-                pm2 = new PulseModel(response, fcm);
-            }
-
-            auditService.doAudit(sessionId, AuditSeverity.INFO, "created pulse", "id=" + response.getId() +
-                    ", pulse=" + pm.getPulse() + " at " + pm.getReadingDateString());
-
-        } catch (DataException de) {
-            // okay if it's failing to write locally, that's a problem.
-            logger.error("caught " + de.getClass().getName() + " attempting to create PulseModel " + pm, de);
-
-            auditService.doAudit(sessionId, AuditSeverity.ERROR, "failed to create pulse", "pulse=" +
-                    pm.getPulse() + " at " + pm.getReadingDateString() + ", message=" + de.getMessage());
-        }
-
         return pm2;
     }
 
-
-///////////////////////////////////////////////////////////////////////////////////////
-// private methods
-//
-
     private List<PulseModel> buildLocalPulseReadings(String sessionId) throws DataException {
         List<PulseModel> list = new ArrayList<>();
 
-        // add manually-entered pulses
-        List<HomePulseReading> hbprList = hprService.getHomePulseReadings(sessionId);
+        // add manually-entered pulses.  these are bounded by the same lookback period as remote pulses, and since
+        // every local pulse is a home reading, no more than the limit of them can make it into any limited list
+        List<HomePulseReading> hbprList = hprService.getHomePulseReadings(sessionId,
+                FhirUtil.toLookbackStartDate(fcm.getPulseLookbackPeriod()), fcm.getBpLimit());
         for (HomePulseReading item : hbprList) {
             list.add(new PulseModel(item, fcm));
         }
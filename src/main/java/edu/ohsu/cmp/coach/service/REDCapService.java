@@ -1,24 +1,34 @@
 package edu.ohsu.cmp.coach.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import edu.ohsu.cmp.coach.config.RedcapConfiguration;
 import edu.ohsu.cmp.coach.exception.REDCapException;
-import edu.ohsu.cmp.coach.http.HttpRequest;
+import edu.ohsu.cmp.coach.http.Dependency;
 import edu.ohsu.cmp.coach.http.HttpResponse;
+import edu.ohsu.cmp.coach.http.OutboundCallGuard;
 import edu.ohsu.cmp.coach.model.RedcapDataAccessGroup;
 import edu.ohsu.cmp.coach.model.redcap.RedcapParticipantInfo;
+import edu.ohsu.cmp.coach.repository.PatientRepository;
+import jakarta.annotation.PostConstruct;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
 import java.io.IOException;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class REDCapService {
@@ -55,6 +65,9 @@ public class REDCapService {
     public static final String PARTICIPANT_DISPOSITION_WITHDRAW_FIELD = "withdraw";
     public static final String PARTICIPANT_COMPLETED_PER_PROTOCOL_FIELD = "per_protocol";
 
+    @Autowired
+    private OutboundCallGuard outboundCallGuard;
+
     @Autowired
     RedcapConfiguration redcapConfiguration;
 
@@ -64,6 +77,47 @@ public class REDCapService {
     @Value("${redcap.data-access-group}")
     private String redcapDataAccessGroupStr;
 
+    @Value("${redcap.cache.participant-info-ttl-ms}")
+    private Long participantInfoTTL;
+
+    @Value("${redcap.cache.ae-survey-link-idle-ms}")
+    private Long aeSurveyLinkIdle;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private MetricsService metricsService;
+
+    // REDCap record IDs never change once assigned, so are kept indefinitely (and persisted; see getRecordId)
+    private Cache<String, String> recordIdCache;
+    private Cache<String, RedcapParticipantInfo> participantInfoCache;
+    private LoadingCache<String, String> aeSurveyLinkCache;
+
+    @PostConstruct
+    public void init() {
+        recordIdCache = Caffeine.newBuilder()
+                .maximumSize(10000)
+                .recordStats(() -> metricsService.getStatsCounter("redcapRecordId"))
+                .build();
+
+        participantInfoCache = Caffeine.newBuilder()
+                .expireAfterWrite(participantInfoTTL, TimeUnit.MILLISECONDS)
+                .recordStats(() -> metricsService.getStatsCounter("redcapParticipantInfo"))
+                .build();
+
+        // links are kept up to date by refreshAESurveyLinks(), for as long as they're being used
+        aeSurveyLinkCache = Caffeine.newBuilder()
+                .expireAfterAccess(aeSurveyLinkIdle, TimeUnit.MILLISECONDS)
+                .recordStats(() -> metricsService.getStatsCounter("redcapAESurveyLink"))
+                .build(new CacheLoader<String, String>() {
+                    @Override
+                    public String load(String coachId) throws Exception {
+                        return buildAESurveyLink(coachId);
+                    }
+                });
+    }
+
     /**
      * Return whether the REDCap flow is enabled for this application
      * @return
@@ -73,7 +127,8 @@ public class REDCapService {
     }
 
     /**
-     * Using the coach uuid, get the record id in REDCap
+     * Using the coach uuid, get the record id in REDCap.  Looking this up in REDCap means scanning the whole project,
+     * so once found, it's remembered in memory and in the patient table
      * @param coachId
      * @return
      * @throws IOException
@@ -81,6 +136,27 @@ public class REDCapService {
      */
     private String getRecordId(String coachId) throws IOException, REDCapException {
         Assert.notNull(coachId, "A COACH Id must be provided to get the REDCap record.");
+
+        String recordId = recordIdCache.getIfPresent(coachId);
+        if (recordId == null) {
+            recordId = patientRepository.findRedcapRecordIdByRedcapId(coachId);
+
+            if (recordId == null) {
+                recordId = findRecordId(coachId);
+                if (recordId != null) {
+                    patientRepository.setRedcapRecordId(coachId, recordId);
+                }
+            }
+
+            // participants not yet in REDCap aren't remembered, as they may be added at any time
+            if (recordId != null) {
+                recordIdCache.put(coachId, recordId);
+            }
+        }
+        return recordId;
+    }
+
+    private String findRecordId(String coachId) throws IOException, REDCapException {
         Map<String, String> requestHeaders = new LinkedHashMap<>();
         requestHeaders.put("Content-Type", "application/x-www-form-urlencoded");
 
@@ -94,7 +170,7 @@ public class REDCapService {
         bodyParams.put("fields", PARTICIPANT_RECORD_ID_FIELD);
         bodyParams.put("filterLogic", "[coach_id]='" + coachId + "'");
 
-        HttpResponse response = new HttpRequest().post(
+        HttpResponse response = outboundCallGuard.request(Dependency.REDCAP).post(
             redcapConfiguration.getApiUrl(),
             null,
             requestHeaders,
@@ -121,7 +197,23 @@ public class REDCapService {
      * @throws REDCapException
      */
     public RedcapParticipantInfo getParticipantInfo(String coachId) throws IOException, REDCapException {
+        RedcapParticipantInfo info = participantInfoCache.getIfPresent(coachId);
+        if (info == null) {
+            info = buildParticipantInfo(coachId);
+            participantInfoCache.put(coachId, info);
+        }
+        return info;
+    }
+
+    /**
+     * Discard any cached summary of the participant's status, e.g. because it's about to be changed in REDCap
+     * @param coachId The uuid COACH generates and stores to map to REDCap
+     */
+    public void invalidateParticipantInfo(String coachId) {
+        participantInfoCache.invalidate(coachId);
+    }
 
+    private RedcapParticipantInfo buildParticipantInfo(String coachId) throws IOException, REDCapException {
         RedcapDataAccessGroup dag = RedcapDataAccessGroup.fromTag(redcapDataAccessGroupStr);
         
         String recordId = getRecordId(coachId);
@@ -144,7 +236,7 @@ public class REDCapService {
         bodyParams.put("forms", PARTICIPANT_INFO_FORM + "," + PARTICIPANT_INFORMATION_SHEET_FORM + "," + PARTICIPANT_CONSENT_FORM + "," + PARTICIPANT_RANDOMIZATION_FORM + "," + PARTICIPANT_DISPOSITION_FORM);
         bodyParams.put("records", recordId);
 
-        HttpResponse response = new HttpRequest().post(
+        HttpResponse response = outboundCallGuard.request(Dependency.REDCAP).post(
                 redcapConfiguration.getApiUrl(),
                 null,
                 requestHeaders,
@@ -207,7 +299,7 @@ public class REDCapService {
         bodyParams.put("forceAutoNumber", "true");
         bodyParams.put("data", data);
 
-        HttpResponse response = new HttpRequest().post(
+        HttpResponse response = outboundCallGuard.request(Dependency.REDCAP).post(
                 redcapConfiguration.getApiUrl(),
                 null,
                 requestHeaders,
@@ -215,6 +307,7 @@ public class REDCapService {
         );
 
         checkException(response);
+        invalidateParticipantInfo(coachId);
         return getRecordId(coachId);
     }
 
@@ -236,7 +329,7 @@ public class REDCapService {
         bodyParams.put("event", PARTICIPANT_BASELINE_EVENT);
         bodyParams.put("instrument", PARTICIPANT_INFORMATION_SHEET_FORM);
 
-        HttpResponse response = new HttpRequest().post(
+        HttpResponse response = outboundCallGuard.request(Dependency.REDCAP).post(
                 redcapConfiguration.getApiUrl(),
                 null,
                 requestHeaders,
@@ -263,7 +356,7 @@ public class REDCapService {
         bodyParams.put("content", "surveyQueueLink");
         bodyParams.put("record", recordId);
 
-        HttpResponse response = new HttpRequest().post(
+        HttpResponse response = outboundCallGuard.request(Dependency.REDCAP).post(
                 redcapConfiguration.getApiUrl(),
                 null,
                 requestHeaders,
@@ -275,13 +368,50 @@ public class REDCapService {
     }
 
     /**
-     * Get the url for the next AE report for the participant
+     * Get the url for the next AE report for the participant.  This is cached, and refreshed in the background, so
+     * that it needn't be looked up every time the home page is displayed
      * @param coachId
      * @return
      * @throws REDCapException
      * @throws IOException
      */
     public String getAESurveyLink(String coachId) throws REDCapException, IOException {
+        try {
+            return aeSurveyLinkCache.get(coachId);
+
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof REDCapException) {
+                throw (REDCapException) e.getCause();
+            } else if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Look up the url for the next AE report for the participant afresh, bypassing (and updating) the cache.  Use this
+     * when the participant is about to follow the link, as they may have submitted a report since it was cached
+     */
+    public String refreshAESurveyLink(String coachId) throws REDCapException, IOException {
+        String link = buildAESurveyLink(coachId);
+        aeSurveyLinkCache.put(coachId, link);
+        return link;
+    }
+
+    /**
+     * The next AE report moves on each time the participant submits one, so links are periodically refreshed.  Links
+     * continue to be served while they're being refreshed
+     */
+    @Scheduled(fixedDelayString = "${redcap.cache.ae-survey-link-refresh-ms}")
+    public void refreshAESurveyLinks() {
+        for (String coachId : aeSurveyLinkCache.asMap().keySet()) {
+            aeSurveyLinkCache.refresh(coachId);
+        }
+    }
+
+    private String buildAESurveyLink(String coachId) throws REDCapException, IOException {
         // First get the recordId from the REDCap id
         String recordId = getRecordId(coachId);
         Assert.notNull(recordId, "No REDCap record exists for COACH id " + coachId);
@@ -299,7 +429,7 @@ public class REDCapService {
         bodyParams.put("events", PARTICIPANT_ONGOING_EVENT);
         bodyParams.put("records", recordId);
 
-        HttpResponse response = new HttpRequest().post(
+        HttpResponse response = outboundCallGuard.request(Dependency.REDCAP).post(
                 redcapConfiguration.getApiUrl(),
                 null,
                 requestHeaders,
@@ -331,7 +461,7 @@ public class REDCapService {
         bodyParams.put("instrument", ADVERSE_EVENT_FORM);
         bodyParams.put("repeat_instance", String.valueOf(i));
 
-        HttpResponse response = new HttpRequest().post(
+        HttpResponse response = outboundCallGuard.request(Dependency.REDCAP).post(
                 redcapConfiguration.getApiUrl(),
                 null,
                 requestHeaders,
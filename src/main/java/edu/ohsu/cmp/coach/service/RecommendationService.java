@@ -1,5 +1,7 @@
 package edu.ohsu.cmp.coach.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.mustachejava.DefaultMustacheFactory;
 import com.github.mustachejava.Mustache;
 import com.github.mustachejava.MustacheFactory;
@@ -11,11 +13,13 @@ import edu.ohsu.cmp.coach.entity.MyGoal;
 import edu.ohsu.cmp.coach.model.redcap.RandomizationGroup;
 import edu.ohsu.cmp.coach.exception.DataException;
 import edu.ohsu.cmp.coach.fhir.CompositeBundle;
+import edu.ohsu.cmp.coach.fhir.PrefetchBundleBuilder;
 import edu.ohsu.cmp.coach.fhir.transform.BaseVendorTransformer;
 import edu.ohsu.cmp.coach.fhir.transform.DefaultVendorTransformer;
 import edu.ohsu.cmp.coach.fhir.transform.VendorTransformer;
-import edu.ohsu.cmp.coach.http.HttpRequest;
+import edu.ohsu.cmp.coach.http.Dependency;
 import edu.ohsu.cmp.coach.http.HttpResponse;
+import edu.ohsu.cmp.coach.http.OutboundCallGuard;
 import edu.ohsu.cmp.coach.model.*;
 import edu.ohsu.cmp.coach.model.cqfruler.CDSCard;
 import edu.ohsu.cmp.coach.model.cqfruler.CDSHook;
@@ -29,6 +33,8 @@ import edu.ohsu.cmp.coach.model.recommendation.Suggestion;
 import edu.ohsu.cmp.coach.util.CDSHooksUtil;
 import edu.ohsu.cmp.coach.util.MustacheUtil;
 import edu.ohsu.cmp.coach.workspace.UserWorkspace;
+import jakarta.annotation.PostConstruct;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.hl7.fhir.r4.model.*;
 import org.hl7.fhir.r4.model.codesystems.ConditionCategory;
 import org.hl7.fhir.r4.model.codesystems.ConditionClinical;
@@ -41,7 +47,12 @@ import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Service
 public class RecommendationService extends AbstractService {
@@ -52,6 +63,10 @@ public class RecommendationService extends AbstractService {
 
     private static final String GENERIC_ERROR_MESSAGE = "ERROR: An error was encountered processing this recommendation.  See server logs for details.";
     private static final String COACH_SYSTEM = "https://coach.ohsu.edu";
+    private static final Pattern PATTERN_UUID = Pattern.compile("[a-fA-F0-9]{8}-[a-fA-F0-9]{4}-[a-fA-F0-9]{4}-[a-fA-F0-9]{4}-[a-fA-F0-9]{12}");
+
+    @Autowired
+    private OutboundCallGuard outboundCallGuard;
 
     @Value("${cqfruler.cdshooks.endpoint.url}")
     private String cdsHooksEndpointURL;
@@ -63,6 +78,8 @@ public class RecommendationService extends AbstractService {
 
     private List<String> basicGroupAllowFilter;
 
+    private Map<String, Set<String>> prefetchKeepElements;
+
     @Autowired
     private BloodPressureService bpService;
 
@@ -78,6 +95,19 @@ public class RecommendationService extends AbstractService {
     @Autowired
     private AdverseEventService adverseEventService;
 
+    @Autowired
+    private MetricsService metricsService;
+
+    @Value("${cqfruler.response-cache.max-size}")
+    private Long responseCacheMaxSize;
+
+    @Value("${cqfruler.response-cache.ttl-ms}")
+    private Long responseCacheTTL;
+
+    // CQF-Ruler responses, keyed by a hash of everything that went into them (see buildResponseCacheKey).  these are
+    // shared by all sessions, as identical requests can only have come from the same patient
+    private Cache<String, String> responseCache;
+
     @Value("${contact.clinic}")
     private String clinicContact;
 
@@ -85,14 +115,33 @@ public class RecommendationService extends AbstractService {
     private String clinicAfterHours;
 
     public RecommendationService(@Value("${cqfruler.cdshooks.order.csv}") String cdsHookOrderStr,
-                                 @Value("${cqfruler.cdshooks.basic-group.allow-filter.csv}") String basicGroupAllowFilterStr) {
+                                 @Value("${cqfruler.cdshooks.basic-group.allow-filter.csv}") String basicGroupAllowFilterStr,
+                                 @Value("${cqfruler.prefetch.keep-elements.csv}") String prefetchKeepElementsStr) {
         this.cdsHookOrder = Arrays.asList(cdsHookOrderStr.split("\\s*,\\s*"));
         this.basicGroupAllowFilter = Arrays.asList(basicGroupAllowFilterStr.split("\\s*,\\s*"));
+
+        // each item is of the form {resourceType}.{element}, e.g. Observation.code
+        this.prefetchKeepElements = new HashMap<>();
+        for (String item : prefetchKeepElementsStr.split("\\s*,\\s*")) {
+            String[] parts = item.trim().split("\\.", 2);
+            if (parts.length == 2) {
+                prefetchKeepElements.computeIfAbsent(parts[0], k -> new LinkedHashSet<>()).add(parts[1]);
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        responseCache = Caffeine.newBuilder()
+                .maximumSize(responseCacheMaxSize)
+                .expireAfterWrite(responseCacheTTL, TimeUnit.MILLISECONDS)
+                .recordStats(() -> metricsService.getStatsCounter("cqfrulerResponse"))
+                .build();
     }
 
     public List<CDSHook> getOrderedCDSHooks(String sessionId) throws IOException {
         Map<String, CDSHook> map = new LinkedHashMap<>();
-        for (CDSHook cdsHook : CDSHooksUtil.getCDSHooks(TESTING, cdsHooksEndpointURL)) {
+        for (CDSHook cdsHook : CDSHooksUtil.getCDSHooks(TESTING, outboundCallGuard.request(Dependency.CQF_RULER), cdsHooksEndpointURL)) {
             map.put(cdsHook.getId(), cdsHook);
         }
 
@@ -135,19 +184,15 @@ public class RecommendationService extends AbstractService {
         boolean prefetchModified = false;
 
         try {
-            CompositeBundle compositeBundle = new CompositeBundle();
-            Patient p = workspace.getPatient().getSourcePatient();
-            compositeBundle.consume(p);
-            compositeBundle.consume(buildBPBundle(sessionId, transformer));
-//            compositeBundle.consume(buildPulseBundle(sessionId, transformer));      // do we care about pulses in recommendations?
-            compositeBundle.consume(buildLocalCounselingBundle(sessionId, p.getId()));
-            compositeBundle.consume(buildGoalsBundle(sessionId, transformer));
-            compositeBundle.consume(buildAdverseEventsBundle(sessionId, p.getId()));
-            compositeBundle.consume(buildConditionsBundle(sessionId, p.getId()));
-            compositeBundle.consume(buildMedicationsBundle(sessionId));
-            compositeBundle.consume(workspace.getOtherSupplementalResources());
-
-            HookRequest hookRequest = new HookRequest(fcc.getCredentials(), compositeBundle.getBundle());
+            // every hook is sent the same prefetch, and they're all requested at once, so build it once for all of them
+            String prefetchKey = "CardsPrefetch-" +
+                    workspace.getVersionTag(UserWorkspace.VERSION_BP) + "-" +
+                    workspace.getVersionTag(UserWorkspace.VERSION_ADVERSE_EVENT) + "-" +
+                    workspace.getVersionTag(UserWorkspace.VERSION_OTHER_GOALS) + "-" +
+                    workspace.getVersionTag(UserWorkspace.VERSION_MEDICATION);
+            Bundle prefetch = workspace.singleFlight(prefetchKey, () -> buildPrefetchBundle(sessionId, transformer));
+
+            HookRequest hookRequest = new HookRequest(fcc.getCredentials(), prefetch);
 
             prefetchModified = hookRequest.isPrefetchModified();
 
@@ -177,9 +222,33 @@ public class RecommendationService extends AbstractService {
 //                }
 
             } else {
-                HttpResponse httpResponse = new HttpRequest().post(cdsHooksEndpointURL + "/" + hookId, null, headers, writer.toString());
-                code = httpResponse.getResponseCode();
-                body = httpResponse.getResponseBody();
+                // recommendations are regenerated whenever anything that might affect them changes, but often the
+                // request turns out to be identical to one CQF-Ruler has already evaluated (e.g. a sync that found
+                // nothing new, or a patient launching a new session), and evaluation is expensive
+                String responseCacheKey = buildResponseCacheKey(hookId, hookRequest);
+                String cachedBody = responseCache.getIfPresent(responseCacheKey);
+                if (cachedBody != null) {
+                    logger.debug("using cached response for hookId=" + hookId + " (key=" + responseCacheKey + ")");
+                    code = 200;
+                    body = cachedBody;
+
+                } else {
+                    MetricsService.Sample sample = metricsService.startSample(sessionId);
+                    boolean success = false;
+                    try {
+                        HttpResponse httpResponse = outboundCallGuard.request(Dependency.CQF_RULER).post(cdsHooksEndpointURL + "/" + hookId, null, headers, writer.toString());
+                        code = httpResponse.getResponseCode();
+                        body = httpResponse.getResponseBody();
+                        success = code >= 200 && code <= 299;
+
+                    } finally {
+                        metricsService.recordHookRequest(sample, hookId, success);
+                    }
+
+                    if (success) {
+                        responseCache.put(responseCacheKey, body);
+                    }
+                }
             }
 
             logger.debug("got response code=" + code + ", body=" + body);
@@ -267,6 +336,50 @@ public class RecommendationService extends AbstractService {
         return cards;
     }
 
+    /**
+     * CQF-Ruler's response to a hook depends only on the hook, the prefetch, the patient and FHIR server it may query
+     * for anything missing from the prefetch, and the current date.  resources created for the prefetch are given
+     * random temporary IDs each time it's built, so these are replaced with ones numbered in order of appearance,
+     * which leaves identical content with identical keys.  the hook instance and bearer token vary with every request
+     * but don't affect the response, so they're excluded
+     */
+    String buildResponseCacheKey(String hookId, HookRequest hookRequest) {
+        StringBuilder sb = new StringBuilder();
+        if (hookRequest.getPrefetch() != null) {
+            Map<String, String> uuidMap = new HashMap<>();
+            Matcher m = PATTERN_UUID.matcher(hookRequest.getPrefetch());
+            while (m.find()) {
+                String uuid = uuidMap.computeIfAbsent(m.group().toLowerCase(), k -> "temp-" + (uuidMap.size() + 1));
+                m.appendReplacement(sb, uuid);
+            }
+            m.appendTail(sb);
+        }
+
+        return DigestUtils.sha256Hex(hookId + "|" +
+                LocalDate.now() + "|" +
+                hookRequest.getFhirServerURL() + "|" +
+                hookRequest.getPatientId() + "|" +
+                sb);
+    }
+
+    Bundle buildPrefetchBundle(String sessionId, VendorTransformer transformer) throws DataException {
+        UserWorkspace workspace = userWorkspaceService.get(sessionId);
+
+        PrefetchBundleBuilder builder = new PrefetchBundleBuilder(prefetchKeepElements);
+        Patient p = workspace.getPatient().getSourcePatient();
+        builder.consume(p);
+        builder.consume(buildBPBundle(sessionId, transformer));
+//        builder.consume(buildPulseBundle(sessionId, transformer));      // do we care about pulses in recommendations?
+        builder.consume(buildLocalCounselingBundle(sessionId, p.getId()));
+        builder.consume(buildGoalsBundle(sessionId, transformer));
+        builder.consume(buildAdverseEventsBundle(sessionId, p.getId()));
+        builder.consume(buildConditionsBundle(sessionId, p.getId()));
+        builder.consume(buildMedicationsBundle(sessionId));
+        builder.consume(workspace.getOtherSupplementalResources());
+
+        return builder.getBundle();
+    }
+
     private Bundle buildConditionsBundle(String sessionId, String patientId) {
         UserWorkspace workspace = userWorkspaceService.get(sessionId);
 
@@ -362,7 +475,7 @@ public class RecommendationService extends AbstractService {
                 .setDisplay("***FAKE*** Counseling Procedure generated by COACH to prevent CQF-Ruler from querying the FHIR server")
         );
 
-        p.getPerformedDateTimeType().setValue(new Date());
+        p.getPerformedDateTimeType().setValue(startOfToday());
 
         return p;
     }
@@ -470,7 +583,7 @@ public class RecommendationService extends AbstractService {
                 .setSystem(COACH_SYSTEM)
                 .setDisplay("***FAKE*** Adverse Event generated by COACH to prevent CQF-Ruler from querying the FHIR server")
         );
-        ae.setDate(new Date());
+        ae.setDate(startOfToday());
         return ae;
     }
 
@@ -496,6 +609,12 @@ public class RecommendationService extends AbstractService {
         return bundle.getBundle();
     }
 
+    // placeholders are dated the start of the day rather than now.  otherwise every build of the prefetch would
+    // differ, and no response could ever be reused for a patient who has any of them (see buildResponseCacheKey)
+    private Date startOfToday() {
+        return Date.from(LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
     private MedicationRequest buildFakeMedicationRequest(String patientId) {
         MedicationRequest mr = new MedicationRequest();
 
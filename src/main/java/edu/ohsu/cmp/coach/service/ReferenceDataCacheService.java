@@ -0,0 +1,51 @@
+package edu.ohsu.cmp.coach.service;
+
+import edu.ohsu.cmp.coach.entity.*;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Evicts reference data (counseling pages, medication forms and routes, adverse event definitions, and VSAC value
+ * sets and concepts) from Hibernate's second-level and query caches.  These tables only change on deployment or when
+ * value sets are refreshed, so they're cached indefinitely, and must be evicted explicitly whenever they do change.
+ * Each node has its own cache, so eviction only affects the node on which it's performed.
+ */
+@Service
+public class ReferenceDataCacheService {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    public void evictValueSets() {
+        logger.info("evicting cached ValueSets and Concepts");
+        Cache cache = getCache();
+        cache.evictEntityData(ValueSet.class);
+        cache.evictCollectionData(ValueSet.class.getName() + ".concepts");
+        cache.evictEntityData(Concept.class);
+        cache.evictDefaultQueryRegion();
+    }
+
+    public void evictAll() {
+        logger.info("evicting all cached reference data");
+        Cache cache = getCache();
+        cache.evictEntityData(CounselingPage.class);
+        cache.evictEntityData(MedicationForm.class);
+        cache.evictEntityData(MedicationRoute.class);
+        cache.evictEntityData(MyAdverseEvent.class);
+        evictValueSets();
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    private Cache getCache() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getCache();
+    }
+}
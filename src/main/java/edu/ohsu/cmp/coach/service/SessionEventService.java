@@ -0,0 +1,90 @@
+package edu.ohsu.cmp.coach.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Manages per-session Server-Sent Events channels, used to push state changes (Omron synchronization progress,
+ * changed vitals, refreshed recommendations) to the browser, rather than having the browser poll for them.
+ */
+@Service
+public class SessionEventService {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public static final String EVENT_OMRON_STATUS = "omron-status";
+    public static final String EVENT_VITALS_CHANGED = "vitals-changed";
+    public static final String EVENT_RECOMMENDATIONS_UPDATED = "recommendations-updated";
+
+    private static final long EMITTER_TIMEOUT_MS = 1000 * 60 * 30;     // 30 minutes; browsers reconnect automatically
+
+    private final Map<String, List<SseEmitter>> map = new ConcurrentHashMap<>();
+
+    public SseEmitter subscribe(String sessionId) {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+
+        List<SseEmitter> list = map.compute(sessionId, (k, v) -> {
+            List<SseEmitter> l = v != null ? v : new CopyOnWriteArrayList<>();
+            l.add(emitter);
+            return l;
+        });
+
+        emitter.onCompletion(() -> remove(sessionId, emitter));
+        emitter.onTimeout(() -> remove(sessionId, emitter));
+        emitter.onError(e -> remove(sessionId, emitter));
+
+        logger.debug("subscribed to events for session=" + sessionId + " (subscribers=" + list.size() + ")");
+
+        return emitter;
+    }
+
+    public void publish(String sessionId, String eventName) {
+        publish(sessionId, eventName, "");
+    }
+
+    public void publish(String sessionId, String eventName, Object data) {
+        List<SseEmitter> list = map.get(sessionId);
+        if (list == null || list.isEmpty()) return;
+
+        logger.debug("publishing event '" + eventName + "' to " + list.size() + " subscriber(s) for session=" + sessionId);
+
+        for (SseEmitter emitter : list) {
+            try {
+                emitter.send(SseEmitter.event().name(eventName).data(data));
+
+            } catch (IOException | IllegalStateException e) {
+                // the client went away; it'll reconnect if it's still interested
+                logger.debug("caught " + e.getClass().getName() + " publishing event '" + eventName +
+                        "' for session=" + sessionId + " - " + e.getMessage());
+                remove(sessionId, emitter);
+            }
+        }
+    }
+
+    public void completeAll(String sessionId) {
+        List<SseEmitter> list = map.remove(sessionId);
+        if (list != null) {
+            for (SseEmitter emitter : list) {
+                emitter.complete();
+            }
+        }
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    private void remove(String sessionId, SseEmitter emitter) {
+        map.computeIfPresent(sessionId, (k, list) -> {
+            list.remove(emitter);
+            return list.isEmpty() ? null : list;
+        });
+    }
+}
@@ -4,14 +4,16 @@ import edu.ohsu.cmp.coach.entity.Concept;
 import edu.ohsu.cmp.coach.entity.ValueSet;
 import edu.ohsu.cmp.coach.exception.DataException;
 import edu.ohsu.cmp.coach.exception.MyHttpException;
-import edu.ohsu.cmp.coach.http.HttpRequest;
+import edu.ohsu.cmp.coach.http.Dependency;
 import edu.ohsu.cmp.coach.http.HttpResponse;
+import edu.ohsu.cmp.coach.http.OutboundCallGuard;
 import edu.ohsu.cmp.coach.model.xml.SimpleXMLDOM;
 import edu.ohsu.cmp.coach.model.xml.SimpleXMLElement;
 import edu.ohsu.cmp.coach.util.UUIDUtil;
 import org.apache.http.HttpException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.xml.sax.SAXException;
@@ -44,6 +46,9 @@ public class VSACService {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    @Autowired
+    private OutboundCallGuard outboundCallGuard;
+
     @Value("${vsac.api-key}")
     private String apiKey;
 
@@ -137,7 +142,7 @@ public class VSACService {
         Map<String, String> requestHeaders = new LinkedHashMap<>();
         requestHeaders.put("Content-Type", "text/xml");
 
-        HttpResponse response = new HttpRequest().get(url, urlParams, requestHeaders);
+        HttpResponse response = outboundCallGuard.request(Dependency.VSAC).get(url, urlParams, requestHeaders);
         if (response.getResponseCode() == HttpURLConnection.HTTP_OK) {
             return response.getResponseBody();
 
@@ -180,7 +185,7 @@ public class VSACService {
         Map<String, String> bodyParams = new LinkedHashMap<>();
         bodyParams.put("service", "http://umlsks.nlm.nih.gov");
 
-        return new HttpRequest().post(serviceTicketURI, null, requestHeaders, bodyParams);
+        return outboundCallGuard.request(Dependency.VSAC).post(serviceTicketURI, null, requestHeaders, bodyParams);
     }
 
     /**
@@ -196,7 +201,7 @@ public class VSACService {
         Map<String, String> bodyParams = new LinkedHashMap<>();
         bodyParams.put("apikey", apiKey);
 
-        HttpResponse response = new HttpRequest().post(API_KEY_URL, null, requestHeaders, bodyParams);
+        HttpResponse response = outboundCallGuard.request(Dependency.VSAC).post(API_KEY_URL, null, requestHeaders, bodyParams);
 
         if (response.getResponseCode() >= 200 && response.getResponseCode() < 300) { // some HTTP 2xx code, successful
             Matcher m = SERVICE_TICKET_URI_PATTERN.matcher(response.getResponseBody());
@@ -8,6 +8,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.*;
 
@@ -25,6 +27,9 @@ public class ValueSetService extends AbstractService {
     @Autowired
     private ValueSetRepository repository;
 
+    @Autowired
+    private ReferenceDataCacheService referenceDataCacheService;
+
     public ValueSet getValueSet(String oid) {
         return repository.findOneByOid(oid);
     }
@@ -35,10 +40,12 @@ public class ValueSetService extends AbstractService {
             ValueSet fresh = vsacService.getValueSet(oid);
             if (fresh == null) return;
 
-            // update incoming ValueSet concepts to reference existing persistence records if they exist
+            // update incoming ValueSet concepts to reference existing persistence records if they exist.  these are
+            // looked up together, rather than one at a time, as value sets can contain thousands of concepts
+            Map<String, Concept> existingConcepts = conceptService.getConcepts(fresh.getConcepts());
             Set<Concept> concepts = new LinkedHashSet<>();
             for (Concept c : fresh.getConcepts()) {
-                Concept existingConcept = conceptService.getConcept(c.getCode(), c.getCodeSystem(), c.getCodeSystemVersion());
+                Concept existingConcept = existingConcepts.get(c.getKey());
                 if (existingConcept != null) {
                     concepts.add(existingConcept);
                 } else {
@@ -58,6 +65,14 @@ public class ValueSetService extends AbstractService {
                 repository.save(fresh);
             }
 
+            // evict once the changes are committed, so that nothing re-caches the old version in the meantime
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    referenceDataCacheService.evictValueSets();
+                }
+            });
+
         } catch (Exception e) {
             logger.error("caught " + e.getClass().getName() + " refreshing ValueSet with oid=" + oid, e);
         }
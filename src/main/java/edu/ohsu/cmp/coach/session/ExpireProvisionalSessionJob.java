@@ -6,14 +6,17 @@ import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 
 public class ExpireProvisionalSessionJob implements Job {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    public static final String JOBDATA_APPLICATIONCONTEXT = "applicationContext";
     public static final String JOBDATA_SESSIONID = "sessionId";
 
+    @Autowired
+    private ApplicationContext ctx;
+
     @Override
     public void execute(JobExecutionContext jobExecutionContext) throws JobExecutionException {
         String name = jobExecutionContext.getJobDetail().getKey().getName();
@@ -21,7 +24,6 @@ public class ExpireProvisionalSessionJob implements Job {
         logger.info("running job {} fired at {}", name, jobExecutionContext.getFireTime());
 
         JobDataMap jobDataMap = jobExecutionContext.getMergedJobDataMap();
-        ApplicationContext ctx = (ApplicationContext) jobDataMap.get(JOBDATA_APPLICATIONCONTEXT);
         String sessionId = jobDataMap.getString(JOBDATA_SESSIONID);
 
         SessionService sessionService = ctx.getBean(SessionService.class);
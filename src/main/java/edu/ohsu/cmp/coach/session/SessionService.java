@@ -3,17 +3,19 @@ package edu.ohsu.cmp.coach.session;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import edu.ohsu.cmp.coach.model.redcap.RandomizationGroup;
 import edu.ohsu.cmp.coach.exception.ConfigurationException;
+import edu.ohsu.cmp.coach.http.Dependency;
+import edu.ohsu.cmp.coach.http.OutboundCallGuard;
 import edu.ohsu.cmp.coach.model.Audience;
 import edu.ohsu.cmp.coach.model.AuditSeverity;
 import edu.ohsu.cmp.coach.model.fhir.FHIRCredentials;
 import edu.ohsu.cmp.coach.model.fhir.FHIRCredentialsWithClient;
 import edu.ohsu.cmp.coach.service.AbstractService;
 import edu.ohsu.cmp.coach.util.FhirUtil;
+import edu.ohsu.cmp.coach.workspace.WorkspaceStateStore;
 import org.quartz.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
 
@@ -24,8 +26,8 @@ import java.util.*;
 public class SessionService extends AbstractService {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    @Value("${socket.timeout:300000}")
-    private Integer socketTimeout;
+    @Autowired
+    private OutboundCallGuard outboundCallGuard;
 
     @Autowired
     private ApplicationContext ctx;
@@ -33,11 +35,8 @@ public class SessionService extends AbstractService {
     @Autowired
     private Scheduler scheduler;
 
-    private final Map<String, ProvisionalSessionCacheData> provisionalCache;
-
-    public SessionService() {
-        provisionalCache = new HashMap<>();
-    }
+    @Autowired
+    private WorkspaceStateStore stateStore;
 
     public void prepareSession(String sessionId, FHIRCredentials credentials, Audience audience, RandomizationGroup randomizationGroup,
                                boolean requiresEnrollment, boolean hasCompletedStudy) throws ConfigurationException {
@@ -45,7 +44,7 @@ public class SessionService extends AbstractService {
         IGenericClient client = FhirUtil.buildClient(
                 credentials.getServerURL(),
                 credentials.getBearerToken(),
-                socketTimeout
+                outboundCallGuard.getTimeout(Dependency.EHR)
         );
         FHIRCredentialsWithClient fcc = new FHIRCredentialsWithClient(credentials, client);
 
@@ -59,7 +58,7 @@ public class SessionService extends AbstractService {
     public void prepareProvisionalSession(String sessionId, FHIRCredentials credentials, Audience audience) {
         logger.debug("preparing provisional session " + sessionId + " with credentials=" + credentials);
         ProvisionalSessionCacheData cacheData = new ProvisionalSessionCacheData(credentials, audience);
-        provisionalCache.put(sessionId, cacheData);
+        stateStore.saveProvisional(sessionId, cacheData);
         scheduleExpireProvisional(sessionId);
     }
 
@@ -68,22 +67,22 @@ public class SessionService extends AbstractService {
     }
 
     public boolean existsProvisional(String sessionId) {
-        return provisionalCache.containsKey(sessionId);
+        return stateStore.loadProvisional(sessionId) != null;
     }
 
     public ProvisionalSessionCacheData getProvisionalSessionData(String sessionId) {
-        return provisionalCache.get(sessionId);
+        return stateStore.loadProvisional(sessionId);
     }
 
     public void expireProvisional(String sessionId) {
         logger.info("expiring provisional credentials for session " + sessionId);
-        provisionalCache.remove(sessionId);
+        stateStore.removeProvisional(sessionId);
     }
 
     public void expireAll(String sessionId) {
         logger.info("expiring credentials for session " + sessionId);
         auditService.doAudit(sessionId, AuditSeverity.INFO, "session expired", sessionId);
-        provisionalCache.remove(sessionId);
+        stateStore.removeProvisional(sessionId);
         userWorkspaceService.shutdown(sessionId);
     }
 
@@ -95,7 +94,6 @@ public class SessionService extends AbstractService {
     // information doesn't persist indefinitely if the user exits the workflow prematurely
     private void scheduleExpireProvisional(String sessionId) {
         JobDataMap jobDataMap = new JobDataMap();
-        jobDataMap.put(ExpireProvisionalSessionJob.JOBDATA_APPLICATIONCONTEXT, ctx);
         jobDataMap.put(ExpireProvisionalSessionJob.JOBDATA_SESSIONID, sessionId);
 
         String id = UUID.randomUUID().toString();
@@ -12,13 +12,13 @@ import java.io.IOException;
 import java.util.List;
 
 public class CDSHooksUtil {
-    public static List<CDSHook> getCDSHooks(boolean testing, String cdsHooksEndpointURL) throws IOException {
+    public static List<CDSHook> getCDSHooks(boolean testing, HttpRequest httpRequest, String cdsHooksEndpointURL) throws IOException {
         String json;
         if (testing) {
             json = "{  \"services\": [    {      \"hook\": \"patient-view\",      \"name\": \"TEST\",      \"title\": \"OHSU Test Recommendation\",      \"description\": \"These cards below are hardcoded into the app for testing purposes.\",      \"id\": \"plandefinition-TEST\",      \"prefetch\": { } } ] }\n";
 
         } else {
-            HttpResponse response = new HttpRequest().get(cdsHooksEndpointURL);
+            HttpResponse response = httpRequest.get(cdsHooksEndpointURL);
             json = response.getResponseBody();
         }
 
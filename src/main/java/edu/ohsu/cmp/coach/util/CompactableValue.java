@@ -0,0 +1,113 @@
+package edu.ohsu.cmp.coach.util;
+
+import java.io.IOException;
+
+/**
+ * Holds a cached value that may be compacted into compressed bytes once it hasn't been accessed for a while, and that
+ * is transparently re-inflated the next time it is.  Useful for large values (e.g. FHIR Bundles) that are needed
+ * when a session starts, but only occasionally after that.
+ * <p>
+ * Callers that obtained the value before it was compacted keep a valid reference to it; compaction only releases the
+ * reference held here.
+ */
+public class CompactableValue<T> {
+    private static final long OBJECT_OVERHEAD = 48;
+
+    public interface Codec<T> {
+        byte[] encode(T value) throws IOException;
+        T decode(byte[] bytes) throws IOException;
+    }
+
+    private final Codec<T> codec;
+    private long liveSize;
+    private T value;
+    private byte[] compacted = null;
+    private long lastAccessed;
+
+    public CompactableValue(T value, Codec<T> codec) {
+        this.value = value;
+        this.codec = codec;
+        this.liveSize = MemoryEstimator.estimate(value);
+        this.lastAccessed = System.currentTimeMillis();
+    }
+
+    /**
+     * restore a value that was previously compacted, e.g. from a snapshot.  it isn't inflated until it's accessed
+     */
+    public static <T> CompactableValue<T> fromBytes(byte[] bytes, Codec<T> codec) {
+        CompactableValue<T> cv = new CompactableValue<>(null, codec);
+        cv.compacted = bytes;
+        cv.liveSize = -1;           // unknown until inflated
+        return cv;
+    }
+
+    public synchronized T get() {
+        if (compacted != null) {
+            try {
+                value = codec.decode(compacted);
+                compacted = null;
+                if (liveSize < 0) {
+                    liveSize = MemoryEstimator.estimate(value);
+                }
+
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        lastAccessed = System.currentTimeMillis();
+        return value;
+    }
+
+    /**
+     * compact the value if it hasn't been accessed in the specified period
+     * @return true if the value was compacted by this call
+     */
+    public synchronized boolean compactIfIdle(long idleMillis) {
+        if (compacted != null || value == null) return false;
+        if (System.currentTimeMillis() - lastAccessed < idleMillis) return false;
+
+        try {
+            byte[] bytes = codec.encode(value);
+            if (bytes.length >= liveSize) return false;     // not worth it
+
+            compacted = bytes;
+            value = null;
+            return true;
+
+        } catch (IOException e) {
+            // leave it as it is; the live value is still perfectly usable
+            return false;
+        }
+    }
+
+    /**
+     * @return the value as compacted bytes, suitable for fromBytes(), whether or not it's currently compacted
+     */
+    public synchronized byte[] toBytes() throws IOException {
+        return compacted != null ?
+                compacted :
+                codec.encode(value);
+    }
+
+    public synchronized boolean isCompacted() {
+        return compacted != null;
+    }
+
+    /**
+     * @return the estimated memory currently retained by this value, in bytes
+     */
+    public synchronized long getEstimatedSize() {
+        return compacted != null ?
+                OBJECT_OVERHEAD + compacted.length :
+                OBJECT_OVERHEAD + liveSize;
+    }
+
+    /**
+     * @return the estimated memory saved by compacting this value, in bytes, or 0 if it isn't compacted
+     */
+    public synchronized long getSavedSize() {
+        return compacted != null && liveSize >= 0 ?
+                liveSize - compacted.length :
+                0;
+    }
+}
@@ -12,9 +12,20 @@ import org.hl7.fhir.r4.model.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class FhirUtil {
     private static final Logger logger = LoggerFactory.getLogger(FhirUtil.class);
@@ -29,6 +40,8 @@ public class FhirUtil {
     private static final String EXTENSION_OAUTH_URIS_URL = "http://fhir-registry.smarthealthit.org/StructureDefinition/oauth-uris";
     private static final String EXTENSION_TOKEN_URL = "token";
 
+    private static final Pattern PATTERN_RELATIVE_DATE_PART = Pattern.compile("([0-9]+)([mMdDyY])");
+
     public static IGenericClient buildClient(String serverUrl, String bearerToken, int socketTimeout) {
         logger.debug("building FHIR R4 client for serverUrl=" + serverUrl + ", bearerToken=" + bearerToken +
                 ", socketTimeout=" + socketTimeout);
@@ -478,6 +491,46 @@ public class FhirUtil {
         return truncatedBundle;
     }
 
+    /**
+     * @param lookbackPeriod a period such as those configured for FHIR queries, e.g. "2y" or "1y6m"
+     * @return the start of the day that is lookbackPeriod before today, as the EHR would interpret "ge{now-lookbackPeriod}"
+     */
+    public static Date toLookbackStartDate(String lookbackPeriod) {
+        return toRelativeDate(lookbackPeriod, -1);
+    }
+
+    /**
+     * @param period a period made up of years, months and days, e.g. "2y" or "1y6m"
+     * @param multiplier 1 to move forward by period, or -1 to move back by it
+     * @return the start of the day that is period from today
+     */
+    public static Date toRelativeDate(String period, int multiplier) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(new Date());
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+
+        Matcher m = PATTERN_RELATIVE_DATE_PART.matcher(period);
+        while (m.find()) {
+            int i = Integer.parseInt(m.group(1));
+            String datePart = m.group(2);
+
+            if (datePart.equalsIgnoreCase("y")) {
+                cal.add(Calendar.YEAR, multiplier * i);
+
+            } else if (datePart.equalsIgnoreCase("m")) {
+                cal.add(Calendar.MONTH, multiplier * i);
+
+            } else if (datePart.equalsIgnoreCase("d")) {
+                cal.add(Calendar.DAY_OF_MONTH, multiplier * i);
+            }
+        }
+
+        return cal.getTime();
+    }
+
     public static void writeBundleTOC(Logger logger, Bundle bundle) {
         Iterator<Bundle.BundleEntryComponent> iter = bundle.getEntry().iterator();
         int i = 0;
@@ -495,6 +548,24 @@ public class FhirUtil {
         return parser.encodeResourceToString(r);
     }
 
+    /**
+     * @return r as gzipped JSON.  resource IDs and versioned references are preserved, so that the result can be
+     *         restored with fromCompressedJson() for use in place of the original
+     */
+    public static byte[] toCompressedJson(IBaseResource r) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(baos), StandardCharsets.UTF_8)) {
+            buildCompactJsonParser().encodeResourceToWriter(r, writer);
+        }
+        return baos.toByteArray();
+    }
+
+    public static <T extends IBaseResource> T fromCompressedJson(byte[] bytes, Class<T> aClass) throws IOException {
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(bytes)), StandardCharsets.UTF_8)) {
+            return buildCompactJsonParser().parseResource(aClass, reader);
+        }
+    }
+
     public static String toCodeParamString(List<Coding> codings) throws ConfigurationException {
         if (codings == null) return null;
 
@@ -689,4 +760,10 @@ public class FhirUtil {
     public static boolean isUUID(String s) {
         return s != null && UUID_REGEX.matcher(s).matches();
     }
+
+    private static IParser buildCompactJsonParser() {
+        IParser parser = FhirContext.forR4Cached().newJsonParser();
+        parser.setStripVersionsFromReferences(false);
+        return parser;
+    }
 }
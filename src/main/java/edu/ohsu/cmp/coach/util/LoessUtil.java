@@ -0,0 +1,166 @@
+package edu.ohsu.cmp.coach.util;
+
+import java.util.Arrays;
+
+/**
+ * LOESS (locally-weighted scatterplot smoothing), ported from science.js (science.stats.loess), which itself is a
+ * port of the Apache Commons Math LoessInterpolator.  This used to be calculated in the browser; it's implemented
+ * here so that trend lines can be calculated once on the server and cached.
+ */
+public class LoessUtil {
+    private static final int ROBUSTNESS_ITERS = 2;
+    private static final double ACCURACY = 1e-12;
+
+    /**
+     * compute a LOESS fit of the specified data
+     * @param xval x values, sorted in ascending order
+     * @param yval y values, one for each x value
+     * @param bandwidth the fraction of source points to consider when computing each local regression
+     * @return an array of fitted y values, one for each x value.  values may be NaN if the fit is degenerate (e.g.
+     *         if there are many identical x values)
+     * @throws IllegalArgumentException if the input arrays are mismatched or empty, or if the bandwidth is too small
+     */
+    public static double[] smooth(double[] xval, double[] yval, double bandwidth) {
+        int n = xval.length;
+
+        if (n != yval.length) throw new IllegalArgumentException("Mismatched array lengths");
+        if (n == 0) throw new IllegalArgumentException("At least one point required.");
+
+        if (n == 1) return new double[] { yval[0] };
+        if (n == 2) return new double[] { yval[0], yval[1] };
+
+        int bandwidthInPoints = (int) Math.floor(bandwidth * n);
+
+        if (bandwidthInPoints < 2) throw new IllegalArgumentException("Bandwidth too small.");
+
+        double[] res = new double[n];
+        double[] residuals = new double[n];
+        double[] robustnessWeights = new double[n];
+        Arrays.fill(robustnessWeights, 1);
+
+        // Do an initial fit and 'robustnessIters' robustness iterations.
+        // This is equivalent to doing 'robustnessIters+1' robustness iterations
+        // starting with all robustness weights set to 1.
+        for (int iter = 0; iter <= ROBUSTNESS_ITERS; iter ++) {
+            int[] bandwidthInterval = { 0, bandwidthInPoints - 1 };
+
+            // At each x, compute a local weighted linear regression
+            for (int i = 0; i < n; i ++) {
+                double x = xval[i];
+
+                // Find out the interval of source points on which
+                // a regression is to be made.
+                if (i > 0) {
+                    updateBandwidthInterval(xval, i, bandwidthInterval);
+                }
+
+                int ileft = bandwidthInterval[0];
+                int iright = bandwidthInterval[1];
+
+                // Compute the point of the bandwidth interval that is
+                // farthest from x
+                int edge = (xval[i] - xval[ileft]) > (xval[iright] - xval[i]) ? ileft : iright;
+
+                // Compute a least-squares linear fit weighted by
+                // the product of robustness weights and the tricube
+                // weight function.
+                double sumWeights = 0;
+                double sumX = 0;
+                double sumXSquared = 0;
+                double sumY = 0;
+                double sumXY = 0;
+                double denom = Math.abs(1 / (xval[edge] - x));
+
+                for (int k = ileft; k <= iright; k ++) {
+                    double xk = xval[k];
+                    double yk = yval[k];
+                    double dist = k < i ? x - xk : xk - x;
+                    double w = tricube(dist * denom) * robustnessWeights[k];
+                    double xkw = xk * w;
+                    sumWeights += w;
+                    sumX += xkw;
+                    sumXSquared += xk * xkw;
+                    sumY += yk * w;
+                    sumXY += yk * xkw;
+                }
+
+                double meanX = sumX / sumWeights;
+                double meanY = sumY / sumWeights;
+                double meanXY = sumXY / sumWeights;
+                double meanXSquared = sumXSquared / sumWeights;
+
+                double beta = (Math.sqrt(Math.abs(meanXSquared - meanX * meanX)) < ACCURACY) ?
+                        0 :
+                        ((meanXY - meanX * meanY) / (meanXSquared - meanX * meanX));
+
+                double alpha = meanY - beta * meanX;
+
+                res[i] = beta * x + alpha;
+                residuals[i] = Math.abs(yval[i] - res[i]);
+            }
+
+            // No need to recompute the robustness weights at the last
+            // iteration, they won't be needed anymore
+            if (iter == ROBUSTNESS_ITERS) {
+                break;
+            }
+
+            // Recompute the robustness weights.
+            double medianResidual = median(residuals);
+
+            if (Math.abs(medianResidual) < ACCURACY) {
+                break;
+            }
+
+            for (int i = 0; i < n; i ++) {
+                double arg = residuals[i] / (6 * medianResidual);
+                if (arg >= 1) {
+                    robustnessWeights[i] = 0;
+                } else {
+                    double w = 1 - arg * arg;
+                    robustnessWeights[i] = w * w;
+                }
+            }
+        }
+
+        return res;
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    // Compute the tricube weight function.
+    private static double tricube(double x) {
+        double tmp = 1 - x * x * x;
+        return tmp * tmp * tmp;
+    }
+
+    // Given an index interval into xval that embraces a certain number of
+    // points closest to xval[i-1], update the interval so that it embraces
+    // the same number of points closest to xval[i].  all source weights are 1, so there are no zero weights to skip
+    private static void updateBandwidthInterval(double[] xval, int i, int[] bandwidthInterval) {
+        int left = bandwidthInterval[0];
+        int right = bandwidthInterval[1];
+
+        // The right edge should be adjusted if the next point to the right
+        // is closer to xval[i] than the leftmost point of the current interval
+        int nextRight = right + 1;
+        if (nextRight < xval.length && (xval[nextRight] - xval[i]) < (xval[i] - xval[left])) {
+            bandwidthInterval[0] = left + 1;
+            bandwidthInterval[1] = nextRight;
+        }
+    }
+
+    // R's quantile algorithm type=7, for q = 0.5
+    private static double median(double[] values) {
+        double[] d = Arrays.copyOf(values, values.length);
+        Arrays.sort(d);
+        int n1 = d.length - 1;
+        double index = 1 + 0.5 * n1;
+        int lo = (int) Math.floor(index);
+        double h = index - lo;
+        double a = d[lo - 1];
+        return h == 0 ? a : a + h * (d[lo] - a);
+    }
+}
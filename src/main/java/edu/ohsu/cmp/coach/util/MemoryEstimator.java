@@ -0,0 +1,96 @@
+package edu.ohsu.cmp.coach.util;
+
+import org.hl7.fhir.r4.model.Base;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Property;
+
+import java.util.*;
+
+/**
+ * Rough estimates of the heap retained by values held in workspace caches.  Estimates need to be good enough to
+ * compare entries with each other and to keep total memory use within a budget, not to be exact; they're computed
+ * once per cache load, so they also need to be cheap.  Large collections and Bundles are therefore estimated from a
+ * sample of their elements.
+ */
+public class MemoryEstimator {
+    private static final long OBJECT_OVERHEAD = 48;         // object header, a few fields, and the reference to it
+    private static final long STRING_OVERHEAD = 40;
+    private static final long MODEL_SIZE = 2048;            // a model object, including the source resources it refers to
+    private static final int SAMPLE_SIZE = 25;
+
+    /**
+     * @return the estimated retained size of o, in bytes
+     */
+    public static long estimate(Object o) {
+        if (o == null) {
+            return 0;
+
+        } else if (o instanceof CompactableValue) {
+            return ((CompactableValue<?>) o).getEstimatedSize();
+
+        } else if (o instanceof Bundle) {
+            Bundle bundle = (Bundle) o;
+            List<Base> resources = new ArrayList<>();
+            for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+                if (entry.hasResource()) {
+                    resources.add(entry.getResource());
+                }
+            }
+            return OBJECT_OVERHEAD * (1 + bundle.getEntry().size()) + estimateCollection(resources);
+
+        } else if (o instanceof Base) {
+            return estimateBase((Base) o);
+
+        } else if (o instanceof Map) {
+            // values may be stored under several keys (e.g. Encounters keyed by id and identifier); count each once
+            Set<Object> values = Collections.newSetFromMap(new IdentityHashMap<>());
+            values.addAll(((Map<?, ?>) o).values());
+            return OBJECT_OVERHEAD * (1 + ((Map<?, ?>) o).size()) + estimateCollection(values);
+
+        } else if (o instanceof Collection) {
+            return OBJECT_OVERHEAD + estimateCollection((Collection<?>) o);
+
+        } else if (o instanceof CharSequence) {
+            return STRING_OVERHEAD + 2L * ((CharSequence) o).length();
+
+        } else {
+            return MODEL_SIZE;
+        }
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    private static long estimateCollection(Collection<?> c) {
+        if (c.isEmpty()) return 0;
+
+        long sampleTotal = 0;
+        int sampled = 0;
+        for (Object item : c) {
+            if (sampled >= SAMPLE_SIZE) break;
+            sampleTotal += estimate(item);
+            sampled ++;
+        }
+
+        return sampleTotal * c.size() / sampled;
+    }
+
+    private static long estimateBase(Base base) {
+        long size = OBJECT_OVERHEAD;
+        if (base.isPrimitive()) {
+            String value = base.primitiveValue();
+            if (value != null) {
+                size += STRING_OVERHEAD + 2L * value.length();
+            }
+        }
+        for (Property property : base.children()) {
+            if (property.hasValues()) {
+                for (Base child : property.getValues()) {
+                    size += estimateBase(child);
+                }
+            }
+        }
+        return size;
+    }
+}
@@ -38,10 +38,10 @@ public class ObservationUtil {
         if (bpObservation.hasCode()) {
             CodeableConcept code = bpObservation.getCode();
 
-            if (FhirUtil.hasCoding(code, fcm.getBpHomeCodings()) || FhirUtil.hasHomeSettingExtension(bpObservation)) {
+            if (fcm.getBpHomeCodingSet().contains(code) || FhirUtil.hasHomeSettingExtension(bpObservation)) {
                 source = ObservationSource.HOME;    // this should remain generic HOME as a more specific source is unknown
 
-            } else if (FhirUtil.hasCoding(code, fcm.getBpOfficeCodings())) {
+            } else if (fcm.getBpOfficeCodingSet().contains(code)) {
                 source = ObservationSource.OFFICE;
             }
         }
@@ -0,0 +1,70 @@
+package edu.ohsu.cmp.coach.util;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Ensures that concurrent callers asking for the same key share a single in-flight computation, rather than each
+ * performing it themselves.  Nothing is cached: once a computation completes, the next caller starts a new one.  This
+ * makes it suitable for views derived from data that may change at any time, where caching would require
+ * invalidation, but where many identical requests tend to arrive at once (e.g. when a page first loads).
+ * <p>
+ * Callers share the result, so it must not be modified.
+ */
+public class SingleFlight {
+    public interface Computation<T, E extends Exception> {
+        T compute() throws E;
+    }
+
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    public <T, E extends Exception> T execute(String key, Computation<T, E> computation) throws E {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+
+        if (existing != null) {
+            return await(existing);
+        }
+
+        try {
+            T result = computation.compute();
+            future.complete(result);
+            return result;
+
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+            throw t;
+
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    // rethrows whatever the computation threw, exactly as if this caller had performed it
+    @SuppressWarnings("unchecked")
+    private <T, E extends Exception> T await(CompletableFuture<Object> future) throws E {
+        try {
+            return (T) future.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw (E) cause;
+            }
+        }
+    }
+}
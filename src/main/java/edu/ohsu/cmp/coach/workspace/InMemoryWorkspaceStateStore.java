@@ -0,0 +1,71 @@
+package edu.ohsu.cmp.coach.workspace;
+
+import edu.ohsu.cmp.coach.session.ProvisionalSessionCacheData;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps session state in this node's memory.  Suitable for a single node, or for multiple nodes behind a load balancer
+ * with sticky sessions, where losing a node means its users have to launch again.
+ */
+@Component
+@ConditionalOnProperty(name = "workspace.state-store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryWorkspaceStateStore implements WorkspaceStateStore {
+    private final Map<String, WorkspaceState> states = new ConcurrentHashMap<>();
+    private final Map<String, ProvisionalSessionCacheData> provisional = new ConcurrentHashMap<>();
+
+    // the node's live workspace already holds everything a snapshot would
+    @Override
+    public boolean supportsSnapshots() {
+        return false;
+    }
+
+    @Override
+    public void save(WorkspaceState state) {
+        states.put(state.getSessionId(), state);
+    }
+
+    @Override
+    public WorkspaceState load(String sessionId) {
+        return states.get(sessionId);
+    }
+
+    @Override
+    public boolean exists(String sessionId) {
+        return states.containsKey(sessionId);
+    }
+
+    @Override
+    public String findSessionIdByOmronUserId(String omronUserId) {
+        for (WorkspaceState state : states.values()) {
+            if (StringUtils.equals(state.getOmronUserId(), omronUserId)) {
+                return state.getSessionId();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void remove(String sessionId) {
+        states.remove(sessionId);
+    }
+
+    @Override
+    public void saveProvisional(String sessionId, ProvisionalSessionCacheData data) {
+        provisional.put(sessionId, data);
+    }
+
+    @Override
+    public ProvisionalSessionCacheData loadProvisional(String sessionId) {
+        return provisional.get(sessionId);
+    }
+
+    @Override
+    public void removeProvisional(String sessionId) {
+        provisional.remove(sessionId);
+    }
+}
@@ -0,0 +1,151 @@
+package edu.ohsu.cmp.coach.workspace;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import edu.ohsu.cmp.coach.entity.ProvisionalSessionState;
+import edu.ohsu.cmp.coach.entity.SessionState;
+import edu.ohsu.cmp.coach.repository.ProvisionalSessionStateRepository;
+import edu.ohsu.cmp.coach.repository.SessionStateRepository;
+import edu.ohsu.cmp.coach.session.ProvisionalSessionCacheData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps session state in the application database, so that any node can rebuild any session's workspace, and a
+ * session survives the loss of the node that created it.  Note that this includes FHIR and Omron bearer tokens, so
+ * the database must be secured accordingly.
+ */
+@Component
+@ConditionalOnProperty(name = "workspace.state-store", havingValue = "jdbc")
+public class JdbcWorkspaceStateStore implements WorkspaceStateStore {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private SessionStateRepository sessionStateRepository;
+
+    @Autowired
+    private ProvisionalSessionStateRepository provisionalSessionStateRepository;
+
+    private final Gson gson = new GsonBuilder()
+            .setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ")         // the default format depends on the JVM's locale
+            .create();
+
+    @Override
+    public boolean supportsSnapshots() {
+        return true;
+    }
+
+    @Override
+    public void save(WorkspaceState state) {
+        String json = gson.toJson(state);
+
+        if (state.getSnapshot() != null) {
+            sessionStateRepository.save(new SessionState(state.getSessionId(), state.getOmronUserId(), json,
+                    encodeSnapshot(state.getSnapshot())));
+
+        } else if (sessionStateRepository.updateState(state.getSessionId(), state.getOmronUserId(), json, new Date()) == 0) {
+            sessionStateRepository.save(new SessionState(state.getSessionId(), state.getOmronUserId(), json, null));
+        }
+    }
+
+    @Override
+    public WorkspaceState load(String sessionId) {
+        SessionState sessionState = sessionStateRepository.findById(sessionId).orElse(null);
+        if (sessionState == null) return null;
+
+        WorkspaceState state = gson.fromJson(sessionState.getState(), WorkspaceState.class);
+        if (sessionState.getSnapshot() != null) {
+            try {
+                state.setSnapshot(decodeSnapshot(sessionState.getSnapshot()));
+
+            } catch (IOException e) {
+                // the snapshot is only an optimization; the workspace can still be rebuilt from the EHR
+                logger.warn("caught " + e.getClass().getName() + " decoding snapshot for session=" + sessionId +
+                        " - " + e.getMessage());
+            }
+        }
+        return state;
+    }
+
+    @Override
+    public boolean exists(String sessionId) {
+        return sessionStateRepository.existsById(sessionId);
+    }
+
+    @Override
+    public String findSessionIdByOmronUserId(String omronUserId) {
+        List<String> list = sessionStateRepository.findSessionIdsByOmronUserId(omronUserId);
+        return list.isEmpty() ?
+                null :
+                list.get(0);
+    }
+
+    @Override
+    public void remove(String sessionId) {
+        sessionStateRepository.deleteBySessionId(sessionId);
+    }
+
+    @Override
+    public void saveProvisional(String sessionId, ProvisionalSessionCacheData data) {
+        provisionalSessionStateRepository.save(new ProvisionalSessionState(sessionId, gson.toJson(data)));
+    }
+
+    @Override
+    public ProvisionalSessionCacheData loadProvisional(String sessionId) {
+        ProvisionalSessionState state = provisionalSessionStateRepository.findById(sessionId).orElse(null);
+        return state != null ?
+                gson.fromJson(state.getState(), ProvisionalSessionCacheData.class) :
+                null;
+    }
+
+    @Override
+    public void removeProvisional(String sessionId) {
+        provisionalSessionStateRepository.deleteBySessionId(sessionId);
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    // snapshot entries are already compressed, so they're simply written one after another
+    private byte[] encodeSnapshot(Map<String, byte[]> snapshot) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(baos)) {
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, byte[]> entry : snapshot.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    out.write(entry.getValue());
+                }
+            }
+            return baos.toByteArray();
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);      // writing to memory; won't happen
+        }
+    }
+
+    private Map<String, byte[]> decodeSnapshot(byte[] bytes) throws IOException {
+        Map<String, byte[]> snapshot = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i ++) {
+                String key = in.readUTF();
+                byte[] value = new byte[in.readInt()];
+                in.readFully(value);
+                snapshot.put(key, value);
+            }
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,144 @@
+package edu.ohsu.cmp.coach.workspace;
+
+import edu.ohsu.cmp.coach.model.recommendation.Card;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One evaluation of all of a session's recommendations, against the state of its workspace when the run began.  Each
+ * hook's cards are made available as soon as that hook has been evaluated, so callers needn't wait for the whole run.
+ * <p>
+ * When recommendations' inputs change (e.g. a BP reading is submitted), the run in progress is superseded by a new
+ * one.  A superseded run stops at its next hook, rather than continuing to occupy CQF-Ruler with requests whose
+ * results are already out of date, and anyone waiting on it is handed the newer run's results instead.
+ */
+public class RecommendationRun {
+    public enum HookStatus {
+        PENDING,
+        RUNNING,
+        COMPLETE,
+        FAILED
+    }
+
+    private final long version;
+    private final Map<String, HookStatus> statuses = new LinkedHashMap<>();
+    private final Map<String, CompletableFuture<List<Card>>> results = new HashMap<>();
+    private RecommendationRun supersededBy = null;
+    private boolean finished = false;
+    private Throwable finishReason = null;
+
+    RecommendationRun(long version) {
+        this.version = version;
+    }
+
+    /**
+     * @return this run's position in the sequence of runs for its session.  later runs have higher versions
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public synchronized boolean isSuperseded() {
+        return supersededBy != null;
+    }
+
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return the status of each hook this run evaluates, in the order they're evaluated.  empty until the hooks to
+     * evaluate have been determined
+     */
+    public synchronized Map<String, HookStatus> getStatuses() {
+        return new LinkedHashMap<>(statuses);
+    }
+
+    /**
+     * @return a future completed with the specified hook's cards once they're ready.  it completes exceptionally with
+     * IllegalArgumentException if this run doesn't evaluate that hook
+     */
+    public synchronized CompletableFuture<List<Card>> getResult(String hookId) {
+        CompletableFuture<List<Card>> future = results.get(hookId);
+        if (future == null) {
+            future = new CompletableFuture<>();
+            results.put(hookId, future);
+            if (supersededBy != null || finished) {
+                resolve(hookId, future);
+            }
+        }
+        return future;
+    }
+
+    synchronized void setHooks(List<String> hookIds) {
+        for (String hookId : hookIds) {
+            statuses.put(hookId, HookStatus.PENDING);
+        }
+    }
+
+    synchronized void setRunning(String hookId) {
+        statuses.put(hookId, HookStatus.RUNNING);
+    }
+
+    // results arriving after this run was superseded are out of date, and anyone waiting for them has been handed
+    // over to the newer run
+    synchronized void complete(String hookId, List<Card> cards) {
+        statuses.put(hookId, HookStatus.COMPLETE);
+        if (supersededBy == null) {
+            getResult(hookId).complete(cards);
+        }
+    }
+
+    synchronized void fail(String hookId, Throwable t) {
+        statuses.put(hookId, HookStatus.FAILED);
+        if (supersededBy == null) {
+            getResult(hookId).completeExceptionally(t);
+        }
+    }
+
+    synchronized void supersede(RecommendationRun newer) {
+        supersededBy = newer;
+        resolveAllPending();
+    }
+
+    /**
+     * @param reason why any hook that hasn't been evaluated wasn't, or null if that's because it doesn't exist
+     */
+    synchronized void finish(Throwable reason) {
+        finished = true;
+        finishReason = reason;
+        resolveAllPending();
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    private void resolveAllPending() {
+        for (Map.Entry<String, CompletableFuture<List<Card>>> entry : results.entrySet()) {
+            if ( ! entry.getValue().isDone() ) {
+                resolve(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    // complete a future this run won't (or didn't) complete itself
+    private void resolve(String hookId, CompletableFuture<List<Card>> future) {
+        if (supersededBy != null) {
+            supersededBy.getResult(hookId).whenComplete((cards, t) -> {
+                if (t != null) {
+                    future.completeExceptionally(t);
+                } else {
+                    future.complete(cards);
+                }
+            });
+
+        } else if (finishReason != null) {
+            future.completeExceptionally(finishReason);
+
+        } else {
+            future.completeExceptionally(new IllegalArgumentException("no such hook: " + hookId));
+        }
+    }
+}
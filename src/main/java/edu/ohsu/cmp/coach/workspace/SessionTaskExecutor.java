@@ -0,0 +1,253 @@
+package edu.ohsu.cmp.coach.workspace;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs background work (workspace population, recommendations, Omron synchronization) for all sessions on one
+ * application-wide executor, rather than a thread pool per session.
+ * <p>
+ * On Java 21+ tasks run on virtual threads.  Otherwise they run on a bounded, shared pool of platform threads.  Either
+ * way, each session may only have a limited number of tasks running at once, with the rest waiting in a bounded
+ * per-session queue, so that a handful of busy sessions can't starve everyone else.  All of a session's tasks, queued
+ * or running, can be cancelled at once when the session ends.
+ */
+@Component
+public class SessionTaskExecutor {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Value("${workspace.executor.use-virtual-threads}")
+    private Boolean useVirtualThreads;
+
+    @Value("${workspace.executor.threads}")
+    private Integer threads;
+
+    @Value("${workspace.executor.queue-capacity}")
+    private Integer queueCapacity;
+
+    @Value("${workspace.executor.max-running-per-session}")
+    private Integer maxRunningPerSession;
+
+    @Value("${workspace.executor.max-queued-per-session}")
+    private Integer maxQueuedPerSession;
+
+    private ExecutorService executor = null;
+    private final Map<String, SessionQueue> queues = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        if (useVirtualThreads) {
+            executor = buildVirtualThreadExecutor();
+        }
+
+        if (executor == null) {
+            logger.info("running session tasks on a shared pool of " + threads + " threads");
+            ThreadPoolExecutor tpe = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(queueCapacity), new NamedThreadFactory());
+            tpe.allowCoreThreadTimeOut(true);
+            executor = tpe;
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @param sessionId the session on whose behalf the task is being run
+     * @param runnable the task
+     * @return a Future representing the task, which may not have started yet
+     * @throws RejectedExecutionException if the session already has too many tasks waiting to run, or the shared
+     * executor refused the task
+     */
+    public Future<?> submit(String sessionId, Runnable runnable) {
+        return submit(sessionId, runnable, null);
+    }
+
+    /**
+     * @param onRejected called if the task waits its turn, but the shared executor then refuses it.  the returned
+     *                   Future also completes exceptionally with RejectedExecutionException in that case
+     * @see #submit(String, Runnable)
+     */
+    public Future<?> submit(String sessionId, Runnable runnable, Runnable onRejected) {
+        while (true) {
+            SessionQueue queue = queues.computeIfAbsent(sessionId, SessionQueue::new);
+            Future<?> future = queue.submit(runnable, onRejected);
+            if (future != null) return future;
+
+            // the queue was retired between lookup and submit; the next lookup will create a fresh one
+        }
+    }
+
+    /**
+     * cancel every task for the specified session.  tasks that haven't started are discarded, and tasks that are
+     * running are interrupted
+     */
+    public void cancel(String sessionId) {
+        SessionQueue queue = queues.remove(sessionId);
+        if (queue != null) {
+            queue.cancel();
+        }
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    // Executors.newVirtualThreadPerTaskExecutor() only exists in Java 21+, and COACH is built for Java 17
+    private ExecutorService buildVirtualThreadExecutor() {
+        try {
+            ExecutorService es = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            logger.info("running session tasks on virtual threads");
+            return es;
+
+        } catch (NoSuchMethodException e) {
+            logger.info("virtual threads require Java 21 or later (running " + System.getProperty("java.version") + ")");
+            return null;
+
+        } catch (Exception e) {
+            logger.warn("caught " + e.getClass().getName() + " creating virtual thread executor - " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private static class SessionTask extends FutureTask<Object> {
+        private final Runnable onRejected;
+
+        private SessionTask(Runnable runnable, Runnable onRejected) {
+            super(runnable, null);
+            this.onRejected = onRejected;
+        }
+
+        private void reject(RejectedExecutionException e) {
+            setException(e);
+            if (onRejected != null) {
+                onRejected.run();
+            }
+        }
+    }
+
+    private class SessionQueue {
+        private final String sessionId;
+        private final Deque<SessionTask> waiting = new ArrayDeque<>();
+        private final Set<SessionTask> running = new HashSet<>();
+        private boolean retired = false;
+
+        private SessionQueue(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        // returns null if this queue has been retired and shouldn't be used
+        private Future<?> submit(Runnable runnable, Runnable onRejected) {
+            SessionTask task = new SessionTask(runnable, onRejected);
+            Map<SessionTask, RejectedExecutionException> rejected;
+            synchronized (this) {
+                if (retired) return null;
+
+                if (waiting.size() >= maxQueuedPerSession) {
+                    throw new RejectedExecutionException("too many tasks waiting for session=" + sessionId);
+                }
+
+                waiting.add(task);
+                rejected = dispatch();
+            }
+
+            // the caller learns of its own task's rejection directly.  any others rejected along the way were
+            // submitted earlier, so their submitters are told through their Futures and callbacks
+            RejectedExecutionException e = rejected.remove(task);
+            reject(rejected);
+            if (e != null) {
+                throw e;
+            }
+            return task;
+        }
+
+        // callers must hold this queue's lock, and pass whatever's returned to reject() once they've released it
+        private Map<SessionTask, RejectedExecutionException> dispatch() {
+            Map<SessionTask, RejectedExecutionException> rejected = new LinkedHashMap<>();
+            while (running.size() < maxRunningPerSession && ! waiting.isEmpty()) {
+                SessionTask task = waiting.poll();
+                if (task.isDone()) continue;
+
+                running.add(task);
+                try {
+                    executor.execute(() -> {
+                        try {
+                            task.run();
+                        } finally {
+                            complete(task);
+                        }
+                    });
+
+                } catch (RejectedExecutionException e) {
+                    logger.warn("shared executor rejected task for session=" + sessionId + " - " + e.getMessage());
+                    running.remove(task);
+                    rejected.put(task, e);
+                }
+            }
+
+            if (running.isEmpty() && waiting.isEmpty()) {
+                // nothing left to do.  retire this queue so sessions that have gone quiet don't accumulate
+                retired = true;
+                queues.remove(sessionId, this);
+            }
+
+            return rejected;
+        }
+
+        private void complete(SessionTask task) {
+            Map<SessionTask, RejectedExecutionException> rejected = Collections.emptyMap();
+            synchronized (this) {
+                running.remove(task);
+                if ( ! retired ) {
+                    rejected = dispatch();
+                }
+            }
+            reject(rejected);
+        }
+
+        private void reject(Map<SessionTask, RejectedExecutionException> rejected) {
+            for (Map.Entry<SessionTask, RejectedExecutionException> entry : rejected.entrySet()) {
+                try {
+                    entry.getKey().reject(entry.getValue());
+
+                } catch (RuntimeException e) {
+                    logger.warn("caught " + e.getClass().getName() + " handling rejected task for session=" +
+                            sessionId + " - " + e.getMessage(), e);
+                }
+            }
+        }
+
+        private synchronized void cancel() {
+            retired = true;
+            for (SessionTask task : waiting) {
+                task.cancel(false);
+            }
+            waiting.clear();
+            for (SessionTask task : running) {
+                task.cancel(true);
+            }
+            logger.debug("cancelled tasks for session=" + sessionId);
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "session-task-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
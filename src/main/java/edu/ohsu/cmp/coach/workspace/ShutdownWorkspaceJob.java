@@ -8,6 +8,7 @@ import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
 
@@ -15,9 +16,13 @@ import org.springframework.stereotype.Component;
 public class ShutdownWorkspaceJob implements Job {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    public static final String JOBDATA_APPLICATIONCONTEXT = "applicationContext";
     public static final String JOBDATA_SESSIONID = "sessionId";
 
+    // injected by Spring's job factory, rather than passed in the job data, so that jobs can be persisted by a JDBC
+    // job store
+    @Autowired
+    private ApplicationContext ctx;
+
     @Override
     public void execute(JobExecutionContext jobExecutionContext) throws JobExecutionException {
         String name = jobExecutionContext.getJobDetail().getKey().getName();
@@ -25,7 +30,6 @@ public class ShutdownWorkspaceJob implements Job {
         logger.info("running job {} fired at {}", name, jobExecutionContext.getFireTime());
 
         JobDataMap jobDataMap = jobExecutionContext.getMergedJobDataMap();
-        ApplicationContext ctx = (ApplicationContext) jobDataMap.get(JOBDATA_APPLICATIONCONTEXT);
         String sessionId = jobDataMap.getString(JOBDATA_SESSIONID);
 
         UserWorkspaceService userWorkspaceService = ctx.getBean(UserWorkspaceService.class);
@@ -4,6 +4,8 @@ import com.auth0.jwt.impl.JWTParser;
 import com.auth0.jwt.interfaces.Payload;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import edu.ohsu.cmp.coach.entity.MyPatient;
 import edu.ohsu.cmp.coach.exception.DataException;
 import edu.ohsu.cmp.coach.fhir.CompositeBundle;
@@ -19,7 +21,9 @@ import edu.ohsu.cmp.coach.model.recommendation.Card;
 import edu.ohsu.cmp.coach.model.recommendation.Suggestion;
 import edu.ohsu.cmp.coach.model.redcap.RandomizationGroup;
 import edu.ohsu.cmp.coach.service.*;
+import edu.ohsu.cmp.coach.util.CompactableValue;
 import edu.ohsu.cmp.coach.util.FhirUtil;
+import edu.ohsu.cmp.coach.util.SingleFlight;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Encounter;
 import org.hl7.fhir.r4.model.Reference;
@@ -34,20 +38,24 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Calendar;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
 public class UserWorkspace {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    public static final int POOL_SIZE = 5;
-
     private static final String CACHE_PATIENT = "Patient";
     private static final String CACHE_ENCOUNTER = "Encounter";
     private static final String CACHE_PROTOCOL = "Protocol";
     private static final String CACHE_BP = "BP";
+    private static final String CACHE_BP_TREND = "BPTrend";
+    private static final int TREND_CACHE_MAX_SIZE = 8;
     private static final String CACHE_PULSE = "Pulse";
     private static final String CACHE_ADVERSE_EVENT = "AdverseEvent";
     private static final String CACHE_GOAL = "Goal";
@@ -58,6 +66,17 @@ public class UserWorkspace {
     private static final String CACHE_PROBLEM_LIST_CONDITION = "ProblemListCondition";
     private static final String CACHE_OTHER_SUPPLEMENTAL_RESOURCES = "OtherSupplementalResources";
 
+    private static final String LOADER_CARDS = "Cards";
+
+    // keys for versioned data served to the UI with ETags.  a key's version is incremented whenever the data it
+    // represents may have changed, so clients can safely reuse anything they received under the current version.
+    // keys that share a name with a cache key are also incremented when that cache entry expires
+    public static final String VERSION_BP = CACHE_BP;
+    public static final String VERSION_PULSE = CACHE_PULSE;
+    public static final String VERSION_MEDICATION = CACHE_MEDICATION;
+    public static final String VERSION_ADVERSE_EVENT = CACHE_ADVERSE_EVENT;
+    public static final String VERSION_OTHER_GOALS = "OtherGoals";
+
     private final ApplicationContext ctx;
     private final String sessionId;
     private final Audience audience;
@@ -72,10 +91,17 @@ public class UserWorkspace {
 
     private final Cache cache;
     private final Cache cardCache;
-    private final Cache<String, Bundle> bundleCache;
-    private final ExecutorService executorService;
+    private final Cache<String, BloodPressureTrendModel> trendCache;
+    private final Cache<String, CompactableValue<Bundle>> bundleCache;
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final String versionEpoch = Long.toHexString(System.currentTimeMillis());
+    private final SingleFlight singleFlight = new SingleFlight();
+    private final SessionTaskExecutor taskExecutor;
+    private final WorkspaceMemoryManager memoryManager;
+    private final WorkspaceStateStore stateStore;
 
     private final AuditService auditService;
+    private final MetricsService metricsService;
 
     // Omron stuff
     private MyOmronTokenData omronTokenData = null;
@@ -86,12 +112,20 @@ public class UserWorkspace {
     private Boolean omronSynchronizing = false;
     private Integer omronCurrentItem = null;
     private Integer omronTotalItems = null;
+    private volatile boolean shutdown = false;
+    private final HypotensionAdverseEventService.DetectionState hypotensionDetectionState =
+            new HypotensionAdverseEventService.DetectionState();
+    private final GoalService.LocalGoals localGoals = new GoalService.LocalGoals();
+    private final Object recommendationLock = new Object();
+    private long recommendationVersion = 0;
+    private RecommendationRun recommendationRun = null;
+    private boolean recommendationRunStale = false;     // the current run began before the caches were last cleared
 
     protected UserWorkspace(ApplicationContext ctx, String sessionId, Audience audience,
                             RandomizationGroup randomizationGroup,
                             boolean requiresEnrollment, boolean hasCompletedStudy,
                             FHIRCredentialsWithClient fhirCredentialsWithClient,
-                            FhirQueryManager fqm, FhirConfigManager fcm) {
+                            FhirQueryManager fqm, FhirConfigManager fcm, boolean restored) {
         this.ctx = ctx;
         this.sessionId = sessionId;
         this.audience = audience;
@@ -104,6 +138,7 @@ public class UserWorkspace {
         this.fcm = fcm;
 
         this.auditService = ctx.getBean(AuditService.class);
+        this.metricsService = ctx.getBean(MetricsService.class);
 
         PatientService patientService = ctx.getBean(PatientService.class);
         MyPatient myPatient = patientService.getMyPatient(
@@ -124,21 +159,43 @@ public class UserWorkspace {
             this.confirmedEndOfStudy = false;
         }
 
+        this.memoryManager = ctx.getBean(WorkspaceMemoryManager.class);
+
         cache = Caffeine.newBuilder()
                 .expireAfterWrite(6, TimeUnit.HOURS)
+                .maximumWeight(memoryManager.getMaxSessionWeight())
+                .weigher(memoryManager.getWeigher())
+                .recordStats(() -> metricsService.getStatsCounter("cache"))
+                .evictionListener((Object key, Object value, RemovalCause cause) -> {
+                    AtomicLong version = versions.get(key);
+                    if (version != null) version.incrementAndGet();
+                })
                 .build();
 
+        // cards aren't weight-bounded, as they carry state (e.g. deleted suggestions) that would be lost on eviction
         cardCache = Caffeine.newBuilder()
                 .expireAfterWrite(6, TimeUnit.HOURS)
+                .recordStats(() -> metricsService.getStatsCounter("cardCache"))
                 .build();
 
         bundleCache = Caffeine.newBuilder()
                 .expireAfterWrite(6, TimeUnit.HOURS)
+                .maximumWeight(memoryManager.getMaxSessionWeight())
+                .weigher(memoryManager.getWeigher())
+                .recordStats(() -> metricsService.getStatsCounter("bundleCache"))
                 .build();
 
-        executorService = Executors.newFixedThreadPool(POOL_SIZE);
+        // trends are keyed by the window being charted, which the client chooses, so only a few are kept
+        trendCache = Caffeine.newBuilder()
+                .expireAfterWrite(6, TimeUnit.HOURS)
+                .maximumSize(TREND_CACHE_MAX_SIZE)
+                .recordStats(() -> metricsService.getStatsCounter("trendCache"))
+                .build();
+
+        taskExecutor = ctx.getBean(SessionTaskExecutor.class);
+        stateStore = ctx.getBean(WorkspaceStateStore.class);
 
-        setupAutoShutdownJob();
+        setupAutoShutdownJob(restored);
     }
 
     public String getSessionId() {
@@ -205,6 +262,14 @@ public class UserWorkspace {
         patientService.setBPGoalUpdated(internalPatientId, bpGoalUpdated);
     }
 
+    public HypotensionAdverseEventService.DetectionState getHypotensionDetectionState() {
+        return hypotensionDetectionState;
+    }
+
+    public GoalService.LocalGoals getLocalGoals() {
+        return localGoals;
+    }
+
     public Boolean isConfirmedEndOfStudy() {
         return confirmedEndOfStudy;
     }
@@ -218,60 +283,234 @@ public class UserWorkspace {
     }
 
     public void populate() {
-        Runnable runnable = new Runnable() {
+        long start = System.currentTimeMillis();
+        MetricsService.Sample sample = metricsService.startSample(sessionId);
+        AtomicBoolean failed = new AtomicBoolean(false);
+        logger.info("BEGIN populating workspace for session=" + sessionId);
+
+        // populate in priority order.  first, what the home page needs to render and chart BPs; then what the other
+        // pages and recommendations need; and last, the recommendations themselves.  each stage's tasks run in
+        // parallel, but a stage doesn't start until the one before it finishes, so that it doesn't compete with it
+        // for the EHR.  anything requested before its stage runs is simply loaded on demand
+        List<List<Runnable>> stages = new ArrayList<>();
+        stages.add(Arrays.asList(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        getPatient();
+                        getRemoteGoals();
+                        doBPGoalCheck();
+                    }
+                },
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        getEncounters();
+                        getProtocolObservations();
+                        getRemoteBloodPressures();
+                    }
+                },
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        prefetchAESurveyLink();
+                    }
+                }
+        ));
+        stages.add(Arrays.asList(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        getMedications();
+                        getOtherSupplementalResources();
+                        getOrderServiceRequests();
+                    }
+                },
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        getRemotePulses();
+                        getEncounterDiagnosisConditions();
+                        getProblemListConditions();
+                        getRemoteAdverseEvents();
+                        refreshHypotensionAdverseEvents();
+                    }
+                }
+        ));
+        stages.add(Collections.singletonList(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        // if the home page has already asked for recommendations, the run it started will do
+                        RecommendationRun run = startRecommendationRunIfIdle();
+                        if (run != null) {
+                            boolean success = executeRecommendationRun(run);
+                            if ( ! run.isSuperseded() ) {
+                                publishEvent(SessionEventService.EVENT_RECOMMENDATIONS_UPDATED);
+                            }
+                            if ( ! success ) {
+                                throw new RuntimeException("couldn't generate all recommendations");
+                            }
+                        }
+                    }
+                }
+        ));
+
+        runStages(stages.iterator(), failed, new Runnable() {
             @Override
             public void run() {
-                long start = System.currentTimeMillis();
-                logger.info("BEGIN populating workspace for session=" + sessionId);
-                getPatient();
-                getOrderServiceRequests();
-                getRemoteGoals();
-                doBPGoalCheck();
-                getEncounters();
-                getProtocolObservations();
-                getRemoteBloodPressures();
-                getRemotePulses();
-                getEncounterDiagnosisConditions();
-                getRemoteAdverseEvents();
-                getMedications();
-                getProblemListConditions();
-                getOtherSupplementalResources();
-                refreshHypotensionAdverseEvents();
-                getAllCards();
-                logger.info("DONE populating workspace for session=" + sessionId +
+                boolean success = ! failed.get() && ! shutdown;
+                if (success && stateStore.supportsSnapshots()) {
+                    saveState(buildSnapshot());
+                }
+                metricsService.recordPopulate(sample, success);
+                logger.info("DONE populating workspace for session=" + sessionId + (success ? "" : " (incomplete)") +
                         " (took " + (System.currentTimeMillis() - start) + "ms)");
             }
-        };
-        executorService.submit(runnable);
+        });
     }
 
+    /**
+     * start a new evaluation of this session's recommendations in the background, superseding any already in progress.
+     * call this whenever anything recommendations depend on has changed
+     */
     public void runRecommendations() {
-        Runnable runnable = new Runnable() {
-            @Override
-            public void run() {
-                deleteAllCards();
-                getAllCards();
-            }
-        };
-        executorService.submit(runnable);
+        RecommendationRun run = startRecommendationRun();
+        try {
+            taskExecutor.submit(sessionId, new Runnable() {
+                @Override
+                public void run() {
+                    executeRecommendationRun(run);
+                    if ( ! run.isSuperseded() ) {
+                        publishEvent(SessionEventService.EVENT_RECOMMENDATIONS_UPDATED);
+                    }
+                }
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    logger.warn("recommendation run " + run.getVersion() + " was rejected for session=" + sessionId);
+                    run.finish(new RejectedExecutionException("recommendation run " + run.getVersion() +
+                            " was rejected for session=" + sessionId));
+                }
+            });
+
+        } catch (RejectedExecutionException e) {
+            logger.warn("couldn't schedule recommendation run for session=" + sessionId + " - " + e.getMessage());
+            run.finish(e);
+        }
+    }
+
+    /**
+     * @return the most recent recommendation run, or null if there hasn't been one
+     */
+    public RecommendationRun getRecommendationRun() {
+        synchronized (recommendationLock) {
+            return recommendationRun;
+        }
     }
 
     public void clearCaches() {
         logger.info("clearing caches for session=" + sessionId);
         cache.invalidateAll();
-        cardCache.invalidateAll();
         bundleCache.invalidateAll();
+        hypotensionDetectionState.reset();
+        localGoals.reset();
+        incrementAllVersions();
+        trendCache.invalidateAll();     // after the version changes, so no trend built before it can be cached
+
+        // the current recommendation run was working from what's just been cleared.  it's left to finish, but its
+        // results are no longer served, and the next request for them starts a new run
+        synchronized (recommendationLock) {
+            cardCache.invalidateAll();
+            recommendationRunStale = recommendationRun != null;
+        }
     }
 
     public void clearVitalsCaches() {
         logger.info("clearing BP and Pulse caches for session=" + sessionId);
         cache.invalidate(CACHE_BP);
         cache.invalidate(CACHE_PULSE);
+        incrementVersion(VERSION_BP);
+        incrementVersion(VERSION_PULSE);
+        trendCache.invalidateAll();     // after the version changes, so no trend built before it can be cached
+        publishEvent(SessionEventService.EVENT_VITALS_CHANGED);
+    }
+
+    /**
+     * @return the estimated memory retained by this workspace's weight-bounded caches, in KB
+     */
+    public long getCacheWeight() {
+        long total = 0;
+        for (Long weight : getEvictableEntryWeights().values()) {
+            total += weight;
+        }
+        return total;
+    }
+
+    /**
+     * @return the weight, in KB, of each entry that may be evicted to save memory, by key
+     */
+    public Map<String, Long> getEvictableEntryWeights() {
+        Map<String, Long> map = new HashMap<>();
+        Policy.Eviction cacheEviction = (Policy.Eviction) cache.policy().eviction().get();
+        for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) cache.asMap()).entrySet()) {
+            map.put((String) entry.getKey(), currentWeightOf(cacheEviction, entry.getKey(), entry.getValue()));
+        }
+        Policy.Eviction<String, CompactableValue<Bundle>> bundleCacheEviction = bundleCache.policy().eviction().get();
+        for (Map.Entry<String, CompactableValue<Bundle>> entry : bundleCache.asMap().entrySet()) {
+            map.put(entry.getKey(), currentWeightOf(bundleCacheEviction, entry.getKey(), entry.getValue()));
+        }
+        return map;
+    }
+
+    /**
+     * compact any Bundles that haven't been accessed in the specified period.  they're re-inflated the next time
+     * they're requested
+     * @return the number of entries compacted
+     */
+    public int compactIdleEntries(long idleMillis) {
+        int count = 0;
+        for (CompactableValue<?> value : getCompactableValues()) {
+            if (value.compactIfIdle(idleMillis)) {
+                count ++;
+            }
+        }
+        if (count > 0) {
+            logger.debug("compacted " + count + " idle cache entries for session=" + sessionId);
+        }
+        return count;
+    }
+
+    /**
+     * @return the estimated memory currently saved by compacting idle entries, in bytes
+     */
+    public long getCompactionSavings() {
+        long total = 0;
+        for (CompactableValue<?> value : getCompactableValues()) {
+            total += value.getSavedSize();
+        }
+        return total;
+    }
+
+    /**
+     * evict an entry to save memory.  it will be rebuilt by its loader the next time it's requested
+     */
+    public void evict(String key) {
+        logger.debug("evicting " + key + " for session=" + sessionId);
+        cache.invalidate(key);
+        bundleCache.invalidate(key);
+
+        // explicit invalidation doesn't trigger the eviction listener
+        AtomicLong version = versions.get(key);
+        if (version != null) version.incrementAndGet();
     }
 
     public void shutdown() {
         logger.info("shutting down workspace for session=" + sessionId);
-        executorService.shutdown();
+        shutdown = true;
+        taskExecutor.cancel(sessionId);
+
+        ctx.getBean(SessionEventService.class).completeAll(sessionId);
 
         clearCaches();
 
@@ -282,6 +521,61 @@ public class UserWorkspace {
         shutdownJobs();
     }
 
+    private void runStages(Iterator<List<Runnable>> stages, AtomicBoolean failed, Runnable onComplete) {
+        if (shutdown || ! stages.hasNext()) {
+            onComplete.run();
+            return;
+        }
+
+        List<Runnable> stage = stages.next();
+        AtomicInteger remaining = new AtomicInteger(stage.size());
+        Runnable stageTaskComplete = new Runnable() {
+            @Override
+            public void run() {
+                if (remaining.decrementAndGet() == 0) {
+                    runStages(stages, failed, onComplete);
+                }
+            }
+        };
+
+        // a task the executor refuses after it's waited its turn never runs, so it's accounted for here instead
+        Runnable stageTaskRejected = new Runnable() {
+            @Override
+            public void run() {
+                failed.set(true);
+                logger.warn("workspace population task was rejected for session=" + sessionId);
+                stageTaskComplete.run();
+            }
+        };
+
+        for (Runnable task : stage) {
+            try {
+                taskExecutor.submit(sessionId, new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            task.run();
+
+                        } catch (RuntimeException e) {
+                            failed.set(true);
+                            logger.warn("caught " + e.getClass().getName() + " populating workspace for session=" +
+                                    sessionId + " - " + e.getMessage(), e);
+
+                        } finally {
+                            stageTaskComplete.run();
+                        }
+                    }
+                }, stageTaskRejected);
+
+            } catch (RejectedExecutionException e) {
+                failed.set(true);
+                logger.warn("couldn't schedule workspace population task for session=" + sessionId + " - " +
+                        e.getMessage());
+                stageTaskComplete.run();
+            }
+        }
+    }
+
     private void shutdownJobs() {
         logger.info("clearing triggers and jobs for session=" + sessionId);
         Scheduler scheduler = ctx.getBean(Scheduler.class);
@@ -302,12 +596,13 @@ public class UserWorkspace {
         }
     }
 
-    private void setupAutoShutdownJob() {
+    // if this workspace was restored from stored state, its auto-shutdown job may already have been scheduled by
+    // another node
+    private void setupAutoShutdownJob(boolean restored) {
         Scheduler scheduler = ctx.getBean(Scheduler.class);
         Date shutdownTimestamp = deriveExpirationTimestamp(fhirCredentialsWithClient.getCredentials().getBearerToken());
 
         JobDataMap jobDataMap = new JobDataMap();
-        jobDataMap.put(ShutdownWorkspaceJob.JOBDATA_APPLICATIONCONTEXT, ctx);
         jobDataMap.put(ShutdownWorkspaceJob.JOBDATA_SESSIONID, sessionId);
 
         JobKey jobKey = new JobKey("shutdownWorkspaceJob-" + sessionId, sessionId);
@@ -336,8 +631,10 @@ public class UserWorkspace {
 
             if (scheduler.checkExists(jobKey)) {
                 JobDetail jobDetail = scheduler.getJobDetail(jobKey);
-                logger.warn("found pre-existing auto-shutdown job for session " + sessionId +
-                        ", but this should have been cleared earlier, it shouldn't have gotten this far.  ???");
+                if ( ! restored ) {
+                    logger.warn("found pre-existing auto-shutdown job for session " + sessionId +
+                            ", but this should have been cleared earlier, it shouldn't have gotten this far.  ???");
+                }
                 logger.info("deleting job: " + jobDetail.getDescription());
                 scheduler.deleteJob(jobKey);
             }
@@ -370,6 +667,232 @@ public class UserWorkspace {
         }
     }
 
+    // Caffeine only weighs entries when they're written, so entries that have since been compacted are weighed by
+    // their current size instead
+    private long currentWeightOf(Policy.Eviction eviction, Object key, Object value) {
+        if (value instanceof CompactableValue) {
+            return ((CompactableValue<?>) value).getEstimatedSize() / 1024 + 1;
+        }
+        return eviction.weightOf(key).orElse(0);
+    }
+
+    private void saveState(Map<String, byte[]> snapshot) {
+        WorkspaceState state = new WorkspaceState(sessionId, fhirCredentialsWithClient.getCredentials(), audience,
+                randomizationGroup, requiresEnrollment, hasCompletedStudy, omronTokenData);
+        state.setSnapshot(snapshot);
+        try {
+            stateStore.save(state);
+
+        } catch (Exception e) {
+            logger.error("caught " + e.getClass().getName() + " saving state for session=" + sessionId + " - " +
+                    e.getMessage(), e);
+        }
+    }
+
+    private Map<String, byte[]> buildSnapshot() {
+        Map<String, byte[]> snapshot = new LinkedHashMap<>();
+        try {
+            Object encounters = cache.asMap().get(CACHE_ENCOUNTER);
+            if (encounters instanceof CompactableValue) {
+                snapshot.put(CACHE_ENCOUNTER, ((CompactableValue<?>) encounters).toBytes());
+            }
+            for (Map.Entry<String, CompactableValue<Bundle>> entry : bundleCache.asMap().entrySet()) {
+                snapshot.put(entry.getKey(), entry.getValue().toBytes());
+            }
+
+        } catch (IOException e) {
+            logger.warn("caught " + e.getClass().getName() + " building snapshot for session=" + sessionId + " - " +
+                    e.getMessage());
+            return null;
+        }
+        return snapshot;
+    }
+
+    private List<CompactableValue<?>> getCompactableValues() {
+        List<CompactableValue<?>> list = new ArrayList<>(bundleCache.asMap().values());
+        Object encounters = cache.asMap().get(CACHE_ENCOUNTER);      // asMap() doesn't count toward cache stats
+        if (encounters instanceof CompactableValue) {
+            list.add((CompactableValue<?>) encounters);
+        }
+        return list;
+    }
+
+    // wraps a cache loader so that the values it builds may be compacted when idle
+    private <T> Function<String, CompactableValue<T>> compactable(CompactableValue.Codec<T> codec, Function<String, T> function) {
+        return new Function<String, CompactableValue<T>>() {
+            @Override
+            public CompactableValue<T> apply(String s) {
+                return new CompactableValue<>(function.apply(s), codec);
+            }
+        };
+    }
+
+    private static final CompactableValue.Codec<Bundle> BUNDLE_CODEC = new CompactableValue.Codec<>() {
+        @Override
+        public byte[] encode(Bundle bundle) throws IOException {
+            return FhirUtil.toCompressedJson(bundle);
+        }
+
+        @Override
+        public Bundle decode(byte[] bytes) throws IOException {
+            return FhirUtil.fromCompressedJson(bytes, Bundle.class);
+        }
+    };
+
+    // Encounters are stored under each of their keys, and looked up by the ID they had when they were retrieved, so
+    // store each one once, with that ID as its fullUrl, and rebuild the keys from it
+    private static final CompactableValue.Codec<Map<String, Encounter>> ENCOUNTER_MAP_CODEC = new CompactableValue.Codec<>() {
+        @Override
+        public byte[] encode(Map<String, Encounter> map) throws IOException {
+            Bundle bundle = new Bundle();
+            bundle.setType(Bundle.BundleType.COLLECTION);
+            Set<Encounter> encounters = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Encounter encounter : map.values()) {
+                if (encounters.add(encounter)) {
+                    bundle.addEntry().setFullUrl(encounter.getId()).setResource(encounter);
+                }
+            }
+            return FhirUtil.toCompressedJson(bundle);
+        }
+
+        @Override
+        public Map<String, Encounter> decode(byte[] bytes) throws IOException {
+            List<Encounter> list = new ArrayList<>();
+            for (Bundle.BundleEntryComponent entry : FhirUtil.fromCompressedJson(bytes, Bundle.class).getEntry()) {
+                Encounter encounter = (Encounter) entry.getResource();
+                encounter.setId(entry.getFullUrl());
+                list.add(encounter);
+            }
+            return buildEncounterMap(list);
+        }
+    };
+
+    private static Map<String, Encounter> buildEncounterMap(List<Encounter> encounters) {
+        Map<String, Encounter> map = new LinkedHashMap<>();
+        for (Encounter encounter : encounters) {
+            for (String key : FhirUtil.buildKeys(encounter.getId(), encounter.getIdentifier())) {
+                map.put(key, encounter);
+            }
+        }
+        return map;
+    }
+
+    // wraps a cache loader so that its duration and outcome are recorded by MetricsService under the specified name
+    private <T> Function<String, T> timed(String loader, Function<String, T> function) {
+        return new Function<String, T>() {
+            @Override
+            public T apply(String s) {
+                MetricsService.Sample sample = metricsService.startSample(sessionId);
+                boolean success = false;
+                try {
+                    T t = function.apply(s);
+                    success = true;
+                    return t;
+
+                } finally {
+                    metricsService.recordLoader(sample, loader, success);
+                }
+            }
+        };
+    }
+
+    private RecommendationRun startRecommendationRun() {
+        synchronized (recommendationLock) {
+            RecommendationRun run = new RecommendationRun(++ recommendationVersion);
+            if (recommendationRun != null) {
+                recommendationRun.supersede(run);
+            }
+            recommendationRun = run;
+            recommendationRunStale = false;
+            cardCache.invalidateAll();
+            logger.debug("started recommendation run " + run.getVersion() + " for session=" + sessionId);
+            return run;
+        }
+    }
+
+    // @return null if a current run is already in progress
+    private RecommendationRun startRecommendationRunIfIdle() {
+        synchronized (recommendationLock) {
+            if (recommendationRun != null && ! recommendationRun.isFinished() && ! recommendationRunStale) {
+                logger.debug("recommendation run " + recommendationRun.getVersion() + " is already in progress for " +
+                        "session=" + sessionId);
+                return null;
+            }
+            return startRecommendationRun();
+        }
+    }
+
+    // evaluate each hook in turn, stopping early if the run is superseded
+    // @return true if every hook evaluated was evaluated successfully
+    private boolean executeRecommendationRun(RecommendationRun run) {
+        long start = System.currentTimeMillis();
+        logger.info("BEGIN recommendation run " + run.getVersion() + " for session=" + sessionId);
+
+        RecommendationService svc = ctx.getBean(RecommendationService.class);
+        boolean success = true;
+        Throwable finishReason = null;
+        try {
+            List<String> hookIds = new ArrayList<>();
+            for (CDSHook hook : svc.getOrderedCDSHooks(sessionId)) {
+                hookIds.add(hook.getId());
+            }
+            run.setHooks(hookIds);
+
+            for (String hookId : hookIds) {
+                if (run.isSuperseded() || shutdown) {
+                    logger.info("recommendation run " + run.getVersion() + " for session=" + sessionId +
+                            " is no longer current - stopping");
+                    break;
+                }
+
+                run.setRunning(hookId);
+                MetricsService.Sample sample = metricsService.startSample(sessionId);
+                boolean hookSuccess = false;
+                try {
+                    List<Card> cards = svc.getCards(sessionId, hookId);
+                    synchronized (recommendationLock) {
+                        if (run == recommendationRun && ! recommendationRunStale) {
+                            cardCache.put(hookId, cards);
+                        }
+                    }
+                    run.complete(hookId, cards);
+                    hookSuccess = true;
+
+                } catch (Exception e) {
+                    logger.error("caught " + e.getClass().getName() + " getting cards for hook=" + hookId + " - " +
+                            e.getMessage(), e);
+
+                    auditService.doAudit(sessionId, AuditSeverity.ERROR, "recommendation exception", "encountered " +
+                            e.getClass().getSimpleName() + " getting recommendations for " + hookId + " - " +
+                            e.getMessage());
+
+                    run.fail(hookId, e);
+                    success = false;
+
+                } finally {
+                    metricsService.recordLoader(sample, LOADER_CARDS, hookSuccess);
+                }
+            }
+
+            if (shutdown) {
+                finishReason = new IllegalStateException("session=" + sessionId + " has shut down");
+            }
+
+        } catch (IOException e) {
+            logger.error("caught " + e.getClass().getName() + " getting hooks for session=" + sessionId + " - " +
+                    e.getMessage(), e);
+            finishReason = e;
+            success = false;
+
+        } finally {
+            run.finish(finishReason);
+            logger.info("DONE recommendation run " + run.getVersion() + " for session=" + sessionId +
+                    " (took " + (System.currentTimeMillis() - start) + "ms)");
+        }
+
+        return success;
+    }
+
 ///////////////////////////////////////////////////////////////////////////////////////
 
     public List<Encounter> getEncounters() {
@@ -395,20 +918,17 @@ public class UserWorkspace {
     }
 
     private Map<String, Encounter> getEncounterMap() {
-        return (Map<String, Encounter>) cache.get(CACHE_ENCOUNTER, new Function<String, Map<String, Encounter>>() {
+        return ((CompactableValue<Map<String, Encounter>>) cache.get(CACHE_ENCOUNTER, compactable(ENCOUNTER_MAP_CODEC,
+                timed(CACHE_ENCOUNTER, new Function<String, Map<String, Encounter>>() {
             @Override
             public Map<String, Encounter> apply(String s) {
                 long start = System.currentTimeMillis();
                 logger.info("BEGIN build Encounters for session=" + sessionId);
 
                 EHRService svc = ctx.getBean(EHRService.class);
-                Map<String, Encounter> map = new LinkedHashMap<>();
+                Map<String, Encounter> map;
                 try {
-                    for (Encounter encounter : svc.getEncounters(sessionId)) {
-                        for (String key : FhirUtil.buildKeys(encounter.getId(), encounter.getIdentifier())) {
-                            map.put(key, encounter);
-                        }
-                    }
+                    map = buildEncounterMap(svc.getEncounters(sessionId));
                 } catch (Exception e) {
                     throw new RuntimeException(e);
                 }
@@ -418,11 +938,11 @@ public class UserWorkspace {
 
                 return map;
             }
-        });
+        })))).get();
     }
 
     public PatientModel getPatient() {
-        return (PatientModel) cache.get(CACHE_PATIENT, new Function<String, PatientModel>() {
+        return (PatientModel) cache.get(CACHE_PATIENT, timed(CACHE_PATIENT, new Function<String, PatientModel>() {
             @Override
             public PatientModel apply(String s) {
                 long start = System.currentTimeMillis();
@@ -441,11 +961,11 @@ public class UserWorkspace {
 
                 return patient;
             }
-        });
+        }));
     }
 
     public Bundle getProtocolObservations() {
-        return bundleCache.get(CACHE_PROTOCOL, new Function<String, Bundle>() {
+        return bundleCache.get(CACHE_PROTOCOL, compactable(BUNDLE_CODEC, timed(CACHE_PROTOCOL, new Function<String, Bundle>() {
             @Override
             public Bundle apply(String s) {
                 long start = System.currentTimeMillis();
@@ -465,11 +985,11 @@ public class UserWorkspace {
 
                 return compositeBundle.getBundle();
             }
-        });
+        }))).get();
     }
 
     public List<BloodPressureModel> getRemoteBloodPressures() {
-        return (List<BloodPressureModel>) cache.get(CACHE_BP, new Function<String, List<BloodPressureModel>>() {
+        return (List<BloodPressureModel>) cache.get(CACHE_BP, timed(CACHE_BP, new Function<String, List<BloodPressureModel>>() {
             @Override
             public List<BloodPressureModel> apply(String s) {
                 long start = System.currentTimeMillis();
@@ -488,11 +1008,53 @@ public class UserWorkspace {
                     throw new RuntimeException(e);
                 }
             }
-        });
+        }));
+    }
+
+    // trends are computed over the merged (remote + local) readings, and depend on the window being charted, so cache
+    // one per (start timestamp, bandwidth) combination.  all of them are invalidated together when vitals change
+    public BloodPressureTrendModel getBloodPressureTrend(Long startTimestamp, Double bandwidthOverride) {
+        String key = startTimestamp + "|" + bandwidthOverride;
+        BloodPressureTrendModel trend = trendCache.getIfPresent(key);
+        if (trend != null) {
+            return trend;
+        }
+
+        // built outside the cache, so that a slow build doesn't hold up anyone else.  concurrent requests for the same
+        // trend share one build, which isn't cached if vitals changed while it was being built
+        String versionTag = getVersionTag(VERSION_BP);
+        trend = singleFlight("BloodPressureTrend-" + key + "-" + versionTag, () ->
+                timed(CACHE_BP_TREND, new Function<String, BloodPressureTrendModel>() {
+            @Override
+            public BloodPressureTrendModel apply(String s) {
+                long start = System.currentTimeMillis();
+                logger.info("BEGIN build Blood Pressure trend for session=" + sessionId + " (key=" + s + ")");
+
+                BloodPressureTrendService svc = ctx.getBean(BloodPressureTrendService.class);
+                try {
+                    BloodPressureTrendModel trend = svc.buildBloodPressureTrend(sessionId, startTimestamp, bandwidthOverride);
+
+                    logger.info("DONE building Blood Pressure trend for session=" + sessionId +
+                            " (systolic=" + trend.getSystolic().size() + ", diastolic=" + trend.getDiastolic().size() +
+                            ", took " + (System.currentTimeMillis() - start) + "ms)");
+
+                    return trend;
+
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }).apply(key));
+
+        trendCache.put(key, trend);
+        if ( ! versionTag.equals(getVersionTag(VERSION_BP)) ) {
+            trendCache.invalidate(key);
+        }
+        return trend;
     }
 
     public List<PulseModel> getRemotePulses() {
-        return (List<PulseModel>) cache.get(CACHE_PULSE, new Function<String, List<PulseModel>>() {
+        return (List<PulseModel>) cache.get(CACHE_PULSE, timed(CACHE_PULSE, new Function<String, List<PulseModel>>() {
             @Override
             public List<PulseModel> apply(String s) {
                 long start = System.currentTimeMillis();
@@ -511,11 +1073,11 @@ public class UserWorkspace {
                     throw new RuntimeException(e);
                 }
             }
-        });
+        }));
     }
 
     public Bundle getEncounterDiagnosisConditions() {
-        return bundleCache.get(CACHE_CONDITION_ENCOUNTER_DIAGNOSIS, new Function<String, Bundle>() {
+        return bundleCache.get(CACHE_CONDITION_ENCOUNTER_DIAGNOSIS, compactable(BUNDLE_CODEC, timed(CACHE_CONDITION_ENCOUNTER_DIAGNOSIS, new Function<String, Bundle>() {
             @Override
             public Bundle apply(String s) {
                 long start = System.currentTimeMillis();
@@ -535,11 +1097,11 @@ public class UserWorkspace {
 
                 return compositeBundle.getBundle();
             }
-        });
+        }))).get();
     }
 
     public List<AdverseEventModel> getRemoteAdverseEvents() {
-        return (List<AdverseEventModel>) cache.get(CACHE_ADVERSE_EVENT, new Function<String, List<AdverseEventModel>>() {
+        return (List<AdverseEventModel>) cache.get(CACHE_ADVERSE_EVENT, timed(CACHE_ADVERSE_EVENT, new Function<String, List<AdverseEventModel>>() {
             @Override
             public List<AdverseEventModel> apply(String s) {
                 long start = System.currentTimeMillis();
@@ -558,11 +1120,11 @@ public class UserWorkspace {
                     throw new RuntimeException(e);
                 }
             }
-        });
+        }));
     }
 
     public Bundle getOrderServiceRequests() {
-        return bundleCache.get(CACHE_ORDER_SERVICE_REQUEST, new Function<String, Bundle>() {
+        return bundleCache.get(CACHE_ORDER_SERVICE_REQUEST, compactable(BUNDLE_CODEC, timed(CACHE_ORDER_SERVICE_REQUEST, new Function<String, Bundle>() {
             @Override
             public Bundle apply(String s) {
                 long start = System.currentTimeMillis();
@@ -582,11 +1144,11 @@ public class UserWorkspace {
 
                 return compositeBundle.getBundle();
             }
-        });
+        }))).get();
     }
 
     public List<GoalModel> getRemoteGoals() {
-        return (List<GoalModel>) cache.get(CACHE_GOAL, new Function<String, List<GoalModel>>() {
+        return (List<GoalModel>) cache.get(CACHE_GOAL, timed(CACHE_GOAL, new Function<String, List<GoalModel>>() {
             @Override
             public List<GoalModel> apply(String s) {
                 long start = System.currentTimeMillis();
@@ -605,7 +1167,7 @@ public class UserWorkspace {
                     throw new RuntimeException(e);
                 }
             }
-        });
+        }));
     }
 
     private void doBPGoalCheck() {                  // ONLY CHECK REMOTE GOALS!  local BP goal update will be set via GoalsController.updatebp().
@@ -621,7 +1183,7 @@ public class UserWorkspace {
     }
 
     public List<MedicationModel> getMedications() {
-        return (List<MedicationModel>) cache.get(CACHE_MEDICATION, new Function<String, List<MedicationModel>>() {
+        return (List<MedicationModel>) cache.get(CACHE_MEDICATION, timed(CACHE_MEDICATION, new Function<String, List<MedicationModel>>() {
             @Override
             public List<MedicationModel> apply(String s) {
                 long start = System.currentTimeMillis();
@@ -640,11 +1202,11 @@ public class UserWorkspace {
                     throw new RuntimeException(e);
                 }
             }
-        });
+        }));
     }
 
     public Bundle getProblemListConditions() {
-        return bundleCache.get(CACHE_PROBLEM_LIST_CONDITION, new Function<String, Bundle>() {
+        return bundleCache.get(CACHE_PROBLEM_LIST_CONDITION, compactable(BUNDLE_CODEC, timed(CACHE_PROBLEM_LIST_CONDITION, new Function<String, Bundle>() {
             @Override
             public Bundle apply(String s) {
                 long start = System.currentTimeMillis();
@@ -664,11 +1226,11 @@ public class UserWorkspace {
 
                 return compositeBundle.getBundle();
             }
-        });
+        }))).get();
     }
 
     public Bundle getOtherSupplementalResources() {
-        return bundleCache.get(CACHE_OTHER_SUPPLEMENTAL_RESOURCES, new Function<String, Bundle>() {
+        return bundleCache.get(CACHE_OTHER_SUPPLEMENTAL_RESOURCES, compactable(BUNDLE_CODEC, timed(CACHE_OTHER_SUPPLEMENTAL_RESOURCES, new Function<String, Bundle>() {
             @Override
             public Bundle apply(String s) {
                 long start = System.currentTimeMillis();
@@ -694,13 +1256,28 @@ public class UserWorkspace {
 
                 return compositeBundle.getBundle();
             }
-        });
+        }))).get();
+    }
+
+    // the home page shows patients a link to report adverse events, which takes several REDCap calls to determine
+    private void prefetchAESurveyLink() {
+        REDCapService svc = ctx.getBean(REDCapService.class);
+        if (svc.isRedcapEnabled() && Audience.PATIENT.equals(audience)) {
+            try {
+                svc.getAESurveyLink(redcapId);
+
+            } catch (Exception e) {
+                logger.warn("caught " + e.getClass().getName() + " prefetching AE survey link for session=" +
+                        sessionId + " - " + e.getMessage());
+            }
+        }
     }
 
     private void refreshHypotensionAdverseEvents() {
         HypotensionAdverseEventService svc = ctx.getBean(HypotensionAdverseEventService.class);
         try {
             svc.refresh(sessionId);
+            incrementVersion(VERSION_ADVERSE_EVENT);
             logger.info("DONE refreshing hypotension AdverseEvent resources for session=" + sessionId);
 
         } catch (DataException e) {
@@ -709,52 +1286,34 @@ public class UserWorkspace {
         }
     }
 
-    public Map<String, List<Card>> getAllCards() {
-        Map<String, List<Card>> map = new LinkedHashMap<>();
-        RecommendationService svc = ctx.getBean(RecommendationService.class);
-        try {
-            for (CDSHook hook : svc.getOrderedCDSHooks(sessionId)) {
-                try {
-                    map.put(hook.getId(), getCards(hook.getId()));
-
-                } catch (Exception e) {
-                    logger.error("caught " + e.getClass().getName() + " getting cards for hook=" + hook.getId() + " - " +
-                            e.getMessage(), e);
-
-                    auditService.doAudit(sessionId, AuditSeverity.ERROR, "recommendation exception", "encountered " +
-                            e.getClass().getSimpleName() + " getting recommendations for " + hook.getId() + " - " +
-                            e.getMessage());
-
-                    throw new RuntimeException(e);
-                }
+    /**
+     * get the specified hook's cards.  if they haven't been generated yet, wait for the current recommendation run to
+     * generate them, starting one if there hasn't been one.  this doesn't tie up a thread while waiting
+     * @return a future that completes exceptionally with IllegalArgumentException if there's no such hook
+     */
+    public CompletableFuture<List<Card>> getCardsAsync(String recommendationId) {
+        synchronized (recommendationLock) {
+            List<Card> cards = (List<Card>) cardCache.getIfPresent(recommendationId);
+            if (cards != null) {
+                return CompletableFuture.completedFuture(cards);
             }
-        } catch (IOException ioe) {
-            throw new RuntimeException(ioe);
-        }
-        return map;
-    }
 
-    public List<Card> getCards(String recommendationId) {
-        return (List<Card>) cardCache.get(recommendationId, new Function<String, List<Card>>() {
-            @Override
-            public List<Card> apply(String s) {
-                long start = System.currentTimeMillis();
-                logger.info("BEGIN build Cards for session=" + sessionId);
-
-                RecommendationService svc = ctx.getBean(RecommendationService.class);
-                try {
-                    List<Card> list = svc.getCards(sessionId, s);
-
-                    logger.info("DONE building Cards for session=" + sessionId +
-                            " (size=" + list.size() + ", took " + (System.currentTimeMillis() - start) + "ms)");
-
-                    return list;
+            // a finished run has already answered for every hook it knows of: with cards (which may since have left
+            // the cache), or with the error it encountered.  re-running every hook wouldn't change those answers, as
+            // anything that would starts a new run anyway.  the only reason to start over is if the run couldn't
+            // even determine which hooks there are (e.g. CQF-Ruler was unreachable), or if the caches have been cleared
+            // since it began
+            if (recommendationRun == null || recommendationRunStale ||
+                    (recommendationRun.isFinished() && recommendationRun.getStatuses().isEmpty())) {
+                runRecommendations();
+            }
 
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
+            CompletableFuture<List<Card>> future = recommendationRun.getResult(recommendationId);
+            if (recommendationRun.isFinished() && future.isDone() && ! future.isCompletedExceptionally()) {
+                cardCache.put(recommendationId, future.join());
             }
-        });
+            return future;
+        }
     }
 
     public void deleteCards(String recommendationId) {
@@ -793,6 +1352,7 @@ public class UserWorkspace {
     public void clearSupplementalData() {
         HomeBloodPressureReadingService hbprService = ctx.getBean(HomeBloodPressureReadingService.class);
         hbprService.deleteAll(sessionId);
+        hypotensionDetectionState.reset();
 
         // todo : also clear hypotension adverse events
 
@@ -814,6 +1374,10 @@ public class UserWorkspace {
 
         // todo : clear Omron token data
         // todo : cancel any scheduled tasks that may exist for refreshing Omron token data
+
+        clearVitalsCaches();
+        incrementVersion(VERSION_OTHER_GOALS);
+        incrementVersion(VERSION_ADVERSE_EVENT);
     }
 
     public VendorTransformer getVendorTransformer() {
@@ -830,6 +1394,29 @@ public class UserWorkspace {
 
     public void setOmronTokenData(MyOmronTokenData omronTokenData) {
         this.omronTokenData = omronTokenData;
+        saveState();
+    }
+
+    /**
+     * store this workspace's state, so that it can be rebuilt on another node.  call whenever anything in
+     * WorkspaceState changes
+     */
+    public void saveState() {
+        saveState(null);
+    }
+
+    /**
+     * seed caches with Bundles from a snapshot taken on another node.  they're only inflated if they're accessed
+     */
+    void restoreSnapshot(Map<String, byte[]> snapshot) {
+        for (Map.Entry<String, byte[]> entry : snapshot.entrySet()) {
+            if (CACHE_ENCOUNTER.equals(entry.getKey())) {
+                cache.put(CACHE_ENCOUNTER, CompactableValue.fromBytes(entry.getValue(), ENCOUNTER_MAP_CODEC));
+            } else {
+                bundleCache.put(entry.getKey(), CompactableValue.fromBytes(entry.getValue(), BUNDLE_CODEC));
+            }
+        }
+        logger.info("restored " + snapshot.size() + " cache entries from snapshot for session=" + sessionId);
     }
 
     public void initiateSynchronousOmronUpdate() {
@@ -851,6 +1438,7 @@ public class UserWorkspace {
                 logger.info("BEGIN Omron synchronization for session=" + sessionId);
                 try {
                     omronSynchronizing = true;
+                    publishOmronStatus();
                     omronService.synchronize(sessionId);
 
                 } catch (Exception e) {
@@ -860,13 +1448,19 @@ public class UserWorkspace {
                     omronSynchronizing = false;
                     omronCurrentItem = null;
                     omronTotalItems = null;
+                    publishOmronStatus();
                 }
                 logger.info("DONE Omron synchronization for session=" + sessionId +
                         " (took " + (System.currentTimeMillis() - start) + "ms)");
             }
         };
 
-        executorService.submit(runnable);
+        try {
+            taskExecutor.submit(sessionId, runnable);
+
+        } catch (RejectedExecutionException e) {
+            logger.warn("couldn't schedule Omron synchronization for session=" + sessionId + " - " + e.getMessage());
+        }
     }
 
     public Boolean isOmronSynchronizing() {
@@ -878,6 +1472,7 @@ public class UserWorkspace {
         if (omronSynchronizing) {
             omronCurrentItem = current;
             omronTotalItems = total;
+            publishOmronStatus();
 
         } else {
             logger.warn("not setting Omron sync progress (current=" + current + ", total=" + total + ") because omronSynchronizing=false");
@@ -901,4 +1496,44 @@ public class UserWorkspace {
             return new OmronStatusData(OmronStatus.DISABLED, null, null, null);
         }
     }
+
+    /**
+     * @param key one of the VERSION_ keys
+     * @return an opaque tag identifying the current version of the data represented by key, suitable for use as an
+     *         ETag.  the tag changes whenever that data may have changed, and is unique to this workspace
+     */
+    public String getVersionTag(String key) {
+        long version = versions.computeIfAbsent(key, k -> new AtomicLong()).get();
+        return key + "-" + versionEpoch + "-" + version;
+    }
+
+    public void incrementVersion(String key) {
+        versions.computeIfAbsent(key, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * perform a computation deriving a view from this workspace's data, unless the same computation is already in
+     * progress, in which case wait for it and share its result.  the result must not be modified
+     * @param key identifies the computation.  include the version tag of any data it depends on, so that callers
+     *            arriving after that data changes don't share a computation that started before
+     */
+    public <T, E extends Exception> T singleFlight(String key, SingleFlight.Computation<T, E> computation) throws E {
+        return singleFlight.execute(key, computation);
+    }
+
+    public void publishEvent(String eventName) {
+        ctx.getBean(SessionEventService.class).publish(sessionId, eventName);
+    }
+
+    private void publishOmronStatus() {
+        ctx.getBean(SessionEventService.class).publish(sessionId, SessionEventService.EVENT_OMRON_STATUS,
+                getOmronSynchronizationStatus());
+    }
+
+    // any tag handed out was registered in the map by getVersionTag(), so bumping every registered key is sufficient
+    private void incrementAllVersions() {
+        for (AtomicLong version : versions.values()) {
+            version.incrementAndGet();
+        }
+    }
 }
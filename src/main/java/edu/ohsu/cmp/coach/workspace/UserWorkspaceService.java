@@ -1,23 +1,31 @@
 package edu.ohsu.cmp.coach.workspace;
 
+import ca.uhn.fhir.rest.client.api.IGenericClient;
 import edu.ohsu.cmp.coach.exception.ConfigurationException;
 import edu.ohsu.cmp.coach.exception.SessionMissingException;
 import edu.ohsu.cmp.coach.fhir.FhirConfigManager;
 import edu.ohsu.cmp.coach.fhir.FhirQueryManager;
 import edu.ohsu.cmp.coach.fhir.transform.VendorTransformer;
+import edu.ohsu.cmp.coach.http.Dependency;
+import edu.ohsu.cmp.coach.http.OutboundCallGuard;
 import edu.ohsu.cmp.coach.model.Audience;
 import edu.ohsu.cmp.coach.model.MyOmronTokenData;
+import edu.ohsu.cmp.coach.model.fhir.FHIRCredentials;
 import edu.ohsu.cmp.coach.model.fhir.FHIRCredentialsWithClient;
 import edu.ohsu.cmp.coach.model.redcap.RandomizationGroup;
+import edu.ohsu.cmp.coach.util.FhirUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -34,17 +42,26 @@ public class UserWorkspaceService {
     @Autowired
     private FhirConfigManager fcm;
 
+    @Autowired
+    private WorkspaceStateStore stateStore;
+
     @Value("${fhir.vendor-transformer-class}")
     private String vendorTransformerClass;
 
+    @Autowired
+    private OutboundCallGuard outboundCallGuard;
+
     private final Map<String, UserWorkspace> map;
 
+    // one lock per session being restored, so that sessions restore concurrently but each is only restored once
+    private final Map<String, Object> restoreLocks = new ConcurrentHashMap<>();
+
     public UserWorkspaceService() {
         map = new ConcurrentHashMap<>();
     }
 
     public boolean exists(String sessionId) {
-        return map.containsKey(sessionId);
+        return map.containsKey(sessionId) || stateStore.exists(sessionId);
     }
 
     public void init(String sessionId, Audience audience, RandomizationGroup randomizationGroup, boolean requiresEnrollment, boolean hasCompletedStudy,
@@ -55,8 +72,9 @@ public class UserWorkspaceService {
                         " during init, which we shut down.  this is weird, as this should have been cleared earlier.  ???");
             }
 
-            UserWorkspace workspace = new UserWorkspace(ctx, sessionId, audience, randomizationGroup, requiresEnrollment, hasCompletedStudy, fcc, fqm, fcm);
+            UserWorkspace workspace = new UserWorkspace(ctx, sessionId, audience, randomizationGroup, requiresEnrollment, hasCompletedStudy, fcc, fqm, fcm, false);
             workspace.setVendorTransformer(buildVendorTransformer(workspace));
+            workspace.saveState();
             map.put(sessionId, workspace);
 
         } catch (Exception e) {
@@ -65,14 +83,23 @@ public class UserWorkspaceService {
     }
 
     public UserWorkspace get(String sessionId) throws SessionMissingException {
-        if (map.containsKey(sessionId)) {
-            return map.get(sessionId);
+        UserWorkspace workspace = map.get(sessionId);
+        if (workspace == null) {
+            workspace = restore(sessionId);
+        }
+
+        if (workspace != null) {
+            return workspace;
 
         } else {
             throw new SessionMissingException(sessionId);
         }
     }
 
+    public List<UserWorkspace> getAll() {
+        return new ArrayList<>(map.values());
+    }
+
     public UserWorkspace getByOmronUserId(String omronUserId) throws SessionMissingException {
         for (UserWorkspace workspace : map.values()) {
             MyOmronTokenData tokenData = workspace.getOmronTokenData();
@@ -80,16 +107,95 @@ public class UserWorkspaceService {
                 return workspace;
             }
         }
+
+        String sessionId = stateStore.findSessionIdByOmronUserId(omronUserId);
+        if (sessionId != null) {
+            return get(sessionId);
+        }
+
         throw new SessionMissingException("no session found for Omron User with id=" + omronUserId);
     }
 
     public boolean shutdown(String sessionId) {
-        if (map.containsKey(sessionId)) {
-            UserWorkspace workspace = map.remove(sessionId);
+        boolean stored = stateStore.exists(sessionId);
+        stateStore.remove(sessionId);
+
+        UserWorkspace workspace = map.remove(sessionId);
+        if (workspace != null) {
             workspace.shutdown();
-            return true;
         }
-        return false;
+
+        return stored || workspace != null;
+    }
+
+    /**
+     * shut down this node's copies of workspaces whose sessions have ended elsewhere, e.g. because their
+     * auto-shutdown job ran on another node
+     */
+    @Scheduled(fixedDelayString = "${workspace.state-store.reconcile-interval-ms}")
+    public void reconcile() {
+        for (String sessionId : new ArrayList<>(map.keySet())) {
+            if ( ! stateStore.exists(sessionId) ) {
+                logger.info("session=" + sessionId + " no longer exists in the state store - shutting down local workspace");
+                UserWorkspace workspace = map.remove(sessionId);
+                if (workspace != null) {
+                    workspace.shutdown();
+                }
+            }
+        }
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    // rebuild a workspace created on another node from its stored state.  concurrent requests for the same session
+    // wait for the first to restore it, rather than each building one
+    private UserWorkspace restore(String sessionId) {
+        Object lock = restoreLocks.computeIfAbsent(sessionId, k -> new Object());
+        try {
+            synchronized (lock) {
+                return doRestore(sessionId);
+            }
+
+        } finally {
+            restoreLocks.remove(sessionId, lock);
+        }
+    }
+
+    private UserWorkspace doRestore(String sessionId) {
+        UserWorkspace workspace = map.get(sessionId);
+        if (workspace != null) return workspace;
+
+        WorkspaceState state = stateStore.load(sessionId);
+        if (state == null) return null;
+
+        logger.info("restoring workspace for session=" + sessionId + " from stored state");
+
+        try {
+            FHIRCredentials credentials = state.getCredentials();
+            IGenericClient client = FhirUtil.buildClient(credentials.getServerURL(), credentials.getBearerToken(), outboundCallGuard.getTimeout(Dependency.EHR));
+
+            workspace = new UserWorkspace(ctx, sessionId, state.getAudience(), state.getRandomizationGroup(),
+                    state.isRequiresEnrollment(), state.isHasCompletedStudy(),
+                    new FHIRCredentialsWithClient(credentials, client), fqm, fcm, true);
+            workspace.setVendorTransformer(buildVendorTransformer(workspace));
+            if (state.getOmronTokenData() != null) {
+                workspace.setOmronTokenData(state.getOmronTokenData());
+            }
+            if (state.getSnapshot() != null) {
+                workspace.restoreSnapshot(state.getSnapshot());
+            }
+
+        } catch (Exception e) {
+            logger.error("caught " + e.getClass().getName() + " restoring workspace for session=" + sessionId + " - " +
+                    e.getMessage(), e);
+            return null;
+        }
+
+        map.put(sessionId, workspace);
+        workspace.populate();
+        return workspace;
     }
 
     private VendorTransformer buildVendorTransformer(UserWorkspace workspace) throws ClassNotFoundException, NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException {
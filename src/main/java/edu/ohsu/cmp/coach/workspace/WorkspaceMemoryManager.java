@@ -0,0 +1,161 @@
+package edu.ohsu.cmp.coach.workspace;
+
+import com.github.benmanes.caffeine.cache.Weigher;
+import edu.ohsu.cmp.coach.util.MemoryEstimator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the memory used by workspace caches within budget.  Cache entries are weighed by their estimated retained
+ * size, in KB.  Each workspace's caches are bounded individually by Caffeine, and the total across all workspaces is
+ * bounded here, by evicting the largest entries first.  Evicted entries are simply rebuilt by their loaders the next
+ * time they're needed.
+ * <p>
+ * Before weighing, raw FHIR Bundles that have sat idle for a while are compacted into compressed JSON, which is far
+ * smaller than the HAPI object graph and is re-inflated on the next access.
+ */
+@Component
+public class WorkspaceMemoryManager {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final long KB_PER_MB = 1024;
+
+    @Autowired
+    private UserWorkspaceService userWorkspaceService;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${workspace.cache.max-session-weight-mb}")
+    private Long maxSessionWeightMb;
+
+    @Value("${workspace.cache.max-node-weight-mb}")
+    private Long maxNodeWeightMb;
+
+    @Value("${workspace.cache.compact-after-idle-ms}")
+    private Long compactAfterIdleMs;
+
+    private long maxNodeWeight;
+    private volatile long nodeWeight = 0;
+    private volatile long compactionSavings = 0;
+    private Counter evictions;
+    private Counter compactions;
+
+    @PostConstruct
+    public void init() {
+        maxNodeWeight = maxNodeWeightMb > 0 ?
+                maxNodeWeightMb * KB_PER_MB :
+                Runtime.getRuntime().maxMemory() / 1024 / 3;      // default to a third of the heap
+
+        logger.info("workspace cache budget: " + (maxNodeWeight / KB_PER_MB) + " MB per node, " +
+                maxSessionWeightMb + " MB per session");
+
+        Gauge.builder("coach.workspace.cache.weight", this, m -> m.nodeWeight * 1024.0)
+                .description("estimated memory retained by all workspace caches")
+                .baseUnit("bytes")
+                .register(registry);
+        evictions = Counter.builder("coach.workspace.cache.budget.evictions")
+                .description("workspace cache entries evicted to keep the node within its memory budget")
+                .register(registry);
+        Gauge.builder("coach.workspace.cache.compaction.saved", this, m -> m.compactionSavings)
+                .description("estimated memory saved by compacting idle workspace Bundles")
+                .baseUnit("bytes")
+                .register(registry);
+        compactions = Counter.builder("coach.workspace.cache.compactions")
+                .description("idle workspace Bundles compacted into compressed JSON")
+                .register(registry);
+    }
+
+    public Weigher<Object, Object> getWeigher() {
+        return (key, value) -> (int) Math.min(Integer.MAX_VALUE, MemoryEstimator.estimate(value) / 1024 + 1);
+    }
+
+    /**
+     * @return the maximum weight of each workspace cache, in KB
+     */
+    public long getMaxSessionWeight() {
+        return maxSessionWeightMb * KB_PER_MB;
+    }
+
+    @Scheduled(fixedDelayString = "${workspace.cache.budget-check-interval-ms}")
+    public void enforceBudget() {
+        List<UserWorkspace> workspaces = userWorkspaceService.getAll();
+
+        if (compactAfterIdleMs > 0) {
+            compactIdleEntries(workspaces);
+        }
+
+        long total = 0;
+        for (UserWorkspace workspace : workspaces) {
+            total += workspace.getCacheWeight();
+        }
+        nodeWeight = total;
+
+        if (total <= maxNodeWeight) return;
+
+        logger.info("workspace caches are over budget (" + total + " KB > " + maxNodeWeight + " KB) - evicting largest entries");
+
+        List<Candidate> candidates = new ArrayList<>();
+        for (UserWorkspace workspace : workspaces) {
+            for (Map.Entry<String, Long> entry : workspace.getEvictableEntryWeights().entrySet()) {
+                candidates.add(new Candidate(workspace, entry.getKey(), entry.getValue()));
+            }
+        }
+        candidates.sort((o1, o2) -> Long.compare(o2.weight, o1.weight));       // largest first
+
+        int count = 0;
+        for (Candidate c : candidates) {
+            if (total <= maxNodeWeight) break;
+            c.workspace.evict(c.key);
+            total -= c.weight;
+            count ++;
+        }
+        nodeWeight = total;
+        evictions.increment(count);
+
+        logger.info("evicted " + count + " workspace cache entries (now " + total + " KB)");
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    private void compactIdleEntries(List<UserWorkspace> workspaces) {
+        int count = 0;
+        long savings = 0;
+        for (UserWorkspace workspace : workspaces) {
+            count += workspace.compactIdleEntries(compactAfterIdleMs);
+            savings += workspace.getCompactionSavings();
+        }
+        compactionSavings = savings;
+        compactions.increment(count);
+
+        if (count > 0) {
+            logger.info("compacted " + count + " idle workspace cache entries (now saving " + (savings / 1024) + " KB)");
+        }
+    }
+
+    private static class Candidate {
+        private final UserWorkspace workspace;
+        private final String key;
+        private final long weight;
+
+        private Candidate(UserWorkspace workspace, String key, long weight) {
+            this.workspace = workspace;
+            this.key = key;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package edu.ohsu.cmp.coach.workspace;
+
+import edu.ohsu.cmp.coach.model.Audience;
+import edu.ohsu.cmp.coach.model.MyOmronTokenData;
+import edu.ohsu.cmp.coach.model.fhir.FHIRCredentials;
+import edu.ohsu.cmp.coach.model.redcap.RandomizationGroup;
+
+import java.util.Map;
+
+/**
+ * Everything needed to rebuild a UserWorkspace on any node: the session's credentials and the patient, study and
+ * token data established when it was prepared, plus an optional snapshot of its cached FHIR Bundles, each as
+ * compressed JSON, by cache key.
+ */
+public class WorkspaceState {
+    private String sessionId;
+    private FHIRCredentials credentials;
+    private Audience audience;
+    private RandomizationGroup randomizationGroup;
+    private boolean requiresEnrollment;
+    private boolean hasCompletedStudy;
+    private MyOmronTokenData omronTokenData;
+
+    private transient Map<String, byte[]> snapshot = null;     // stored separately, as it may be large
+
+    public WorkspaceState(String sessionId, FHIRCredentials credentials, Audience audience,
+                          RandomizationGroup randomizationGroup, boolean requiresEnrollment, boolean hasCompletedStudy,
+                          MyOmronTokenData omronTokenData) {
+        this.sessionId = sessionId;
+        this.credentials = credentials;
+        this.audience = audience;
+        this.randomizationGroup = randomizationGroup;
+        this.requiresEnrollment = requiresEnrollment;
+        this.hasCompletedStudy = hasCompletedStudy;
+        this.omronTokenData = omronTokenData;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public FHIRCredentials getCredentials() {
+        return credentials;
+    }
+
+    public Audience getAudience() {
+        return audience;
+    }
+
+    public RandomizationGroup getRandomizationGroup() {
+        return randomizationGroup;
+    }
+
+    public boolean isRequiresEnrollment() {
+        return requiresEnrollment;
+    }
+
+    public boolean isHasCompletedStudy() {
+        return hasCompletedStudy;
+    }
+
+    public MyOmronTokenData getOmronTokenData() {
+        return omronTokenData;
+    }
+
+    public String getOmronUserId() {
+        return omronTokenData != null ?
+                omronTokenData.getUserIdToken() :
+                null;
+    }
+
+    /**
+     * @return the cache snapshot, or null if this state doesn't include one
+     */
+    public Map<String, byte[]> getSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(Map<String, byte[]> snapshot) {
+        this.snapshot = snapshot;
+    }
+}
@@ -0,0 +1,41 @@
+package edu.ohsu.cmp.coach.workspace;
+
+import edu.ohsu.cmp.coach.session.ProvisionalSessionCacheData;
+
+/**
+ * Where session state lives, so that it can be shared between nodes.  With the in-memory store, sessions only exist on
+ * the node that created them.  With the JDBC store, any node can rebuild a session's workspace from its stored state.
+ * The implementation is selected by the workspace.state-store property.
+ */
+public interface WorkspaceStateStore {
+    /**
+     * @return true if this store keeps cache snapshots.  there's no point building them otherwise
+     */
+    boolean supportsSnapshots();
+
+    /**
+     * store the specified state, replacing any that exists for the same session.  if state doesn't include a
+     * snapshot, any previously stored snapshot is retained
+     */
+    void save(WorkspaceState state);
+
+    /**
+     * @return the stored state for the specified session, including its snapshot if one exists, or null
+     */
+    WorkspaceState load(String sessionId);
+
+    boolean exists(String sessionId);
+
+    /**
+     * @return the ID of the session authorized with Omron as the specified user, or null
+     */
+    String findSessionIdByOmronUserId(String omronUserId);
+
+    void remove(String sessionId);
+
+    void saveProvisional(String sessionId, ProvisionalSessionCacheData data);
+
+    ProvisionalSessionCacheData loadProvisional(String sessionId);
+
+    void removeProvisional(String sessionId);
+}
@@ -0,0 +1,17 @@
+drop table if exists session_state;
+create table session_state (
+    sessionId varchar(100) not null primary key,
+    omronUserId varchar(255),
+    state mediumtext not null,
+    snapshot longblob,
+    lastUpdated datetime not null
+);
+
+create index idxOmronUserId on session_state (omronUserId);
+
+drop table if exists provisional_session_state;
+create table provisional_session_state (
+    sessionId varchar(100) not null primary key,
+    state text not null,
+    created datetime not null
+);
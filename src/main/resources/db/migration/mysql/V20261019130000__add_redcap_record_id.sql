@@ -0,0 +1 @@
+alter table patient add redcapRecordId varchar(100);
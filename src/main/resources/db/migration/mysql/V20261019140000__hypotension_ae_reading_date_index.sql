@@ -0,0 +1,3 @@
+-- lookback queries select by patient and bp1ReadingDate; the composite index also serves patient-only queries
+drop index idxPatId on hypotension_adverse_event;
+create index idxPatIdBp1ReadingDate on hypotension_adverse_event (patId, bp1ReadingDate);
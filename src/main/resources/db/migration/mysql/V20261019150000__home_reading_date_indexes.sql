@@ -0,0 +1,7 @@
+-- home readings are selected by patient within a lookback period, newest first; the composite indexes also serve
+-- patient-only queries.  each is created before the index it replaces is dropped, as the patId foreign keys need one
+create index idxPatIdReadingDate on home_bp_reading (patId, readingDate);
+drop index idxPatId on home_bp_reading;
+
+create index idxPatIdReadingDate on home_pulse_reading (patId, readingDate);
+drop index idxPatId on home_pulse_reading;
@@ -0,0 +1,14 @@
+-- bulk-written tables take their IDs from this table, so that Hibernate can allocate them in blocks and batch inserts,
+-- which it can't do for auto_increment columns.  each counter starts beyond the IDs already in use
+drop table if exists id_generator;
+create table id_generator (
+    name varchar(50) not null primary key,
+    nextId bigint not null
+);
+
+insert into id_generator (name, nextId) select 'audit_data', coalesce(max(id), 0) + 51 from audit_data;
+insert into id_generator (name, nextId) select 'home_bp_reading', coalesce(max(id), 0) + 51 from home_bp_reading;
+insert into id_generator (name, nextId) select 'home_pulse_reading', coalesce(max(id), 0) + 51 from home_pulse_reading;
+insert into id_generator (name, nextId) select 'omron_vitals_cache', coalesce(max(id), 0) + 51 from omron_vitals_cache;
+insert into id_generator (name, nextId) select 'hypotension_adverse_event', coalesce(max(id), 0) + 51 from hypotension_adverse_event;
+insert into id_generator (name, nextId) select 'vsac_concept', coalesce(max(id), 0) + 51 from vsac_concept;
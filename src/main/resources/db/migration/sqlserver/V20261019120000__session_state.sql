@@ -0,0 +1,20 @@
+drop table if exists session_state;
+create table session_state (
+    sessionId varchar(100) not null primary key,
+    omronUserId varchar(255),
+    state varchar(max) not null,
+    snapshot varbinary(max),
+    lastUpdated datetime not null
+);
+go
+
+create index idxOmronUserId on session_state (omronUserId);
+go
+
+drop table if exists provisional_session_state;
+create table provisional_session_state (
+    sessionId varchar(100) not null primary key,
+    state varchar(max) not null,
+    created datetime not null
+);
+go
@@ -0,0 +1,2 @@
+alter table patient add redcapRecordId varchar(100);
+go
@@ -0,0 +1,168 @@
+-- bulk-written tables take their IDs from this table, so that Hibernate can allocate them in blocks and batch inserts,
+-- which it can't do for identity columns.  each counter starts beyond the IDs already in use
+drop table if exists id_generator;
+create table id_generator (
+    name varchar(50) not null primary key,
+    nextId bigint not null
+);
+go
+
+insert into id_generator (name, nextId) select 'audit_data', coalesce(max(id), 0) + 51 from audit_data;
+insert into id_generator (name, nextId) select 'home_bp_reading', coalesce(max(id), 0) + 51 from home_bp_reading;
+insert into id_generator (name, nextId) select 'home_pulse_reading', coalesce(max(id), 0) + 51 from home_pulse_reading;
+insert into id_generator (name, nextId) select 'omron_vitals_cache', coalesce(max(id), 0) + 51 from omron_vitals_cache;
+insert into id_generator (name, nextId) select 'hypotension_adverse_event', coalesce(max(id), 0) + 51 from hypotension_adverse_event;
+insert into id_generator (name, nextId) select 'vsac_concept', coalesce(max(id), 0) + 51 from vsac_concept;
+go
+
+-- identity columns can't be given explicit values, and the identity property can't be removed from a column, so each
+-- of these tables is rebuilt without it.  defaults are added after the rename, as constraint names must be unique
+
+-- audit_data
+
+create table audit_data_new (
+    id int not null primary key,
+    patId int not null,
+    severity varchar(10) not null,
+    event varchar(100) not null,
+    details varchar(1000),
+    created datetime not null
+);
+go
+insert into audit_data_new (id, patId, severity, event, details, created)
+    select id, patId, severity, event, details, created from audit_data;
+drop table audit_data;
+exec sp_rename 'dbo.audit_data_new', 'audit_data';
+go
+alter table audit_data add constraint c_audit_created default current_timestamp for created;
+create index idxPatId on audit_data (patId, severity);
+go
+
+-- home_bp_reading
+
+create table home_bp_reading_new (
+    id int not null primary key,
+    patId int not null,
+    systolic int not null,
+    diastolic int not null,
+    readingDate datetime not null,
+    followedInstructions tinyint,
+    createdDate datetime not null,
+    source varchar(10) not null
+);
+go
+insert into home_bp_reading_new (id, patId, systolic, diastolic, readingDate, followedInstructions, createdDate, source)
+    select id, patId, systolic, diastolic, readingDate, followedInstructions, createdDate, source from home_bp_reading;
+drop table home_bp_reading;
+exec sp_rename 'dbo.home_bp_reading_new', 'home_bp_reading';
+go
+create index idxPatIdReadingDate on home_bp_reading (patId, readingDate);
+alter table home_bp_reading add foreign key (patId) references patient (id) on delete cascade;
+go
+
+-- home_pulse_reading
+
+create table home_pulse_reading_new (
+    id int not null primary key,
+    patId int not null,
+    pulse int,
+    readingDate datetime not null,
+    followedInstructions tinyint,
+    createdDate datetime not null,
+    source varchar(10) not null
+);
+go
+insert into home_pulse_reading_new (id, patId, pulse, readingDate, followedInstructions, createdDate, source)
+    select id, patId, pulse, readingDate, followedInstructions, createdDate, source from home_pulse_reading;
+drop table home_pulse_reading;
+exec sp_rename 'dbo.home_pulse_reading_new', 'home_pulse_reading';
+go
+create index idxPatIdReadingDate on home_pulse_reading (patId, readingDate);
+alter table home_pulse_reading add foreign key (patId) references patient (id) on delete cascade;
+go
+
+-- omron_vitals_cache
+
+create table omron_vitals_cache_new (
+    id int not null primary key,
+    patId int not null,
+    omronId bigint unique not null,
+    dateTime varchar(30) not null,
+    dateTimeLocal varchar(30) not null,
+    dateTimeUtcOffset varchar(20) not null,
+    systolic int not null,
+    diastolic int not null,
+    bloodPressureUnits varchar(20) not null,
+    pulse int not null,
+    pulseUnits varchar(20) not null,
+    deviceType varchar(50) not null,
+    createdDate datetime not null
+);
+go
+insert into omron_vitals_cache_new (id, patId, omronId, dateTime, dateTimeLocal, dateTimeUtcOffset, systolic, diastolic,
+                                    bloodPressureUnits, pulse, pulseUnits, deviceType, createdDate)
+    select id, patId, omronId, dateTime, dateTimeLocal, dateTimeUtcOffset, systolic, diastolic,
+           bloodPressureUnits, pulse, pulseUnits, deviceType, createdDate from omron_vitals_cache;
+drop table omron_vitals_cache;
+exec sp_rename 'dbo.omron_vitals_cache_new', 'omron_vitals_cache';
+go
+alter table omron_vitals_cache add constraint c_omron_vitals_cache_createdDate default current_timestamp for createdDate;
+create index idxPatId on omron_vitals_cache (patId);
+go
+
+-- hypotension_adverse_event
+
+create table hypotension_adverse_event_new (
+    id int not null primary key,
+    patId int not null,
+    bp1Systolic int not null,
+    bp1Diastolic int not null,
+    bp1ReadingDate datetime not null,
+    bp2Systolic int not null,
+    bp2Diastolic int not null,
+    bp2ReadingDate datetime not null,
+    createdDate datetime not null
+);
+go
+insert into hypotension_adverse_event_new (id, patId, bp1Systolic, bp1Diastolic, bp1ReadingDate, bp2Systolic,
+                                           bp2Diastolic, bp2ReadingDate, createdDate)
+    select id, patId, bp1Systolic, bp1Diastolic, bp1ReadingDate, bp2Systolic,
+           bp2Diastolic, bp2ReadingDate, createdDate from hypotension_adverse_event;
+drop table hypotension_adverse_event;
+exec sp_rename 'dbo.hypotension_adverse_event_new', 'hypotension_adverse_event';
+go
+create index idxPatIdBp1ReadingDate on hypotension_adverse_event (patId, bp1ReadingDate);
+go
+
+-- vsac_concept is referenced by vsac_valueset_concept, so that constraint is dropped and re-added around the rebuild
+
+alter table vsac_valueset_concept drop constraint vvc_fk2;
+go
+create table vsac_concept_new (
+    id int not null primary key,
+    code varchar(255) not null,
+    codeSystem varchar(255) not null,
+    codeSystemName varchar(255) not null,
+    codeSystemVersion varchar(255) not null,
+    displayName varchar(255) not null,
+    created datetime not null,
+    updated datetime not null
+);
+go
+insert into vsac_concept_new (id, code, codeSystem, codeSystemName, codeSystemVersion, displayName, created, updated)
+    select id, code, codeSystem, codeSystemName, codeSystemVersion, displayName, created, updated from vsac_concept;
+drop table vsac_concept;
+exec sp_rename 'dbo.vsac_concept_new', 'vsac_concept';
+go
+alter table vsac_concept add constraint c_vsac_concept_created1 default current_timestamp for created;
+alter table vsac_concept add constraint c_vsac_concept_created2 default current_timestamp for updated;
+alter table vsac_concept add constraint vc_c1 unique (code, codeSystem, codeSystemVersion);
+alter table vsac_valueset_concept add constraint vvc_fk2 foreign key (conceptId) references vsac_concept (id)
+    on delete cascade;
+go
+
+create trigger vsac_concept_update on vsac_concept
+    after update
+    as
+    update vsac_concept set updated = getdate() from inserted;
+go
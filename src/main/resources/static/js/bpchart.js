@@ -40,7 +40,7 @@ function buildChart() {
                 borderColor: 'rgba(0, 127, 109, 1)',
                 borderWidth: 2,
                 tension: 0.1,
-                data: toLOESSData2(window.bpchart.data, 'systolic')
+                data: window.bpchart.trend.systolic
             }, {
                 type: 'scatter',
                 label: 'Diastolic',
@@ -61,7 +61,7 @@ function buildChart() {
                 borderColor: 'rgba(153, 97, 36, 1)',
                 borderWidth: 1,
                 tension: 0.1,
-                data: toLOESSData2(window.bpchart.data, 'diastolic')
+                data: window.bpchart.trend.diastolic
             } ]
         },
         options: {
@@ -4,7 +4,7 @@ function isEnhanced() {
 
 function loadOtherGoals(_callback) {
     $.ajax({
-        method: "POST",
+        method: "GET",
         url: "/goals/other-goals"
     }).done(function(goals) {
         _callback(goals);
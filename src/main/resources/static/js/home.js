@@ -26,7 +26,7 @@ function doClearSupplementalData(_callback) {
 
 function getBloodPressureObservations(_callback) {
     $.ajax({
-        method: "POST",
+        method: "GET",
         url: "/blood-pressure-observations-list"
     }).done(function(bpdata) {
         bpdata.forEach(function(item) {
@@ -40,9 +40,27 @@ function getBloodPressureObservations(_callback) {
     });
 }
 
+// LOESS trend lines are calculated and cached on the server, over the same readings returned above
+function getBloodPressureTrend(startDate, _callback) {
+    let data = {};
+    if (startDate !== undefined) {
+        data.startDate = startDate.getTime();
+    }
+    if (getLOESSBandwidth() !== -1) {
+        data.bandwidth = getLOESSBandwidth();
+    }
+    $.ajax({
+        method: "GET",
+        url: "/blood-pressure-trend",
+        data: data
+    }).done(function(trend) {
+        _callback(trend);
+    });
+}
+
 function getMedications(_callback) {
     $.ajax({
-        method: "POST",
+        method: "GET",
         url: "/medications-list"
     }).done(function(meds) {
         _callback(meds);
@@ -69,7 +87,7 @@ function populateMedications() {
 
 function getAdverseEvents(_callback) {
     $.ajax({
-        method: "POST",
+        method: "GET",
         url: "/adverse-events-list"
     }).done(function(adverseEvents) {
         _callback(adverseEvents);
@@ -140,7 +158,10 @@ function refreshChart() {
         window.bpchart.data = window.bpdata;
 
         populateSummaryDiv();
-        buildChart();
+        getBloodPressureTrend(undefined, function(trend) {
+            window.bpchart.trend = trend;
+            buildChart();
+        });
     });
 }
 
@@ -159,8 +180,17 @@ function refreshMedications() {
 }
 
 function refreshRecommendations() {
-    getRecommendations(function(container, cards) {
-        if (cards) {
+    getRecommendations(function(container, cards, status) {
+        if (status === 404) {
+            // no such recommendation any more
+            $(container).closest('.recommendation').addClass('hidden');
+
+        } else if (status !== undefined) {
+            $(container).html("<div class='card'><div class='error'>This recommendation couldn't be generated.  " +
+                "Please try again later.</div></div>");
+            $(container).closest('.recommendation').removeClass('hidden');
+
+        } else if (cards) {
             let html = renderCards(cards);
             $(container).html(html);
             if (html === '') {
@@ -194,6 +224,40 @@ function refreshOmronStatus() {
     });
 }
 
+// subscribe to server-pushed session events so the page updates as soon as something changes, rather than polling.
+// falls back on polling for Omron status if the browser doesn't support Server-Sent Events
+function subscribeToSessionEvents() {
+    if (typeof(EventSource) === 'undefined') {
+        refreshOmronStatus();
+        return;
+    }
+
+    let source = new EventSource('/events');
+
+    source.addEventListener('omron-status', function(e) {
+        let omronStatus = JSON.parse(e.data);
+        populateOmronStatus(omronStatus);
+
+        if (isOmronSyncCompleted(omronStatus)) {
+            // revert the "synchronization is complete" message after a bit
+            setTimeout(function() {
+                populateOmronStatus(window.omronStatus);
+            }, 5000);
+        }
+
+        window.omronStatus = omronStatus;
+    });
+
+    source.addEventListener('vitals-changed', function(e) {
+        refreshChart();
+        refreshAdverseEvents();
+    });
+
+    source.addEventListener('recommendations-updated', function(e) {
+        refreshRecommendations();
+    });
+}
+
 function refreshOmronStatusAndPageAssets() {
     refreshOmronStatus();
     refreshChart();
@@ -453,7 +517,10 @@ function buildPointStyleArray(data) {
 function updateChart() {
     // calling buildChart() without first replacing the DOM element creates wonkiness
     $('#chart').replaceWith('<canvas id="chart"></canvas>');
-    buildChart();
+    getBloodPressureTrend(window.bpchart.startDate, function(trend) {
+        window.bpchart.trend = trend;
+        buildChart();
+    });
 }
 
 function truncateData(data, startDate) {
@@ -482,90 +549,6 @@ function toScatterData(data, type) {
     return arr;
 }
 
-/**
- * Create a LOESS trendline for the BP data using the following rules:
- * - Eliminate untyped BP data
- * - If bandwidth is unspecified in URL, choose the starting value based on size of data
- * - If regression errors occur or any regression points are outside the min/max BP value, increase the bandwidth and try again
- * @param {*} data
- * @param {*} type
- * @returns
- */
-function toLOESSData2(data, type) {
-    const sortedData = sortByDateAsc(data);
-
-    let map = sortedData.map(function(item) {
-        return item[type] != null ? [item.readingDate, item[type].value] : null;
-    }).filter(function(item) {
-        return item != null;
-    });
-
-    // Adjust bandwidth based on number of points in the data
-    let bandwidth = 0.3;
-    let numPts = map.length;
-    // Allow an override of the bandwidth in the URL for testing
-    if (getLOESSBandwidth() !== -1) {
-        bandwidth = getLOESSBandwidth();
-    } else if (numPts <= 8) {
-        bandwidth = 0.6;
-    } else if (numPts <= 15) {
-        bandwidth = 0.5;
-    } else if (numPts <= 25) {
-        bandwidth = 0.4;
-    }
-
-    // console.log("Starting bandwidth: " + bandwidth);
-    // console.log("Original points: ");
-    // console.log(map);
-    const vals = map.map(m => m[1])
-    const minVal = Math.min(...vals)
-    const maxVal = Math.max(...vals)
-
-    let xval = [],
-        yval = [];
-    map.forEach(function(item) {
-        xval.push(item[0]);
-        yval.push(item[1]);
-    });
-
-    let loess;
-    // Try incrementally increasing bandwidth if an error is thrown or regression doesn't meet standards
-    while (bandwidth <= 1.0) {
-        loess = science.stats.loess().bandwidth(bandwidth);
-        try {
-            let loess_data = loess(xval, yval);
-            let loess_points = loess_data.map(function(yval, index) {
-                return [xval[index], yval];
-            });
-
-
-            // If any points are out of bounds, try increasing bandwidth
-            const filtered = loess_points.filter(pt => !isOutOfBounds(pt[1], minVal, maxVal));
-            if (filtered.length < loess_points.length) {
-                bandwidth = bandwidth + 0.1;
-            } else {
-                // console.log("Final bandwidth: " + bandwidth);
-                // console.log("Regression line: ");
-                // console.log(loess_points);
-                return filtered;
-            }
-        } catch (error) {
-            bandwidth = bandwidth + 0.1;
-        }
-    }
-
-
-    // Fall back on a direct plot
-    // console.log("Regression failed. Falling back on direct plot.")
-    return map;
-
-}
-
-// Boundaries on the LOESS interpretation
-function isOutOfBounds(pt, minVal, maxVal) {
-    return isNaN(pt) || pt < minVal || pt > maxVal
-}
-
 function getLOESSBandwidth() {
     return Number($('#LOESSBandwidth').html());
 }
@@ -18,14 +18,16 @@ function getRecommendations(_callback) {
     $(".recommendation").each(function () {
         let recommendationId = $(this).attr('data-id');
         let cardsContainer = $(this).find('.cardsContainer');
-        getRecommendation(recommendationId, function (cards) {
-            _callback(cardsContainer, cards);
+        getRecommendation(recommendationId, function (cards, status) {
+            _callback(cardsContainer, cards, status);
             enableDatePicker($(cardsContainer).find('.goalTargetDate'));
         });
     });
 }
 
-// get a recommendation from cache, but do not execute it
+// get a recommendation from cache, but do not execute it.  if the server gives up waiting for it to be generated
+// (HTTP 503), it's still being generated, so ask again.  on any other failure, cards is null and status is the HTTP
+// status code
 function getRecommendation(id, _callback) {
     let data = {
         id: id
@@ -34,10 +36,19 @@ function getRecommendation(id, _callback) {
     $.ajax({
         method: "POST",
         url: "/recommendation",
-        timeout: 3600000,
+        timeout: 330000,        // a little longer than the server waits (cqfruler.cdshooks.result-timeout-ms)
         data: data
     }).done(function(cards) {
         _callback(cards);
+    }).fail(function(jqXHR, textStatus) {
+        if (jqXHR.status === 503 || textStatus === 'timeout') {
+            setTimeout(function() {
+                getRecommendation(id, _callback);
+            }, 1000);
+
+        } else {
+            _callback(null, jqXHR.status);
+        }
     });
 }
 
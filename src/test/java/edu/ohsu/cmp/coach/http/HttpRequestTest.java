@@ -0,0 +1,112 @@
+package edu.ohsu.cmp.coach.http;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Exercises gzip compression of request bodies, and decompression of responses, against a local stub server that
+ * accepts gzip-compressed requests and compresses its responses whenever the client accepts it.
+ */
+class HttpRequestTest {
+    private HttpServer server;
+    private String url;
+    private String receivedContentEncoding;
+    private String receivedBody;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/echo", exchange -> {
+            receivedContentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+
+            InputStream in = "gzip".equals(receivedContentEncoding) ?
+                    new GZIPInputStream(exchange.getRequestBody()) :
+                    exchange.getRequestBody();
+            receivedBody = new String(in.readAllBytes(), StandardCharsets.ISO_8859_1);
+
+            byte[] response = receivedBody.getBytes(StandardCharsets.ISO_8859_1);
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                try (GZIPOutputStream gzip = new GZIPOutputStream(baos)) {
+                    gzip.write(response);
+                }
+                response = baos.toByteArray();
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+
+        url = "http://localhost:" + server.getAddress().getPort() + "/echo";
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+    }
+
+    @Test
+    void compressesBodiesAtOrAboveThreshold() throws IOException {
+        String body = buildBody(10000);
+
+        HttpResponse response = new HttpRequest(null, Dependency.CQF_RULER, 0, 1024).post(url, null, null, body);
+
+        assertEquals(200, response.getResponseCode());
+        assertEquals("gzip", receivedContentEncoding);
+        assertEquals(body, receivedBody);
+        assertEquals(body, response.getResponseBody());
+    }
+
+    @Test
+    void doesNotCompressBodiesBelowThreshold() throws IOException {
+        String body = buildBody(100);
+
+        HttpResponse response = new HttpRequest(null, Dependency.CQF_RULER, 0, 1024).post(url, null, null, body);
+
+        assertNull(receivedContentEncoding);
+        assertEquals(body, receivedBody);
+        assertEquals(body, response.getResponseBody());
+    }
+
+    @Test
+    void doesNotCompressWhenDisabled() throws IOException {
+        String body = buildBody(10000);
+
+        HttpResponse response = new HttpRequest().post(url, null, null, body);
+
+        assertNull(receivedContentEncoding);
+        assertEquals(body, receivedBody);
+        assertEquals(body, response.getResponseBody());
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    private String buildBody(int length) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < length) {
+            sb.append("{\"resourceType\":\"Observation\",\"status\":\"final\"},");
+        }
+        return sb.substring(0, length);
+    }
+}
@@ -0,0 +1,78 @@
+package edu.ohsu.cmp.coach.service;
+
+import edu.ohsu.cmp.coach.fhir.FhirConfigManager;
+import edu.ohsu.cmp.coach.model.PatientModel;
+import edu.ohsu.cmp.coach.model.cqfruler.HookRequest;
+import edu.ohsu.cmp.coach.model.fhir.FHIRCredentials;
+import edu.ohsu.cmp.coach.workspace.UserWorkspace;
+import edu.ohsu.cmp.coach.workspace.UserWorkspaceService;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Exercises the CQF-Ruler response cache key against a workspace with no counseling, goals, readings or adverse
+ * events, which is the common case where the prefetch is made up of placeholder resources.
+ */
+class RecommendationServiceTest {
+    private static final String SESSION_ID = "test-session";
+    private static final String HOOK_ID = "test-hook";
+
+    private RecommendationService service;
+    private FHIRCredentials credentials;
+
+    @BeforeEach
+    void setUp() {
+        Patient patient = new Patient();
+        patient.setId("Patient/1");
+
+        PatientModel patientModel = mock(PatientModel.class);
+        when(patientModel.getSourcePatient()).thenReturn(patient);
+
+        UserWorkspace workspace = mock(UserWorkspace.class);
+        when(workspace.getPatient()).thenReturn(patientModel);
+
+        UserWorkspaceService userWorkspaceService = mock(UserWorkspaceService.class);
+        when(userWorkspaceService.get(SESSION_ID)).thenReturn(workspace);
+
+        FhirConfigManager fcm = mock(FhirConfigManager.class);
+        when(fcm.getProcedureCounselingCoding()).thenReturn(new Coding("http://snomed.info/sct", "409063005", "Counseling"));
+
+        service = new RecommendationService("", "", "");
+        ReflectionTestUtils.setField(service, "userWorkspaceService", userWorkspaceService);
+        ReflectionTestUtils.setField(service, "fcm", fcm);
+        ReflectionTestUtils.setField(service, "bpService", mock(BloodPressureService.class));
+        ReflectionTestUtils.setField(service, "goalService", mock(GoalService.class));
+        ReflectionTestUtils.setField(service, "counselingService", mock(CounselingService.class));
+        ReflectionTestUtils.setField(service, "adverseEventService", mock(AdverseEventService.class));
+
+        credentials = new FHIRCredentials("client", "http://fhir.example.org", "token", "Patient/1", "user");
+    }
+
+    @Test
+    void sameWorkspaceBuildsSameKey() throws Exception {
+        String key1 = buildKey();
+
+        // placeholders used to be timestamped to the second, so builds a second apart never matched
+        Thread.sleep(1100);
+
+        String key2 = buildKey();
+
+        assertEquals(key1, key2);
+    }
+
+///////////////////////////////////////////////////////////////////
+// private methods
+//
+
+    private String buildKey() throws Exception {
+        HookRequest hookRequest = new HookRequest(credentials, service.buildPrefetchBundle(SESSION_ID, null));
+        return service.buildResponseCacheKey(HOOK_ID, hookRequest);
+    }
+}